@@ -0,0 +1,126 @@
+package com.github.vicianm.stickylinearlayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * Measures cost of a single scroll frame processed by {@link PinningEngine}
+ * (the part of <code>StickyLinearLayout.updateSectionDataAndUi</code> which
+ * does not touch views) for forms of different size.
+ * <p>Workloads:</p>
+ * <ul>
+ *     <li><code>scroll</code> - slow scroll through the whole form and back (8px per frame)</li>
+ *     <li><code>fling</code> - decelerating flings in alternating directions</li>
+ *     <li><code>jump</code> - jumps to random positions (e.g. click on pinned header)</li>
+ * </ul>
+ * <p>Run with <code>gradle -p benchmark jmh</code>. Allocations per frame are
+ * reported by the GC profiler as <code>gc.alloc.rate.norm</code>.</p>
+ */
+@State(Scope.Thread)
+public class PinningEngineBenchmark {
+
+    private static final int VIEWPORT_HEIGHT = 1920;
+    private static final int MAX_ROWS = 3;
+    private static final int FRAMES = 1 << 12;
+
+    @Param({"10", "1000", "100000"})
+    public int sections;
+
+    @Param({"scroll", "fling", "jump"})
+    public String workload;
+
+    private PinningEngine engine;
+
+    private int[] trace;
+    private int frame;
+    private int oldScrollY;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        engine = new PinningEngine(MAX_ROWS, MAX_ROWS);
+        int offset = 0;
+        for (int i = 0; i < sections; i++) {
+            int headerHeight = 80 + random.nextInt(40);
+            engine.addSection();
+            engine.setOffset(i, offset);
+            engine.setPinnedHeights(i, headerHeight, headerHeight);
+            // header followed by 1 - 10 form rows
+            offset += headerHeight + (1 + random.nextInt(10)) * 150;
+        }
+        engine.validateOffsets();
+
+        int maxScrollY = Math.max(0, offset - VIEWPORT_HEIGHT);
+        trace = createTrace(workload, maxScrollY, random);
+        frame = 0;
+        oldScrollY = 0;
+        engine.update(0, 0, VIEWPORT_HEIGHT);
+    }
+
+    private static int[] createTrace(String workload, int maxScrollY, Random random) {
+        int[] trace = new int[FRAMES];
+        switch (workload) {
+            case "scroll": {
+                int scrollY = 0;
+                int step = 8;
+                for (int i = 0; i < FRAMES; i++) {
+                    if (scrollY + step > maxScrollY || scrollY + step < 0) step = -step;
+                    scrollY += step;
+                    trace[i] = Math.max(0, Math.min(maxScrollY, scrollY));
+                }
+                break;
+            }
+            case "fling": {
+                int scrollY = 0;
+                float velocity = 0;
+                for (int i = 0; i < FRAMES; i++) {
+                    if (Math.abs(velocity) < 1) {
+                        // start new fling, towards the more distant end of the form
+                        velocity = (scrollY < maxScrollY / 2 ? 1 : -1) * (200 + random.nextInt(300));
+                    }
+                    scrollY = Math.max(0, Math.min(maxScrollY, scrollY + (int) velocity));
+                    velocity *= 0.95f;
+                    trace[i] = scrollY;
+                }
+                break;
+            }
+            case "jump": {
+                for (int i = 0; i < FRAMES; i++) {
+                    trace[i] = maxScrollY == 0 ? 0 : random.nextInt(maxScrollY);
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + workload);
+        }
+        return trace;
+    }
+
+    @Benchmark
+    public void frame(Blackhole blackhole) {
+        int scrollY = trace[frame];
+        frame = (frame + 1) & (FRAMES - 1);
+
+        engine.update(scrollY, oldScrollY, VIEWPORT_HEIGHT);
+        oldScrollY = scrollY;
+
+        // Visit sections which changed their state, the same way
+        // StickyLinearLayout updates SectionData and pinned views.
+        for (int i = engine.getChangedUpFrom(); i < engine.getChangedUpTo(); i++) {
+            blackhole.consume(engine.getState(i));
+        }
+        for (int i = engine.getChangedDownFrom(); i < engine.getChangedDownTo(); i++) {
+            blackhole.consume(engine.getState(i));
+        }
+        blackhole.consume(engine.getPinningHeader());
+        blackhole.consume(engine.getPinningFooter());
+    }
+
+}
@@ -0,0 +1,249 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.os.Process;
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds sections of the form on a background thread and attaches them in batches.
+ * <p>Sections are built one by one in the order they appear in the form (i.e. sections
+ * of the first screen are built first) by {@link StickyLinearLayout.AsyncSectionFactory}.
+ * Built sections are handed over to {@link Target} on UI thread at the start of each frame
+ * (see {@link Choreographer}) until the frame budget is spent. At least one section is
+ * attached per frame.</p>
+ * <p>If the factory fails, no further section is attached and the failure is reported
+ * on UI thread by {@link Target#onLoadFailed(Throwable)} and
+ * {@link StickyLinearLayout.AsyncSectionFactory#onLoadFailed(Throwable)}.</p>
+ */
+class AsyncFormLoader implements Choreographer.FrameCallback, Runnable {
+
+    /**
+     * Time of a frame spent attaching sections, the rest of the frame
+     * is left for measure/layout of attached views and for drawing.
+     */
+    static final long DEFAULT_FRAME_BUDGET_NANOS = 5000000L;
+
+    /**
+     * Receiver of built sections.
+     */
+    interface Target {
+
+        /**
+         * Called on UI thread.
+         * @param views Section header followed by rows of the section.
+         */
+        void attachSection(View[] views);
+
+        /**
+         * Called on UI thread after all sections have been attached,
+         * before {@link StickyLinearLayout.AsyncSectionFactory#onSectionsLoaded()}.
+         */
+        void onSectionsLoaded();
+
+        /**
+         * Called on UI thread if building of a section has failed, before
+         * {@link StickyLinearLayout.AsyncSectionFactory#onLoadFailed(Throwable)}.
+         */
+        void onLoadFailed(Throwable error);
+    }
+
+    /**
+     * Shared by all loaders, sections of one form are built at a time.
+     * The thread is released when idle.
+     */
+    private static Executor defaultExecutor;
+
+    /**
+     * @return Executor running a single thread of background priority.
+     */
+    static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "StickyLinearLayout-loader");
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            defaultExecutor = executor;
+        }
+        return defaultExecutor;
+    }
+
+    private final Choreographer choreographer;
+
+    private final long frameBudgetNanos;
+
+    private final StickyLinearLayout.AsyncSectionFactory factory;
+
+    private final int sectionCount;
+
+    private final LayoutInflater inflater;
+
+    /**
+     * Parent generating layout params of built views, see
+     * {@link StickyLinearLayout.AsyncSectionFactory#onCreateSection(int, LayoutInflater, ViewGroup, List)}.
+     */
+    private final ViewGroup parent;
+
+    private final Target target;
+
+    private final Executor executor;
+
+    /**
+     * Builds sections on {@link #executor}, cancelled (or interrupted if running) by {@link #cancel()}.
+     */
+    private final FutureTask<Void> worker = new FutureTask<>(this, null);
+
+    /**
+     * Sections built by {@link #worker} waiting to be attached.
+     */
+    private final ConcurrentLinkedQueue<View[]> builtSections = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * Set by {@link #worker} after the last section has been built (or building failed).
+     */
+    private volatile boolean buildFinished = false;
+
+    private volatile Throwable buildError;
+
+    private boolean finished = false;
+
+    /**
+     * @param choreographer Choreographer of UI thread or <code>null</code> if frames are
+     *                      driven by calling {@link #doFrame(long)} directly (tests).
+     * @param inflater Inflater used by the background thread only.
+     * @param executor Executor running the build of sections, see {@link #getDefaultExecutor()}.
+     * @param parent Parent generating layout params of built views (views are not added to it).
+     */
+    AsyncFormLoader(Choreographer choreographer, Executor executor, long frameBudgetNanos,
+                    StickyLinearLayout.AsyncSectionFactory factory,
+                    LayoutInflater inflater, ViewGroup parent, Target target) {
+        this.choreographer = choreographer;
+        this.frameBudgetNanos = frameBudgetNanos;
+        this.factory = factory;
+        this.sectionCount = factory.getSectionCount();
+        this.inflater = inflater;
+        this.parent = parent;
+        this.target = target;
+        this.executor = executor;
+    }
+
+    void start() {
+        executor.execute(worker);
+        if (choreographer != null) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops building sections and drops sections which are not attached yet.
+     * Sections attached so far stay in the form.
+     */
+    void cancel() {
+        cancelled = true;
+        finished = true;
+        worker.cancel(true);
+        builtSections.clear();
+        if (choreographer != null) {
+            choreographer.removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if all sections have been attached or loading has been cancelled.
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Waits until the background thread finishes building of sections (tests).
+     */
+    void awaitBuild() throws InterruptedException, ExecutionException {
+        worker.get();
+    }
+
+    @Override
+    public void run() {
+        List<View> views = new ArrayList<>();
+        try {
+            for (int i = 0; i < sectionCount && !cancelled && !Thread.currentThread().isInterrupted(); i++) {
+                views.clear();
+                factory.onCreateSection(i, inflater, parent, views);
+                if (views.isEmpty()) {
+                    throw new IllegalStateException("Section " + i + " has no header view");
+                }
+                builtSections.add(views.toArray(new View[views.size()]));
+            }
+        } catch (Throwable t) {
+            buildError = t;
+        } finally {
+            buildFinished = true;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (finished) {
+            return;
+        }
+
+        // Read before the queue is drained, all sections
+        // are in the queue once the build is finished
+        boolean buildFinished = this.buildFinished;
+
+        if (buildError != null) {
+            // Sections attached so far stay in the form
+            Throwable error = buildError;
+            cancel();
+            target.onLoadFailed(error);
+            factory.onLoadFailed(error);
+            return;
+        }
+
+        long start = System.nanoTime();
+        View[] views;
+        while (!finished && (views = builtSections.poll()) != null) {
+            target.attachSection(views);
+            if (System.nanoTime() - start >= frameBudgetNanos) {
+                break;
+            }
+        }
+
+        if (finished) {
+            // Cancelled by target
+            return;
+        }
+        if (buildFinished && builtSections.isEmpty()) {
+            finished = true;
+            target.onSectionsLoaded();
+            factory.onSectionsLoaded();
+        } else if (choreographer != null) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+}
@@ -0,0 +1,326 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.view.Choreographer;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Measures duration of frames while {@link StickyLinearLayout} scrolls and links slow frames
+ * to pinning activity of the layout in the same frame. Frames are aggregated into histograms
+ * which are periodically passed to {@link OnFrameStatsListener}.
+ * </p>
+ * <p>Usage:</p>
+ * <pre>
+ * float refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+ * FrameJankMonitor monitor = new FrameJankMonitor(refreshRate, listener);
+ * stickyLinearLayout.setMetricsListener(monitor);
+ * </pre>
+ * <p>
+ * Frames are measured only while the layout updates its sections (i.e. the form scrolls
+ * or it is resized), no frame callback is registered while the form is idle.
+ * Duration of a frame is the difference of {@link Choreographer} frame times
+ * of two subsequent frames, so it includes all work done on UI thread in the frame,
+ * not only work of the layout.
+ * Histograms are filled without any allocation.
+ * </p>
+ * <p>Must be created and used on UI thread.</p>
+ */
+public class FrameJankMonitor implements StickyLinearLayout.MetricsListener, Choreographer.FrameCallback {
+
+    /**
+     * Listener of aggregated frame statistics.
+     */
+    public interface OnFrameStatsListener {
+
+        /**
+         * Called every {@link #getReportFrames()} measured frames and on {@link #report()}.
+         * Statistics can be read from <code>monitor</code> (e.g. {@link #getFrameCount(int, int)})
+         * only during this call, they are cleared right after it.
+         */
+        void onFrameStats(FrameJankMonitor monitor);
+    }
+
+    /**
+     * All measured frames.
+     */
+    public static final int GROUP_ALL = 0;
+
+    /**
+     * Frames without any pinning activity,
+     * i.e. no section changed its {@link SectionData.HeaderState}
+     * and no pinned view was added/removed.
+     */
+    public static final int GROUP_NO_PINNING = 1;
+
+    /**
+     * Frames in which at least one section changed its {@link SectionData.HeaderState}.
+     */
+    public static final int GROUP_STATES_CHANGED = 2;
+
+    /**
+     * Frames in which pinned views were added to or removed from header/footer area.
+     */
+    public static final int GROUP_CONTAINERS_MUTATED = 3;
+
+    /**
+     * Frames in which the form scrolled to a section after header click or focus change.
+     */
+    public static final int GROUP_IMPLICIT_SCROLL = 4;
+
+    public static final int GROUP_COUNT = 5;
+
+    /**
+     * Frame duration buckets, bucket <code>i</code> contains frames which took <code>i + 1</code>
+     * frame intervals (i.e. <code>i</code> missed vsyncs). The last bucket contains all longer frames.
+     * Bucket 0 contains frames delivered on time.
+     */
+    public static final int DURATION_BUCKET_COUNT = 6;
+
+    /**
+     * Buckets of number of sections which changed their state in a slow frame,
+     * see {@link #getSlowFrameCountBySectionsChanged(int)}.
+     * Bucket <code>i</code> contains frames where <code>i</code> sections changed,
+     * the last bucket contains frames where more sections changed.
+     */
+    public static final int SECTIONS_CHANGED_BUCKET_COUNT = 5;
+
+    /**
+     * About 10 seconds of scrolling at 60 FPS.
+     */
+    private static final int DEFAULT_REPORT_FRAMES = 600;
+
+    private final Choreographer choreographer;
+
+    private final long frameIntervalNanos;
+
+    private final int reportFrames;
+
+    private final OnFrameStatsListener listener;
+
+    private StickyLinearLayout.MetricsListener delegate;
+
+    private final int[][] frameCounts = new int[GROUP_COUNT][DURATION_BUCKET_COUNT];
+
+    private final int[] slowFrameCountsBySectionsChanged = new int[SECTIONS_CHANGED_BUCKET_COUNT];
+
+    private int measuredFrames;
+
+    /**
+     * Pinning activity of the current frame.
+     */
+    private boolean frameUpdated;
+    private int frameSectionsChanged;
+    private boolean frameContainersMutated;
+    private boolean frameImplicitScroll;
+
+    /**
+     * Frame time of the previous measured frame or -1 if the previous frame has not been measured.
+     */
+    private long lastFrameTimeNanos = -1;
+
+    private boolean frameCallbackPosted;
+
+    /**
+     * @param refreshRate Refresh rate of the display in frames per second,
+     *                    see {@link android.view.Display#getRefreshRate()}.
+     * @param listener Listener which receives aggregated statistics.
+     */
+    public FrameJankMonitor(float refreshRate, OnFrameStatsListener listener) {
+        this(Choreographer.getInstance(), (long) (1000000000 / refreshRate), DEFAULT_REPORT_FRAMES, listener);
+    }
+
+    /**
+     * @param choreographer Choreographer of UI thread or <code>null</code> if frames are
+     *                      driven by calling {@link #doFrame(long)} directly (tests).
+     */
+    FrameJankMonitor(Choreographer choreographer, long frameIntervalNanos, int reportFrames,
+                     OnFrameStatsListener listener) {
+        if (frameIntervalNanos <= 0) {
+            throw new IllegalArgumentException("Frame interval must be positive: " + frameIntervalNanos);
+        }
+        this.choreographer = choreographer;
+        this.frameIntervalNanos = frameIntervalNanos;
+        this.reportFrames = reportFrames;
+        this.listener = listener;
+    }
+
+    /**
+     * Sets listener which receives the same metrics as this monitor
+     * (e.g. {@link StickyLayoutMetrics}), the layout supports just one metrics listener.
+     */
+    public void setDelegate(StickyLinearLayout.MetricsListener delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return Number of measured frames after which statistics are reported.
+     */
+    public int getReportFrames() {
+        return reportFrames;
+    }
+
+    @Override
+    public void onSectionsUpdated(long durationNanos, int sectionsExamined, int sectionsChanged,
+                                  int pinnedViewsAdded, int pinnedViewsRemoved, boolean forced,
+                                  boolean implicitScroll) {
+        if (delegate != null) {
+            delegate.onSectionsUpdated(durationNanos, sectionsExamined, sectionsChanged,
+                    pinnedViewsAdded, pinnedViewsRemoved, forced, implicitScroll);
+        }
+
+        frameUpdated = true;
+        frameSectionsChanged += sectionsChanged;
+        frameContainersMutated |= pinnedViewsAdded > 0 || pinnedViewsRemoved > 0;
+        frameImplicitScroll |= implicitScroll;
+
+        if (!frameCallbackPosted) {
+            if (choreographer != null) {
+                choreographer.postFrameCallback(this);
+            }
+            frameCallbackPosted = true;
+        }
+    }
+
+    @Override
+    public void onViewportResized() {
+        if (delegate != null) {
+            delegate.onViewportResized();
+        }
+    }
+
+    @Override
+    public void onImplicitScrollStarted(int fromScrollY, int toScrollY) {
+        if (delegate != null) {
+            delegate.onImplicitScrollStarted(fromScrollY, toScrollY);
+        }
+    }
+
+    /**
+     * Called at the start of each frame while the layout updates its sections.
+     * Pinning activity collected since the previous call belongs to the previous frame,
+     * its duration is the difference of both frame times.
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameCallbackPosted = false;
+
+        if (lastFrameTimeNanos >= 0) {
+            // Activity of the first frame is dropped, its start is not known
+            recordFrame(frameTimeNanos - lastFrameTimeNanos);
+        }
+
+        if (frameUpdated) {
+            // Keep measuring, the form is still moving
+            lastFrameTimeNanos = frameTimeNanos;
+            if (choreographer != null) {
+                choreographer.postFrameCallback(this);
+            }
+            frameCallbackPosted = true;
+        } else {
+            // Idle frame, stop measuring until the next update
+            lastFrameTimeNanos = -1;
+        }
+        resetFrame();
+    }
+
+    private void recordFrame(long durationNanos) {
+        // Round to whole frame intervals, the frame time is aligned to vsync
+        int intervals = (int) ((durationNanos + frameIntervalNanos / 2) / frameIntervalNanos);
+        int bucket = Math.max(0, Math.min(intervals - 1, DURATION_BUCKET_COUNT - 1));
+
+        frameCounts[GROUP_ALL][bucket]++;
+        if (frameSectionsChanged > 0) {
+            frameCounts[GROUP_STATES_CHANGED][bucket]++;
+        }
+        if (frameContainersMutated) {
+            frameCounts[GROUP_CONTAINERS_MUTATED][bucket]++;
+        }
+        if (frameSectionsChanged == 0 && !frameContainersMutated) {
+            frameCounts[GROUP_NO_PINNING][bucket]++;
+        }
+        if (frameImplicitScroll) {
+            frameCounts[GROUP_IMPLICIT_SCROLL][bucket]++;
+        }
+        if (bucket > 0) {
+            slowFrameCountsBySectionsChanged[Math.min(frameSectionsChanged, SECTIONS_CHANGED_BUCKET_COUNT - 1)]++;
+        }
+
+        measuredFrames++;
+        if (measuredFrames >= reportFrames) {
+            report();
+        }
+    }
+
+    private void resetFrame() {
+        frameUpdated = false;
+        frameSectionsChanged = 0;
+        frameContainersMutated = false;
+        frameImplicitScroll = false;
+    }
+
+    /**
+     * Passes statistics collected so far to {@link OnFrameStatsListener} and clears them.
+     * Nothing is reported if no frame has been measured.
+     * Can be called e.g. when the screen is paused.
+     */
+    public void report() {
+        if (measuredFrames == 0) {
+            return;
+        }
+        if (listener != null) {
+            listener.onFrameStats(this);
+        }
+        clear();
+    }
+
+    private void clear() {
+        for (int[] counts : frameCounts) {
+            Arrays.fill(counts, 0);
+        }
+        Arrays.fill(slowFrameCountsBySectionsChanged, 0);
+        measuredFrames = 0;
+    }
+
+    /**
+     * @return Number of measured frames since the last report.
+     */
+    public int getMeasuredFrames() {
+        return measuredFrames;
+    }
+
+    /**
+     * @param group One of <code>GROUP_*</code> constants.
+     * @param bucket Frame duration bucket, see {@link #DURATION_BUCKET_COUNT}.
+     * @return Number of frames of given group and duration.
+     */
+    public int getFrameCount(int group, int bucket) {
+        return frameCounts[group][bucket];
+    }
+
+    /**
+     * @param group One of <code>GROUP_*</code> constants.
+     * @return Number of frames of given group which took longer than one frame interval.
+     */
+    public int getSlowFrameCount(int group) {
+        int count = 0;
+        for (int bucket = 1; bucket < DURATION_BUCKET_COUNT; bucket++) {
+            count += frameCounts[group][bucket];
+        }
+        return count;
+    }
+
+    /**
+     * @param bucket Number of sections which changed their state,
+     *               see {@link #SECTIONS_CHANGED_BUCKET_COUNT}.
+     * @return Number of slow frames in which given number of sections changed their state.
+     */
+    public int getSlowFrameCountBySectionsChanged(int bucket) {
+        return slowFrameCountsBySectionsChanged[bucket];
+    }
+
+    public long getFrameIntervalNanos() {
+        return frameIntervalNanos;
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.github.vicianm.stickylinearlayout;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded LRU cache of sections which have pinned header/footer views created.
+ * <p>Pinned views are created the first time a section is pinned. When the number
+ * of sections with pinned views exceeds the cache size, views of the least recently
+ * pinned sections are released. Sections which are currently pinned are never
+ * released, i.e. the cache may temporarily grow over its size.</p>
+ */
+class PinnedViewCache {
+
+    /**
+     * Creates and releases pinned views on behalf of the cache.
+     */
+    interface Callback {
+
+        void onCreatePinnedViews(SectionData sectionData);
+
+        void onReleasePinnedViews(SectionData sectionData);
+    }
+
+    /**
+     * Sections in access order, the least recently used first.
+     */
+    private final LinkedHashMap<SectionData, Boolean> sections = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Callback callback;
+
+    /**
+     * Maximum number of sections with pinned views,
+     * value lower than <code>1</code> means unbounded cache.
+     */
+    private int maxSize;
+
+    PinnedViewCache(Callback callback, int maxSize) {
+        this.callback = callback;
+        this.maxSize = maxSize;
+    }
+
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    int size() {
+        return sections.size();
+    }
+
+    /**
+     * Marks pinned views of the section as the most recently used.
+     * Views are created if the section does not have them yet.
+     * @return <code>true</code> if pinned views have been created.
+     */
+    boolean use(SectionData sectionData) {
+        if (sections.get(sectionData) != null) {
+            return false;
+        }
+        callback.onCreatePinnedViews(sectionData);
+        sections.put(sectionData, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * Releases pinned views of the least recently used sections until the cache fits its size.
+     * Sections shown in header area <code>[upFrom, upTo)</code> and footer area
+     * <code>[downFrom, downTo)</code> are skipped, other pinned sections are released as well.
+     * <p>Shown sections are expected to be used after the others, so the iteration
+     * stops right after the evicted sections.</p>
+     */
+    void trim(int upFrom, int upTo, int downFrom, int downTo) {
+        if (maxSize < 1 || sections.size() <= maxSize) {
+            return;
+        }
+        Iterator<SectionData> iterator = sections.keySet().iterator();
+        while (sections.size() > maxSize && iterator.hasNext()) {
+            SectionData sectionData = iterator.next();
+            int index = sectionData.getIndex();
+            if ((index >= upFrom && index < upTo) || (index >= downFrom && index < downTo)) {
+                continue;
+            }
+            iterator.remove();
+            callback.onReleasePinnedViews(sectionData);
+        }
+    }
+
+    /**
+     * Releases pinned views of the section, e.g. after it is removed from the form.
+     */
+    void remove(SectionData sectionData) {
+        if (sections.remove(sectionData) != null) {
+            callback.onReleasePinnedViews(sectionData);
+        }
+    }
+
+    /**
+     * Releases pinned views of all sections.
+     */
+    void clear() {
+        for (SectionData sectionData : sections.keySet()) {
+            callback.onReleasePinnedViews(sectionData);
+        }
+        sections.clear();
+    }
+
+}
@@ -0,0 +1,734 @@
+package com.github.vicianm.stickylinearlayout;
+
+import java.util.Arrays;
+
+/**
+ * Calculates which section headers are pinned up, unpinned or pinned down.
+ * <p>The engine works with primitive data only: offsets of section headers
+ * (Y coordinates of section headers within the form), heights of pinned
+ * headers/footers, scroll position and height of the form viewport. It does
+ * not depend on Android framework classes, therefore it can be unit tested
+ * and benchmarked on plain JVM. {@link StickyLinearLayout} feeds the engine
+ * with data read from views and reflects the results in its UI.</p>
+ * <p>Section headers are direct children of a vertical form layout,
+ * therefore offsets are non-decreasing in section order. This allows
+ * resolving boundaries between pinned up, unpinned and pinned down sections
+ * with binary search. Heights of pinned headers/footers are kept as prefix
+ * sums, i.e. height of any run of consecutive headers/footers is an O(1) lookup.</p>
+ * <p>After each {@link #update(int, int, int)} sections <code>[0, getPinnedUpEnd())</code>
+ * are pinned up and sections <code>[getPinnedDownStart(), size())</code> are pinned down.</p>
+ */
+class PinningEngine {
+
+    static final byte STATE_PINNED_UP = 0;
+    static final byte STATE_PINNED_DOWN = 1;
+    static final byte STATE_UNPINNED = 2;
+
+    private int[] offsets = new int[16];
+
+    /**
+     * Pending shift of offsets, offsets of sections <code>[shiftFrom, size)</code> are
+     * lower by <code>shiftDelta</code> than the actual ones (see {@link #shiftOffsets(int, int)}).
+     */
+    private int shiftFrom = 0;
+    private int shiftDelta = 0;
+
+    /**
+     * <code>pinnedUpHeightSums[i]</code> holds the sum of heights
+     * of pinned up headers of sections <code>[0, i)</code>.
+     */
+    private int[] pinnedUpHeightSums = new int[17];
+
+    /**
+     * <code>pinnedDownHeightSums[i]</code> holds the sum of heights
+     * of pinned down headers of sections <code>[0, i)</code>.
+     */
+    private int[] pinnedDownHeightSums = new int[17];
+
+    private int[] pinnedUpHeights = new int[16];
+    private int[] pinnedDownHeights = new int[16];
+
+    private int size = 0;
+
+    private boolean offsetsValid = false;
+    private boolean heightsValid = false;
+
+    private int maxHeaderRows;
+    private int maxFooterRows;
+
+    // Results of the most recent update
+
+    private boolean statesValid = false;
+    private int pinnedUpEnd = 0;
+    private int pinnedDownStart = 0;
+
+    private int changedUpFrom;
+    private int changedUpTo;
+    private int changedDownFrom;
+    private int changedDownTo;
+
+    private int pinningHeader = -1;
+    private int pinningFooter = -1;
+
+    private int prevFooterRowsHeight;
+
+    // Results of the most recent projection
+
+    private int projectedUpFrom;
+    private int projectedUpTo;
+    private int projectedDownFrom;
+    private int projectedDownTo;
+
+    PinningEngine(int maxHeaderRows, int maxFooterRows) {
+        this.maxHeaderRows = maxHeaderRows;
+        this.maxFooterRows = maxFooterRows;
+    }
+
+    int getMaxHeaderRows() {
+        return maxHeaderRows;
+    }
+
+    int getMaxFooterRows() {
+        return maxFooterRows;
+    }
+
+    // ------------------------------------------------------------------------
+    // Geometry
+    // ------------------------------------------------------------------------
+
+    /**
+     * Appends new section to the end of the form.
+     * Offset and heights of the section have to be set before next update.
+     */
+    void addSection() {
+        ensureCapacity(size + 1);
+        offsets[size] = 0;
+        pinnedUpHeights[size] = 0;
+        pinnedDownHeights[size] = 0;
+        size++;
+        offsetsValid = false;
+        heightsValid = false;
+        statesValid = false;
+    }
+
+    /**
+     * Inserts new section at given <code>index</code>, sections from <code>index</code>
+     * are shifted. The section is placed between its neighbours, i.e. it gets
+     * the state implied by boundaries of the most recent update.
+     * @param offset Offset of the section until the actual one is set (it must
+     *               keep offsets sorted, e.g. offset of the following section).
+     */
+    void insertSection(int index, int offset, int pinnedUpHeight, int pinnedDownHeight) {
+        applyShift();
+        ensureCapacity(size + 1);
+        System.arraycopy(offsets, index, offsets, index + 1, size - index);
+        System.arraycopy(pinnedUpHeights, index, pinnedUpHeights, index + 1, size - index);
+        System.arraycopy(pinnedDownHeights, index, pinnedDownHeights, index + 1, size - index);
+        offsets[index] = offset;
+        pinnedUpHeights[index] = Math.max(0, pinnedUpHeight);
+        pinnedDownHeights[index] = Math.max(0, pinnedDownHeight);
+        size++;
+
+        if (index < pinnedUpEnd) {
+            pinnedUpEnd++;
+        }
+        if (index < pinnedDownStart) {
+            pinnedDownStart++;
+        }
+        onSectionsShifted(index);
+    }
+
+    /**
+     * Removes section at given <code>index</code>, following sections are shifted.
+     */
+    void removeSection(int index) {
+        applyShift();
+        System.arraycopy(offsets, index + 1, offsets, index, size - index - 1);
+        System.arraycopy(pinnedUpHeights, index + 1, pinnedUpHeights, index, size - index - 1);
+        System.arraycopy(pinnedDownHeights, index + 1, pinnedDownHeights, index, size - index - 1);
+        size--;
+
+        if (index < pinnedUpEnd) {
+            pinnedUpEnd--;
+        }
+        if (index < pinnedDownStart) {
+            pinnedDownStart--;
+        }
+        onSectionsShifted(index);
+    }
+
+    private void onSectionsShifted(int index) {
+        if (heightsValid) {
+            updateHeightSums(index);
+        }
+        pinningHeader = -1;
+        pinningFooter = -1;
+        changedUpFrom = changedUpTo = changedDownFrom = changedDownTo = 0;
+    }
+
+    /**
+     * Preallocates storage for <code>count</code> more sections, e.g. before sections
+     * of an inflated form are added one by one.
+     */
+    void reserve(int count) {
+        ensureCapacity(size + count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (offsets.length < capacity) {
+            int newCapacity = Math.max(capacity, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, newCapacity);
+            pinnedUpHeights = Arrays.copyOf(pinnedUpHeights, newCapacity);
+            pinnedDownHeights = Arrays.copyOf(pinnedDownHeights, newCapacity);
+            pinnedUpHeightSums = Arrays.copyOf(pinnedUpHeightSums, newCapacity + 1);
+            pinnedDownHeightSums = Arrays.copyOf(pinnedDownHeightSums, newCapacity + 1);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void setOffset(int index, int offset) {
+        offsets[index] = index >= shiftFrom ? offset - shiftDelta : offset;
+    }
+
+    /**
+     * @return Offset (Y coordinate) of section header at given <code>index</code>.
+     */
+    int getOffset(int index) {
+        return index >= shiftFrom ? offsets[index] + shiftDelta : offsets[index];
+    }
+
+    /**
+     * Adds <code>delta</code> to offsets of sections <code>[from, size)</code>,
+     * e.g. after height of the section above them has changed.
+     * <p>The shift is kept pending and merged with the next one, only offsets
+     * between starts of both shifts are updated. Consecutive shifts of a scrolled
+     * form (e.g. rows measured for the first time) start near each other, so a shift
+     * does not cost O(size).</p>
+     */
+    void shiftOffsets(int from, int delta) {
+        if (delta == 0 || from >= size) {
+            return;
+        }
+        if (shiftDelta == 0) {
+            shiftFrom = from;
+        } else if (from > shiftFrom) {
+            // Sections [shiftFrom, from) are not shifted by this call
+            for (int i = shiftFrom; i < from; i++) {
+                offsets[i] += shiftDelta;
+            }
+            shiftFrom = from;
+        } else {
+            // Sections [from, shiftFrom) are shifted by this call only
+            for (int i = from; i < shiftFrom; i++) {
+                offsets[i] += delta;
+            }
+        }
+        shiftDelta += delta;
+    }
+
+    /**
+     * Applies pending shift of offsets, e.g. before sections are moved.
+     */
+    private void applyShift() {
+        if (shiftDelta != 0) {
+            for (int i = shiftFrom; i < size; i++) {
+                offsets[i] += shiftDelta;
+            }
+            shiftDelta = 0;
+        }
+        shiftFrom = 0;
+    }
+
+    /**
+     * Marks all offsets as set, see {@link #invalidateOffsets()}.
+     */
+    void validateOffsets() {
+        offsetsValid = true;
+    }
+
+    /**
+     * Marks offsets as outdated, e.g. after the form has been laid out again.
+     * Offsets have to be set again before next use.
+     */
+    void invalidateOffsets() {
+        offsetsValid = false;
+    }
+
+    boolean isOffsetsValid() {
+        return offsetsValid;
+    }
+
+    /**
+     * Sets heights of pinned headers/footers of section at given <code>index</code>.
+     * Prefix sums are recalculated lazily before they are used.
+     */
+    void setPinnedHeights(int index, int pinnedUpHeight, int pinnedDownHeight) {
+        pinnedUpHeights[index] = Math.max(0, pinnedUpHeight);
+        pinnedDownHeights[index] = Math.max(0, pinnedDownHeight);
+        heightsValid = false;
+    }
+
+    /**
+     * @return <code>false</code> if any height has changed since prefix sums were calculated.
+     */
+    boolean isHeightsValid() {
+        return heightsValid;
+    }
+
+    /**
+     * Recalculates prefix sums of pinned headers/footers heights.
+     */
+    void rebuildHeightSums() {
+        updateHeightSums(0);
+        heightsValid = true;
+    }
+
+    /**
+     * Recalculates prefix sums of sections <code>[from, size)</code>.
+     */
+    private void updateHeightSums(int from) {
+        for (int i = from; i < size; i++) {
+            pinnedUpHeightSums[i + 1] = pinnedUpHeightSums[i] + pinnedUpHeights[i];
+            pinnedDownHeightSums[i + 1] = pinnedDownHeightSums[i] + pinnedDownHeights[i];
+        }
+    }
+
+    private void ensureHeightSums() {
+        if (!heightsValid) {
+            rebuildHeightSums();
+        }
+    }
+
+    /**
+     * @return Height of pinned up header of section at given <code>index</code>.
+     */
+    int getPinnedUpHeight(int index) {
+        return pinnedUpHeights[index];
+    }
+
+    /**
+     * @return Total height of pinned up headers of sections <code>[from, to)</code>.
+     */
+    int getPinnedUpHeight(int from, int to) {
+        ensureHeightSums();
+        return pinnedUpHeightSums[to] - pinnedUpHeightSums[from];
+    }
+
+    /**
+     * @return Height of pinned down header of section at given <code>index</code>.
+     */
+    int getPinnedDownHeight(int index) {
+        return pinnedDownHeights[index];
+    }
+
+    /**
+     * @return Total height of pinned down headers of sections <code>[from, to)</code>.
+     */
+    int getPinnedDownHeight(int from, int to) {
+        ensureHeightSums();
+        return pinnedDownHeightSums[to] - pinnedDownHeightSums[from];
+    }
+
+    /**
+     * @return The highest total height of <code>rows</code> consecutive pinned up headers.
+     */
+    int getMaxPinnedUpHeight(int rows) {
+        ensureHeightSums();
+        return getMaxHeight(pinnedUpHeightSums, rows);
+    }
+
+    /**
+     * @return The highest total height of <code>rows</code> consecutive pinned down headers.
+     */
+    int getMaxPinnedDownHeight(int rows) {
+        ensureHeightSums();
+        return getMaxHeight(pinnedDownHeightSums, rows);
+    }
+
+    private int getMaxHeight(int[] heightSums, int rows) {
+        int max = 0;
+        for (int i = 0; i < size; i++) {
+            int from = Math.max(0, i + 1 - rows);
+            max = Math.max(max, heightSums[i + 1] - heightSums[from]);
+        }
+        return max;
+    }
+
+    /**
+     * Finds pinned up header which contains <code>y</code> coordinate
+     * if headers of sections <code>[from, to)</code> are stacked one below another.
+     * @return Index of found section or <code>to</code> if <code>y</code> lies below the last header.
+     */
+    int findPinnedUpRow(int from, int to, int y) {
+        ensureHeightSums();
+        return findRow(pinnedUpHeightSums, from, to, y);
+    }
+
+    /**
+     * Finds pinned down header which contains <code>y</code> coordinate
+     * if headers of sections <code>[from, to)</code> are stacked one below another.
+     * @return Index of found section or <code>to</code> if <code>y</code> lies below the last header.
+     */
+    int findPinnedDownRow(int from, int to, int y) {
+        ensureHeightSums();
+        return findRow(pinnedDownHeightSums, from, to, y);
+    }
+
+    private int findRow(int[] heightSums, int from, int to, int y) {
+        // Find the last section which starts at or above 'y'
+        int target = heightSums[from] + y;
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (heightSums[mid + 1] <= target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Index of the first section with offset greater than or equal to <code>y</code>,
+     * i.e. number of sections with offset lower than <code>y</code>.
+     */
+    int lowerBound(int y) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getOffset(mid) < y) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Index of the first section with offset greater than <code>y</code>,
+     * or {@link #size()} if there is no such section.
+     */
+    int upperBound(int y) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getOffset(mid) <= y) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // ------------------------------------------------------------------------
+    // Pinning
+    // ------------------------------------------------------------------------
+
+    /**
+     * Forgets states of all sections. Next update resolves state of every section.
+     */
+    void invalidateStates() {
+        statesValid = false;
+    }
+
+    /**
+     * Resolves new boundaries between pinned up, unpinned and pinned down sections.
+     * <p>Only sections in ranges <code>[getChangedUpFrom(), getChangedUpTo())</code>
+     * and <code>[getChangedDownFrom(), getChangedDownTo())</code> might have changed
+     * their state.</p>
+     * @param scrollY Current scroll position of the form.
+     * @param oldScrollY Scroll position of the form in the previous update.
+     * @param viewportHeight Height of the visible part of the form.
+     */
+    void update(int scrollY, int oldScrollY, int viewportHeight) {
+
+        boolean scrollDown = scrollY > oldScrollY; // scrolling the scrollview content towards the bottom
+        boolean scrollUp = !scrollDown; // scrolling the scrollview content towards the top
+
+        ensureHeightSums();
+        if (!statesValid) {
+            // No section has been pinned yet
+            pinnedUpEnd = 0;
+            pinnedDownStart = size;
+        }
+
+        // STEP A:
+        // Calculate heights of header/footer from available state data.
+        // In other words, we need to get notion of how the header/footer looked
+        // in previous update. This info is used to detect diffs in header/footer
+        // content before and after the scroll.
+
+        int prevHeaderRowsCount = pinnedUpEnd;
+        int prevFooterRowsCount = size - pinnedDownStart;
+        // take maxHeader rows into consideration (only the last 'maxHeaderRows' rows are visible)
+        int prevHeaderHeight = getPinnedUpHeight(
+                maxHeaderRows > 0 ? Math.max(0, pinnedUpEnd - maxHeaderRows) : 0,
+                pinnedUpEnd);
+        // take maxFooter rows into consideration (only the first 'maxFooterRows' rows are visible)
+        int prevFooterHeight = getPinnedDownHeight(
+                pinnedDownStart,
+                maxFooterRows > 0 ? Math.min(size, pinnedDownStart + maxFooterRows) : size);
+        prevFooterRowsHeight = getPinnedDownHeight(pinnedDownStart, size);
+        // height of the header row which is unpinned first (the last PINNED_UP section)
+        int headerRowHeight = size == 0 ? 0 : pinnedUpHeights[Math.max(0, pinnedUpEnd - 1)];
+        // height of the footer row which is pinned next (the last section above PINNED_DOWN sections)
+        int footerRowHeight = size == 0 ? 0 : pinnedDownHeights[Math.max(0, pinnedDownStart - 1)];
+
+        // STEP B:
+        // Calculate the new content of header/footer depending on
+        // - current scroll position of the form
+        // - previous content of header/footer (see step A)
+        // Section header is PINNED_UP if it lies above 'pinnedUpThreshold' and
+        // PINNED_DOWN if it lies below 'pinnedDownThreshold'. Both thresholds are
+        // the same for all sections so the boundaries are found by binary search
+        // and only sections between old and new boundaries change their state.
+
+        int pinnedUpThreshold = scrollDown && prevHeaderRowsCount < maxHeaderRows
+                ? scrollY + prevHeaderHeight
+                : scrollY + prevHeaderHeight - headerRowHeight;
+        int pinnedDownThreshold = scrollUp && prevFooterRowsCount < maxFooterRows
+                ? scrollY + viewportHeight - prevFooterHeight - footerRowHeight
+                : scrollY + viewportHeight - prevFooterHeight;
+
+        int newPinnedUpEnd = lowerBound(pinnedUpThreshold);
+        int newPinnedDownStart = Math.max(newPinnedUpEnd, upperBound(pinnedDownThreshold));
+
+        if (statesValid) {
+            changedUpFrom = Math.min(pinnedUpEnd, newPinnedUpEnd);
+            changedUpTo = Math.max(pinnedUpEnd, newPinnedUpEnd);
+            // Section might jump from PINNED_DOWN to PINNED_UP (large scroll step),
+            // make sure it is not reported twice.
+            changedDownFrom = Math.max(changedUpTo, Math.min(pinnedDownStart, newPinnedDownStart));
+            changedDownTo = Math.max(changedDownFrom, Math.max(pinnedDownStart, newPinnedDownStart));
+        } else {
+            changedUpFrom = 0;
+            changedUpTo = size;
+            changedDownFrom = size;
+            changedDownTo = size;
+        }
+        pinnedUpEnd = newPinnedUpEnd;
+        pinnedDownStart = newPinnedDownStart;
+        statesValid = true;
+
+        // This section is UNPINNED yet, but is soon about to be PINNED_UP
+        // The section will be PINNED_UP after the header is fully scrolled
+        // so there is place for the new header.
+        pinningHeader = -1;
+        if (pinnedUpEnd >= maxHeaderRows) {
+            int candidate = Math.min(lowerBound(scrollY + prevHeaderHeight), pinnedDownStart) - 1;
+            if (candidate >= pinnedUpEnd) {
+                pinningHeader = candidate;
+            }
+        }
+
+        // This section is UNPINNED yet, but is soon about to be PINNED_DOWN
+        // The section will be PINNED_DOWN after the footer is fully scrolled
+        // so there is place for the new footer.
+        pinningFooter = -1;
+        if (size - pinnedDownStart >= maxFooterRows) {
+            int candidate = pinnedDownStart - 1;
+            if (candidate >= pinnedUpEnd &&
+                    getOffset(candidate) + pinnedDownHeights[candidate] > scrollY + viewportHeight - prevFooterHeight) {
+                pinningFooter = candidate;
+            }
+        }
+    }
+
+    boolean isStatesValid() {
+        return statesValid;
+    }
+
+    /**
+     * @return State of section at given <code>index</code> resolved by the most recent update,
+     * i.e. {@link #STATE_PINNED_UP}, {@link #STATE_PINNED_DOWN} or {@link #STATE_UNPINNED}.
+     */
+    byte getState(int index) {
+        if (index < pinnedUpEnd) {
+            return STATE_PINNED_UP;
+        } else if (index >= pinnedDownStart) {
+            return STATE_PINNED_DOWN;
+        } else {
+            return STATE_UNPINNED;
+        }
+    }
+
+    int getPinnedUpEnd() {
+        return pinnedUpEnd;
+    }
+
+    int getPinnedDownStart() {
+        return pinnedDownStart;
+    }
+
+    /**
+     * @return The first section shown in header area, i.e. header area shows
+     * the last <code>maxHeaderRows</code> sections of <code>[0, getPinnedUpEnd())</code>.
+     */
+    int getShownUpFrom() {
+        return maxHeaderRows > 0 ? Math.max(0, pinnedUpEnd - maxHeaderRows) : 0;
+    }
+
+    /**
+     * @return End (exclusive) of sections shown in footer area, i.e. footer area shows
+     * the first <code>maxFooterRows</code> sections of <code>[getPinnedDownStart(), size())</code>.
+     */
+    int getShownDownTo() {
+        return maxFooterRows > 0 ? Math.min(size, pinnedDownStart + maxFooterRows) : size;
+    }
+
+    int getChangedUpFrom() {
+        return changedUpFrom;
+    }
+
+    int getChangedUpTo() {
+        return changedUpTo;
+    }
+
+    int getChangedDownFrom() {
+        return changedDownFrom;
+    }
+
+    int getChangedDownTo() {
+        return changedDownTo;
+    }
+
+    /**
+     * @return Index of unpinned section which is about to be pinned up, or <code>-1</code>.
+     */
+    int getPinningHeader() {
+        return pinningHeader;
+    }
+
+    /**
+     * @return Index of unpinned section which is about to be pinned down, or <code>-1</code>.
+     */
+    int getPinningFooter() {
+        return pinningFooter;
+    }
+
+    /**
+     * @return Total height of pinned down headers before the most recent update.
+     */
+    int getPrevFooterRowsHeight() {
+        return prevFooterRowsHeight;
+    }
+
+    // ------------------------------------------------------------------------
+    // Projection
+    // ------------------------------------------------------------------------
+
+    /**
+     * Estimates which sections get pinned if the form is scrolled from the position
+     * of the most recent update to <code>targetScrollY</code> (e.g. the final position of a fling).
+     * States are not changed, see {@link #update(int, int, int)}.
+     * <p>Sections in <code>[getProjectedUpFrom(), getProjectedUpTo())</code> get pinned up,
+     * sections in <code>[getProjectedDownFrom(), getProjectedDownTo())</code> get pinned down
+     * (including the section which is about to be pinned down at the target position).
+     * Both ranges are empty if states are not resolved yet.</p>
+     */
+    void project(int targetScrollY, int viewportHeight) {
+        projectedUpFrom = projectedUpTo = pinnedUpEnd;
+        projectedDownFrom = projectedDownTo = pinnedDownStart;
+        if (!statesValid) {
+            return;
+        }
+
+        ensureHeightSums();
+        // Header/footer is expected to be full at the target position
+        int headerHeight = maxHeaderRows > 0 ? getMaxPinnedUpHeight(maxHeaderRows) : 0;
+        int footerHeight = maxFooterRows > 0 ? getMaxPinnedDownHeight(maxFooterRows) : 0;
+
+        int targetUpEnd = lowerBound(targetScrollY + headerHeight);
+        int targetDownStart = Math.max(targetUpEnd, upperBound(targetScrollY + viewportHeight - footerHeight));
+
+        if (targetUpEnd > pinnedUpEnd) {
+            projectedUpTo = Math.min(targetUpEnd, pinnedDownStart);
+        }
+        if (targetDownStart < pinnedDownStart) {
+            projectedDownFrom = Math.max(pinnedUpEnd, Math.max(targetUpEnd, targetDownStart - 1));
+        }
+    }
+
+    int getProjectedUpFrom() {
+        return projectedUpFrom;
+    }
+
+    int getProjectedUpTo() {
+        return projectedUpTo;
+    }
+
+    int getProjectedDownFrom() {
+        return projectedDownFrom;
+    }
+
+    int getProjectedDownTo() {
+        return projectedDownTo;
+    }
+
+    // ------------------------------------------------------------------------
+    // Implicit scroll
+    // ------------------------------------------------------------------------
+
+    /**
+     * @return Scroll position at which section at given <code>index</code> is fully visible
+     * right below the pinned headers of sections above it.
+     * @param index Index of the section.
+     * @param scrollToSectionMargin Margin between pinned headers and the section header.
+     * @param headerAreaHeight Maximal height of header area.
+     */
+    int getScrollToSectionY(int index, int scrollToSectionMargin, int headerAreaHeight) {
+        // Sections above will be PINNED_UP after the scroll,
+        // only the last 'maxHeaderRows' of them are visible.
+        int heightAfterScroll = getPinnedUpHeight(
+                maxHeaderRows > 0 ? Math.max(0, index - maxHeaderRows) : 0,
+                index);
+        heightAfterScroll = Math.min(heightAfterScroll, headerAreaHeight);
+        return getOffset(index) - heightAfterScroll - scrollToSectionMargin;
+    }
+
+    /**
+     * @return <code>true</code> if scroll from <code>currentScrollY</code>
+     * to <code>scrollY</code> is needed and possible.
+     */
+    static boolean isScrollNeeded(int currentScrollY, int scrollY, int minScrollY, int maxScrollY) {
+        if (scrollY > currentScrollY) {
+            // should scroll down
+            return currentScrollY < maxScrollY;
+        } else if (scrollY < currentScrollY) {
+            // should scroll up
+            return currentScrollY > minScrollY;
+        } else {
+            // no scroll needed, position is already OK
+            return false;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if scroll towards <code>implicitScrollToY</code>
+     * has reached its target or the top/bottom of the form.
+     */
+    static boolean isImplicitScrollFinished(int scrollY, int oldScrollY, int implicitScrollToY,
+                                            int minScrollY, int maxScrollY) {
+        if (scrollY < oldScrollY) {
+            // scrolling up
+            return
+                scrollY <= minScrollY ||
+                scrollY == implicitScrollToY;
+        } else {
+            // scrolling down
+            return
+                scrollY >= maxScrollY ||
+                scrollY == implicitScrollToY;
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.github.vicianm.stickylinearlayout;
+
+import java.util.Arrays;
+
+/**
+ * Heights and offsets of rows of a virtualized form (see {@link StickyRecyclerLayout}).
+ * <p>Only rows which have been laid out have known heights. Height of any
+ * other row is estimated from the first row measured. Offsets (Y coordinates
+ * of rows within the form) are prefix sums of row heights kept in a Fenwick
+ * (binary indexed) tree, i.e. both a change of a row height and an offset
+ * lookup cost O(log size). Only the first measured row (which sets the estimate)
+ * and insertion/removal of rows rebuild the tree.</p>
+ */
+class RowHeights {
+
+    private static final int UNKNOWN = -1;
+
+    private int[] heights = new int[0];
+
+    /**
+     * Fenwick tree of row heights (measured or estimated),
+     * <code>tree[i]</code> holds the sum of heights of rows
+     * <code>[i - (i &amp; -i), i)</code>.
+     */
+    private int[] tree = new int[1];
+
+    private int size = 0;
+
+    private int startOffset = 0;
+
+    private int estimatedHeight = UNKNOWN;
+
+    /**
+     * Forgets heights of all rows, estimated height is kept.
+     * @param size New number of rows.
+     */
+    void reset(int size) {
+        ensureCapacity(size);
+        Arrays.fill(heights, 0, size, UNKNOWN);
+        this.size = size;
+        rebuildTree();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param startOffset Y coordinate of the first row (e.g. top padding of the form).
+     */
+    void setStartOffset(int startOffset) {
+        this.startOffset = startOffset;
+    }
+
+    int getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * @return <code>true</code> if any row has been measured, i.e. heights
+     * of rows which have not been measured yet are estimated.
+     */
+    boolean hasEstimate() {
+        return estimatedHeight != UNKNOWN;
+    }
+
+    /**
+     * Sets measured height of row at given <code>position</code>.
+     * The first measured height becomes estimated height of all rows
+     * which have not been measured yet (see {@link #hasEstimate()}).
+     * @return Change of the row height, i.e. the change of offsets of all following rows
+     * (unless the estimate has been set by this call).
+     */
+    int setHeight(int position, int height) {
+        int oldHeight = getHeight(position);
+        heights[position] = height;
+        if (estimatedHeight == UNKNOWN) {
+            estimatedHeight = height;
+            rebuildTree();
+        } else if (oldHeight != height) {
+            add(position, height - oldHeight);
+        }
+        return height - oldHeight;
+    }
+
+    /**
+     * Forgets measured height of row at given <code>position</code>, e.g. after
+     * the row has been bound to new data. Estimated height is used until it is measured again.
+     * @return Change of the row height, see {@link #setHeight(int, int)}.
+     */
+    int invalidate(int position) {
+        int oldHeight = getHeight(position);
+        heights[position] = UNKNOWN;
+        int height = getHeight(position);
+        if (oldHeight != height) {
+            add(position, height - oldHeight);
+        }
+        return height - oldHeight;
+    }
+
+    /**
+     * Inserts <code>count</code> rows (with estimated heights) at given <code>position</code>.
+     */
+    void insert(int position, int count) {
+        ensureCapacity(size + count);
+        System.arraycopy(heights, position, heights, position + count, size - position);
+        Arrays.fill(heights, position, position + count, UNKNOWN);
+        size += count;
+        rebuildTree();
+    }
+
+    /**
+     * Removes <code>count</code> rows starting at given <code>position</code>.
+     */
+    void remove(int position, int count) {
+        System.arraycopy(heights, position + count, heights, position, size - position - count);
+        size -= count;
+        rebuildTree();
+    }
+
+    /**
+     * @return Measured height of the row or estimated one if the row has not been measured yet.
+     */
+    int getHeight(int position) {
+        int height = heights[position];
+        return height != UNKNOWN ? height : Math.max(0, estimatedHeight);
+    }
+
+    boolean isMeasured(int position) {
+        return heights[position] != UNKNOWN;
+    }
+
+    /**
+     * @return Y coordinate of row at given <code>position</code>,
+     * position <code>size()</code> returns height of the whole form.
+     */
+    int getOffset(int position) {
+        int offset = startOffset;
+        for (int i = position; i > 0; i -= i & -i) {
+            offset += tree[i];
+        }
+        return offset;
+    }
+
+    private void add(int position, int delta) {
+        for (int i = position + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private void rebuildTree() {
+        for (int i = 1; i <= size; i++) {
+            tree[i] = getHeight(i - 1);
+        }
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (heights.length < capacity) {
+            int newCapacity = Math.max(capacity, heights.length * 2);
+            heights = Arrays.copyOf(heights, newCapacity);
+            tree = new int[newCapacity + 1];
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.github.vicianm.stickylinearlayout;
 
+import android.graphics.Bitmap;
 import android.view.View;
 
 /**
@@ -20,6 +21,8 @@ public class SectionData {
 
     private HeaderState headerState;
 
+    private int index = -1;
+
     private boolean stateUpdate;
 
     private int scrollToSectionMargin;
@@ -28,11 +31,41 @@ public class SectionData {
     private View pinnedUpHeader;
     private View pinnedDownHeader;
 
+    private Bitmap snapshot;
+    private boolean snapshotValid;
+
+    private boolean collapsed;
+
+    private SectionPlaceholder placeholder;
+
+    private int pinnedUpHeaderHeight = -1;
+    private int pinnedDownHeaderHeight = -1;
+
     public SectionData(View formView, int scrollToSectionMargin) {
         setUnpinnedHeader(formView);
         this.scrollToSectionMargin = scrollToSectionMargin;
     }
 
+    /**
+     * Creates section of virtualized form (see {@link StickyRecyclerLayout}),
+     * unpinned header is set only while the header row is laid out.
+     */
+    SectionData(int scrollToSectionMargin) {
+        this.scrollToSectionMargin = scrollToSectionMargin;
+    }
+
+    /**
+     * @return Position of this section within the form (index of the section
+     * in {@link StickyLinearLayout#getSectionsData()}).
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    protected void setIndex(int index) {
+        this.index = index;
+    }
+
     public HeaderState getHeaderState() {
         return headerState;
     }
@@ -49,6 +82,8 @@ public class SectionData {
      * @return Reference to unpinned section header, i.e. the <code>View</code>
      * header directly included in form, i.e. the header View declared in
      * layout XML file (the on with <code>pin="true"</code> attribute).
+     * In {@link StickyRecyclerLayout} the header is <code>null</code>
+     * if the header row is not laid out.
      */
     public View getUnpinnedHeader() {
         return unpinnedHeader;
@@ -56,35 +91,136 @@ public class SectionData {
 
     protected void setUnpinnedHeader(View unpinnedHeader) {
         this.unpinnedHeader = unpinnedHeader;
-        this.unpinnedHeader.setTag(this);
+        this.unpinnedHeader.setTag(R.id.sticky_linear_layout_section, this);
+    }
+
+    /**
+     * Drops reference to unpinned header which is no longer
+     * laid out (see {@link StickyRecyclerLayout}).
+     */
+    void clearUnpinnedHeader() {
+        this.unpinnedHeader = null;
     }
 
     protected void setPinnedUpHeader(View pinnedUpHeader) {
         this.pinnedUpHeader = pinnedUpHeader;
-        this.pinnedUpHeader.setTag(this);
+        this.pinnedUpHeader.setTag(R.id.sticky_linear_layout_section, this);
     }
 
     protected void setPinnedDownHeader(View pinnedDownHeader) {
         this.pinnedDownHeader = pinnedDownHeader;
-        this.pinnedDownHeader.setTag(this);
+        this.pinnedDownHeader.setTag(R.id.sticky_linear_layout_section, this);
     }
 
     /**
-     * @return Section header instance displayed at the top of the form when
-     * section is 'pinned up' (see {@link HeaderState}).
+     * Drops references to pinned header/footer so they can be garbage collected.
+     * Measured heights are kept.
+     */
+    void releasePinnedHeaders() {
+        pinnedUpHeader = null;
+        pinnedDownHeader = null;
+    }
+
+    /**
+     * @return Section header instance displayed at the bottom of the form when
+     * section is 'pinned down' (see {@link HeaderState}) or <code>null</code>
+     * if it has not been created yet.
      */
     public View getPinnedDownHeader() {
         return pinnedDownHeader;
     }
 
     /**
-     * @return Section header instance displayed at the bottom of the form when
-     * section is 'pinned down' (see {@link HeaderState}).
+     * @return Section header instance displayed at the top of the form when
+     * section is 'pinned up' (see {@link HeaderState}) or <code>null</code>
+     * if it has not been created yet.
      */
     public View getPinnedUpHeader() {
         return pinnedUpHeader;
     }
 
+    /**
+     * @return Measured height (including vertical margins) of the header displayed
+     * when section is 'pinned up' or <code>-1</code> if it has not been measured yet.
+     */
+    public int getPinnedUpHeaderHeight() {
+        return pinnedUpHeaderHeight;
+    }
+
+    protected void setPinnedUpHeaderHeight(int pinnedUpHeaderHeight) {
+        this.pinnedUpHeaderHeight = pinnedUpHeaderHeight;
+    }
+
+    /**
+     * @return Measured height (including vertical margins) of the header displayed
+     * when section is 'pinned down' or <code>-1</code> if it has not been measured yet.
+     */
+    public int getPinnedDownHeaderHeight() {
+        return pinnedDownHeaderHeight;
+    }
+
+    protected void setPinnedDownHeaderHeight(int pinnedDownHeaderHeight) {
+        this.pinnedDownHeaderHeight = pinnedDownHeaderHeight;
+    }
+
+    /**
+     * @return Cached snapshot of unpinned header drawn in header/footer area
+     * in {@link StickyLinearLayout#PINNED_HEADER_MODE_SNAPSHOT} mode.
+     */
+    Bitmap getSnapshot() {
+        return snapshot;
+    }
+
+    void setSnapshot(Bitmap snapshot) {
+        this.snapshot = snapshot;
+        this.snapshotValid = snapshot != null;
+    }
+
+    /**
+     * @return <code>false</code> if the snapshot has to be captured again
+     * because the unpinned header might have changed since.
+     */
+    boolean isSnapshotValid() {
+        return snapshotValid;
+    }
+
+    /**
+     * Marks the snapshot outdated. Bitmap is kept, so it can be reused
+     * when the snapshot is captured again.
+     */
+    void invalidateSnapshot() {
+        snapshotValid = false;
+    }
+
+    void releaseSnapshot() {
+        snapshot = null;
+        snapshotValid = false;
+    }
+
+    /**
+     * @return <code>true</code> if rows of this section are hidden
+     * (see {@link StickyLinearLayout#setSectionCollapsed(SectionData, boolean)}).
+     */
+    public boolean isCollapsed() {
+        return collapsed;
+    }
+
+    void setCollapsed(boolean collapsed) {
+        this.collapsed = collapsed;
+    }
+
+    /**
+     * @return Placeholder of detached form rows of this section
+     * or <code>null</code> if the rows are attached.
+     */
+    SectionPlaceholder getPlaceholder() {
+        return placeholder;
+    }
+
+    void setPlaceholder(SectionPlaceholder placeholder) {
+        this.placeholder = placeholder;
+    }
+
     /**
      * Margin put between this section header and folded sections headers
      * after scroll (after user manually clicks the section header).
@@ -93,6 +229,24 @@ public class SectionData {
         return scrollToSectionMargin;
     }
 
+    /**
+     * Updates 'scroll to section' margin of virtualized form section
+     * after its header row has been changed by the adapter.
+     */
+    void setScrollToSectionMargin(int scrollToSectionMargin) {
+        this.scrollToSectionMargin = scrollToSectionMargin;
+    }
+
+    /**
+     * @return Section of given section header or pinned header/footer view, or <code>null</code>
+     * if the view is neither of them. The section is kept in a keyed tag of the view,
+     * the plain tag ({@link View#getTag()}) is left to the app.
+     */
+    public static SectionData of(View view) {
+        Object section = view.getTag(R.id.sticky_linear_layout_section);
+        return section instanceof SectionData ? (SectionData) section : null;
+    }
+
     public boolean update(HeaderState headerState) {
         stateUpdate = this.headerState != headerState;
         if (stateUpdate) this.headerState = headerState;
@@ -0,0 +1,31 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.content.Context;
+import android.view.View;
+
+/**
+ * Stands in for form rows of a section which is far from the visible part of the form.
+ * <p>Used by {@link StickyLinearLayout} when <code>offscreenDetachScreens</code> is set.
+ * Rows of the section are detached from the form and kept by the placeholder. The placeholder
+ * has the same height as the rows had, so offsets of section headers do not change.
+ * It draws nothing and it is never focused.</p>
+ */
+class SectionPlaceholder extends View {
+
+    private final View[] rows;
+
+    SectionPlaceholder(Context context, View[] rows) {
+        super(context);
+        this.rows = rows;
+        setFocusable(false);
+        setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_NO);
+    }
+
+    /**
+     * @return Detached form rows in the order they had in the form.
+     */
+    View[] getRows() {
+        return rows;
+    }
+
+}
@@ -0,0 +1,339 @@
+package com.github.vicianm.stickylinearlayout;
+
+import java.util.Arrays;
+
+/**
+ * Sections of a virtualized form (see {@link StickyRecyclerLayout}) and their rows.
+ * <p>Keeps adapter positions of section headers, heights of rows ({@link RowHeights})
+ * and offsets of sections in {@link PinningEngine} in sync while rows are measured,
+ * changed, inserted or removed. A measured row or a change of the adapter shifts
+ * offsets of the following sections only (see {@link PinningEngine#shiftOffsets(int, int)}),
+ * offsets of all sections are read from row heights only after the form is reset
+ * and after the first row is measured (which sets the estimated height of rows).</p>
+ * <p>Like {@link PinningEngine}, the class does not depend on Android framework
+ * views, rows are described by {@link Rows}.</p>
+ */
+class SectionRows {
+
+    /**
+     * Rows of the form, i.e. adapter of {@link StickyRecyclerLayout}.
+     */
+    interface Rows {
+
+        boolean isSectionHeader(int position);
+
+        /**
+         * @return 'Scroll to section' margin of section header at given <code>position</code>.
+         */
+        int getScrollToSectionMargin(int position);
+    }
+
+    /**
+     * Notified about sections which need their pinned views to be released.
+     */
+    interface Callback {
+
+        /**
+         * Section header row has been removed, the section is no longer part of the form.
+         */
+        void onSectionRemoved(SectionData section);
+
+        /**
+         * Section header row has been changed, pinned views have to be created again.
+         */
+        void onSectionChanged(SectionData section);
+    }
+
+    private int maxHeaderRows;
+    private int maxFooterRows;
+
+    private final Callback callback;
+
+    private SectionStore sections = new SectionStore();
+
+    private PinningEngine pinningEngine;
+
+    private final RowHeights rowHeights = new RowHeights();
+
+    /**
+     * Adapter positions of section headers, in section order.
+     */
+    private int[] positions = new int[16];
+
+    SectionRows(int maxHeaderRows, int maxFooterRows, Callback callback) {
+        this.maxHeaderRows = maxHeaderRows;
+        this.maxFooterRows = maxFooterRows;
+        this.callback = callback;
+        this.pinningEngine = new PinningEngine(maxHeaderRows, maxFooterRows);
+    }
+
+    /**
+     * Sets limits of header/footer rows, used by the engine
+     * created with the next {@link #reset(Rows, int)}.
+     */
+    void setMaxRows(int maxHeaderRows, int maxFooterRows) {
+        this.maxHeaderRows = maxHeaderRows;
+        this.maxFooterRows = maxFooterRows;
+    }
+
+    /**
+     * @return Sections of the form, the store is replaced by {@link #reset(Rows, int)}.
+     */
+    SectionStore getSections() {
+        return sections;
+    }
+
+    /**
+     * @return Engine of the form, the engine is replaced by {@link #reset(Rows, int)}.
+     */
+    PinningEngine getPinningEngine() {
+        return pinningEngine;
+    }
+
+    /**
+     * Recreates all sections, e.g. after the whole data set of the adapter has changed.
+     * Measured heights of rows are forgotten.
+     */
+    void reset(Rows rows, int itemCount) {
+        sections = new SectionStore();
+        pinningEngine = new PinningEngine(maxHeaderRows, maxFooterRows);
+        rowHeights.reset(itemCount);
+        for (int position = 0; position < itemCount; position++) {
+            if (rows.isSectionHeader(position)) {
+                int index = sections.size();
+                ensureCapacity(index + 1);
+                positions[index] = position;
+                sections.add(new SectionData(rows.getScrollToSectionMargin(position)));
+                pinningEngine.addSection();
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (positions.length < capacity) {
+            positions = Arrays.copyOf(positions, Math.max(capacity, positions.length * 2));
+        }
+    }
+
+    int getRowCount() {
+        return rowHeights.size();
+    }
+
+    /**
+     * @return Adapter position of header of section at given <code>index</code>.
+     */
+    int getPosition(int index) {
+        return positions[index];
+    }
+
+    /**
+     * @return Index of section to which row at given adapter <code>position</code>
+     * belongs or <code>-1</code> if the row lies above the first section.
+     */
+    int findSectionIndex(int position) {
+        return lowerBound(position + 1) - 1;
+    }
+
+    /**
+     * @return Index of the first section with header at or below given <code>position</code>.
+     */
+    private int lowerBound(int position) {
+        int low = 0;
+        int high = sections.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private boolean isSectionHeader(int position) {
+        int index = findSectionIndex(position);
+        return index >= 0 && positions[index] == position;
+    }
+
+    // ------------------------------------------------------------------------
+    // Geometry
+    // ------------------------------------------------------------------------
+
+    /**
+     * @return Y coordinate of row at given <code>position</code>, see {@link RowHeights#getOffset(int)}.
+     */
+    int getOffset(int position) {
+        return rowHeights.getOffset(position);
+    }
+
+    int getRowHeight(int position) {
+        return rowHeights.getHeight(position);
+    }
+
+    /**
+     * @param startOffset Y coordinate of the first row (e.g. top padding of the form).
+     */
+    void setStartOffset(int startOffset) {
+        int delta = startOffset - rowHeights.getStartOffset();
+        if (delta != 0) {
+            rowHeights.setStartOffset(startOffset);
+            pinningEngine.shiftOffsets(0, delta);
+        }
+    }
+
+    /**
+     * Sets measured height of row at given <code>position</code>,
+     * offsets of the following sections are shifted.
+     * @return Change of the row height, see {@link RowHeights#setHeight(int, int)}.
+     */
+    int setRowHeight(int position, int height) {
+        boolean estimated = rowHeights.hasEstimate();
+        int delta = rowHeights.setHeight(position, height);
+        if (!estimated) {
+            // Heights of all rows have changed
+            pinningEngine.invalidateOffsets();
+        } else if (delta != 0) {
+            onRowHeightChanged(position, delta);
+        }
+        return delta;
+    }
+
+    private void onRowHeightChanged(int position, int delta) {
+        int index = findSectionIndex(position);
+        pinningEngine.shiftOffsets(index + 1, delta);
+        if (index >= 0 && positions[index] == position) {
+            setEstimatedPinnedHeights(index);
+        }
+    }
+
+    /**
+     * Sets offsets of all sections if they are not valid, i.e. after {@link #reset(Rows, int)}
+     * or after the first row has been measured.
+     */
+    void validateOffsets() {
+        if (pinningEngine.isOffsetsValid()) {
+            return;
+        }
+        for (int i = 0; i < sections.size(); i++) {
+            pinningEngine.setOffset(i, rowHeights.getOffset(positions[i]));
+            setEstimatedPinnedHeights(i);
+        }
+        pinningEngine.validateOffsets();
+        pinningEngine.rebuildHeightSums();
+    }
+
+    /**
+     * Estimates heights of pinned views of section at given <code>index</code>
+     * from height of the section header row, unless the views are already created.
+     */
+    private void setEstimatedPinnedHeights(int index) {
+        SectionData section = sections.get(index);
+        int rowHeight = rowHeights.getHeight(positions[index]);
+        int upHeight = section.getPinnedUpHeader() != null
+                ? section.getPinnedUpHeaderHeight()
+                : rowHeight;
+        int downHeight = section.getPinnedDownHeader() != null
+                ? section.getPinnedDownHeaderHeight()
+                : rowHeight;
+        if (upHeight != pinningEngine.getPinnedUpHeight(index) || downHeight != pinningEngine.getPinnedDownHeight(index)) {
+            pinningEngine.setPinnedHeights(index, upHeight, downHeight);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Changes of the adapter
+    // ------------------------------------------------------------------------
+
+    /**
+     * Rows <code>[start, start + count)</code> have been bound to new data, their heights
+     * are estimated until they are measured again. Headers of changed sections get new
+     * pinned views. The form is reset if any row becomes or stops being a section header.
+     * @return <code>true</code> if the form has been reset, see {@link #reset(Rows, int)}.
+     */
+    boolean changeRows(Rows rows, int start, int count) {
+        int end = start + count;
+        for (int position = start; position < end; position++) {
+            if (rows.isSectionHeader(position) != isSectionHeader(position)) {
+                reset(rows, rowHeights.size());
+                return true;
+            }
+        }
+
+        for (int position = start; position < end; position++) {
+            int delta = rowHeights.invalidate(position);
+            if (delta != 0) {
+                onRowHeightChanged(position, delta);
+            }
+            if (isSectionHeader(position)) {
+                SectionData section = sections.get(findSectionIndex(position));
+                section.setScrollToSectionMargin(rows.getScrollToSectionMargin(position));
+                callback.onSectionChanged(section);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rows <code>[start, start + count)</code> have been inserted, new section
+     * headers among them create new sections.
+     */
+    void insertRows(Rows rows, int start, int count) {
+        int index = lowerBound(start);
+        for (int i = index; i < sections.size(); i++) {
+            positions[i] += count;
+        }
+        rowHeights.insert(start, count);
+        pinningEngine.shiftOffsets(index, rowHeights.getOffset(start + count) - rowHeights.getOffset(start));
+
+        for (int position = start; position < start + count; position++) {
+            if (rows.isSectionHeader(position)) {
+                insertSection(index++, position, rows.getScrollToSectionMargin(position));
+            }
+        }
+    }
+
+    private void insertSection(int index, int position, int scrollToSectionMargin) {
+        int size = sections.size();
+        ensureCapacity(size + 1);
+        System.arraycopy(positions, index, positions, index + 1, size - index);
+        positions[index] = position;
+
+        sections.insert(index, new SectionData(scrollToSectionMargin));
+        int rowHeight = rowHeights.getHeight(position);
+        pinningEngine.insertSection(index, rowHeights.getOffset(position), rowHeight, rowHeight);
+        if (pinningEngine.isStatesValid()) {
+            sections.updateState(index, pinningEngine.getState(index));
+        }
+    }
+
+    /**
+     * Rows <code>[start, start + count)</code> have been removed, sections of removed
+     * headers are removed, their rows become part of the section above.
+     */
+    void removeRows(int start, int count) {
+        int end = start + count;
+        int removedHeight = rowHeights.getOffset(end) - rowHeights.getOffset(start);
+
+        int from = lowerBound(start);
+        int to = lowerBound(end);
+        for (int index = to - 1; index >= from; index--) {
+            removeSection(index);
+        }
+
+        for (int i = from; i < sections.size(); i++) {
+            positions[i] -= count;
+        }
+        rowHeights.remove(start, count);
+        pinningEngine.shiftOffsets(from, -removedHeight);
+    }
+
+    private void removeSection(int index) {
+        int size = sections.size();
+        System.arraycopy(positions, index + 1, positions, index, size - index - 1);
+        SectionData section = sections.remove(index);
+        pinningEngine.removeSection(index);
+        callback.onSectionRemoved(section);
+    }
+
+}
@@ -0,0 +1,284 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+/**
+ * Draws snapshots of section headers stacked one below another.
+ * <p>Used by {@link StickyLinearLayout} in {@link StickyLinearLayout#PINNED_HEADER_MODE_SNAPSHOT}
+ * mode instead of separate pinned header/footer views. Snapshot of a section header is
+ * a bitmap cached in {@link SectionData}, it is captured lazily from the unpinned header
+ * (the header included in form) the first time the row is drawn. The snapshot is
+ * captured again after the unpinned header (or any of its descendants) has been
+ * invalidated, see {@link #onPreDraw()}.</p>
+ * <p>Only rows intersecting the visible area are drawn, snapshots of rows
+ * which are no longer visible are released to {@link SnapshotBitmapPool}.</p>
+ */
+class SectionSnapshotView extends View implements ViewTreeObserver.OnPreDrawListener {
+
+    /**
+     * Listener notified when user clicks on a section row.
+     */
+    interface OnSectionClickListener {
+        void onSectionClick(SectionData sectionData);
+    }
+
+    private final SectionStore sectionsData;
+    private final PinningEngine pinningEngine;
+    private final SnapshotBitmapPool snapshotPool;
+
+    /**
+     * <code>true</code> if pinned up heights are used to lay out rows,
+     * <code>false</code> for pinned down heights.
+     */
+    private final boolean pinnedUp;
+
+    private OnSectionClickListener onSectionClickListener;
+
+    private int from = 0;
+    private int to = 0;
+
+    private int drawnFrom = 0;
+    private int drawnTo = 0;
+
+    private final Rect clipBounds = new Rect();
+
+    /**
+     * Canvas used to capture snapshots, the target bitmap is set for each capture.
+     */
+    private final Canvas snapshotCanvas = new Canvas();
+
+    private final int touchSlop;
+    private float touchDownY;
+    private boolean touchTap;
+
+    SectionSnapshotView(Context context, SectionStore sectionsData, PinningEngine pinningEngine,
+                        SnapshotBitmapPool snapshotPool, boolean pinnedUp) {
+        super(context);
+        this.sectionsData = sectionsData;
+        this.pinningEngine = pinningEngine;
+        this.snapshotPool = snapshotPool;
+        this.pinnedUp = pinnedUp;
+        this.touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    }
+
+    void setOnSectionClickListener(OnSectionClickListener onSectionClickListener) {
+        this.onSectionClickListener = onSectionClickListener;
+    }
+
+    /**
+     * Sets sections <code>[from, to)</code> drawn by this view.
+     */
+    void setSections(int from, int to) {
+        if (this.from == from && this.to == to) {
+            return;
+        }
+        int oldHeight = getRowsHeight(this.from, this.to);
+        this.from = from;
+        this.to = to;
+        if (oldHeight != getRowsHeight(from, to)) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    private int getRowsHeight(int from, int to) {
+        return pinnedUp
+                ? pinningEngine.getPinnedUpHeight(from, to)
+                : pinningEngine.getPinnedDownHeight(from, to);
+    }
+
+    private int getRowHeight(int index) {
+        return pinnedUp
+                ? pinningEngine.getPinnedUpHeight(index)
+                : pinningEngine.getPinnedDownHeight(index);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnPreDrawListener(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        getViewTreeObserver().removeOnPreDrawListener(this);
+    }
+
+    /**
+     * Invalidates snapshots of drawn rows whose unpinned header has been invalidated
+     * since the previous frame (e.g. its text has changed, but not its size). The dirty
+     * flag of the header is also set if any of its descendants has been invalidated.
+     */
+    @Override
+    public boolean onPreDraw() {
+        boolean invalidated = false;
+        int to = Math.min(drawnTo, sectionsData.size());
+        for (int i = drawnFrom; i < to; i++) {
+            SectionData data = sectionsData.get(i);
+            View header = data.getUnpinnedHeader();
+            if (data.isSnapshotValid() && header != null && header.isDirty()) {
+                data.invalidateSnapshot();
+                invalidated = true;
+            }
+        }
+        if (invalidated) {
+            invalidate();
+        }
+        return true;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(
+                getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                resolveSize(getRowsHeight(from, to), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (!canvas.getClipBounds(clipBounds)) {
+            releaseSnapshots(drawnFrom, drawnTo);
+            drawnFrom = drawnTo = 0;
+            return;
+        }
+
+        // Header container shows the last rows, footer container the first ones.
+        // Either way skip rows which are outside of the visible area.
+        int newDrawnFrom = Math.max(from, findRow(Math.max(0, clipBounds.top)));
+        int newDrawnTo = newDrawnFrom;
+        int rowTop = getRowsHeight(from, newDrawnFrom);
+        for (int i = newDrawnFrom; i < to && rowTop < clipBounds.bottom; i++) {
+            drawSnapshot(canvas, sectionsData.get(i), rowTop);
+            rowTop += getRowHeight(i);
+            newDrawnTo = i + 1;
+        }
+
+        // Release snapshots of rows which were visible in the previous frame only
+        releaseSnapshots(drawnFrom, Math.min(drawnTo, newDrawnFrom));
+        releaseSnapshots(Math.max(drawnFrom, newDrawnTo), drawnTo);
+        drawnFrom = newDrawnFrom;
+        drawnTo = newDrawnTo;
+    }
+
+    private void releaseSnapshots(int from, int to) {
+        // Sections which are no longer part of this container are
+        // handled by StickyLinearLayout after their state changes.
+        for (int i = Math.max(from, this.from); i < to && i < this.to; i++) {
+            SectionData data = sectionsData.get(i);
+            snapshotPool.release(data.getSnapshot());
+            data.releaseSnapshot();
+        }
+    }
+
+    private void drawSnapshot(Canvas canvas, SectionData data, int rowTop) {
+        View header = data.getUnpinnedHeader();
+        int left = 0;
+        int top = 0;
+        ViewGroup.LayoutParams params = header.getLayoutParams();
+        if (params instanceof ViewGroup.MarginLayoutParams) {
+            left = ((ViewGroup.MarginLayoutParams) params).leftMargin;
+            top = ((ViewGroup.MarginLayoutParams) params).topMargin;
+        }
+
+        Bitmap snapshot = data.getSnapshot();
+        if (snapshot == null || !data.isSnapshotValid()) {
+            snapshot = captureSnapshot(header, snapshot);
+            data.setSnapshot(snapshot);
+        }
+        if (snapshot != null) {
+            canvas.drawBitmap(snapshot, getPaddingLeft() + left, rowTop + top, null);
+        }
+    }
+
+    /**
+     * Draws <code>header</code> into bitmap. Provided <code>reuse</code>
+     * bitmap is recycled if it has the same size as the header, otherwise
+     * it's returned to {@link #snapshotPool} and a pooled bitmap is used.
+     * A new bitmap is allocated only if the pool has none.
+     */
+    private Bitmap captureSnapshot(View header, Bitmap reuse) {
+        int width = header.getWidth();
+        int height = header.getHeight();
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        Bitmap snapshot;
+        if (reuse != null && reuse.getWidth() == width && reuse.getHeight() == height) {
+            snapshot = reuse;
+        } else {
+            snapshotPool.release(reuse);
+            snapshot = snapshotPool.obtain(width, height);
+            if (snapshot == null) {
+                snapshot = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            }
+        }
+        snapshot.eraseColor(Color.TRANSPARENT);
+        snapshotCanvas.setBitmap(snapshot);
+        int saveCount = snapshotCanvas.save();
+        snapshotCanvas.translate(-header.getScrollX(), -header.getScrollY());
+        header.draw(snapshotCanvas);
+        snapshotCanvas.restoreToCount(saveCount);
+        snapshotCanvas.setBitmap(null);
+        return snapshot;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                touchDownY = event.getY();
+                touchTap = true;
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (Math.abs(event.getY() - touchDownY) > touchSlop) {
+                    touchTap = false;
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (touchTap) {
+                    performClick();
+                    SectionData section = findSection((int) event.getY());
+                    if (section != null && onSectionClickListener != null) {
+                        onSectionClickListener.onSectionClick(section);
+                    }
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                touchTap = false;
+                return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    /**
+     * @return Section drawn at given <code>y</code> coordinate (relative to this view).
+     */
+    private SectionData findSection(int y) {
+        int index = findRow(y);
+        return index < to && y >= 0 ? sectionsData.get(index) : null;
+    }
+
+    /**
+     * @return Index of section drawn at given <code>y</code> coordinate
+     * or <code>to</code> if <code>y</code> lies below the last row.
+     */
+    private int findRow(int y) {
+        return pinnedUp
+                ? pinningEngine.findPinnedUpRow(from, to, y)
+                : pinningEngine.findPinnedDownRow(from, to, y);
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.github.vicianm.stickylinearlayout;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Array backed storage of form sections used by {@link StickyLinearLayout}.
+ * <p>Each {@link SectionData} knows its own index within the store. State of
+ * every section is mirrored in a parallel primitive array so that scroll
+ * calculations do not need to dereference section objects. Offsets and
+ * heights of sections are kept by {@link PinningEngine}.</p>
+ */
+class SectionStore {
+
+    private static final byte STATE_NONE = -1;
+
+    /**
+     * Indexed by {@link PinningEngine} state constants.
+     */
+    private static final SectionData.HeaderState[] STATES = new SectionData.HeaderState[3];
+    static {
+        STATES[PinningEngine.STATE_PINNED_UP] = SectionData.HeaderState.PINNED_UP;
+        STATES[PinningEngine.STATE_PINNED_DOWN] = SectionData.HeaderState.PINNED_DOWN;
+        STATES[PinningEngine.STATE_UNPINNED] = SectionData.HeaderState.UNPINNED;
+    }
+
+    private SectionData[] sections = new SectionData[16];
+    private byte[] states = new byte[16];
+
+    private int size = 0;
+
+    private final List<SectionData> listView = new ReadOnlyList();
+
+    /**
+     * Appends new section to the end of the store.
+     */
+    void add(SectionData sectionData) {
+        ensureCapacity(size + 1);
+        sections[size] = sectionData;
+        states[size] = STATE_NONE;
+        sectionData.setIndex(size);
+        size++;
+    }
+
+    /**
+     * Inserts section at given <code>index</code>,
+     * indexes of the following sections are shifted.
+     */
+    void insert(int index, SectionData sectionData) {
+        ensureCapacity(size + 1);
+        System.arraycopy(sections, index, sections, index + 1, size - index);
+        System.arraycopy(states, index, states, index + 1, size - index);
+        sections[index] = sectionData;
+        states[index] = STATE_NONE;
+        size++;
+        reindex(index);
+    }
+
+    /**
+     * Removes section at given <code>index</code>,
+     * indexes of the following sections are shifted.
+     * @return The removed section, its index is reset to <code>-1</code>.
+     */
+    SectionData remove(int index) {
+        SectionData sectionData = sections[index];
+        System.arraycopy(sections, index + 1, sections, index, size - index - 1);
+        System.arraycopy(states, index + 1, states, index, size - index - 1);
+        size--;
+        sections[size] = null;
+        sectionData.setIndex(-1);
+        reindex(index);
+        return sectionData;
+    }
+
+    private void reindex(int from) {
+        for (int i = from; i < size; i++) {
+            sections[i].setIndex(i);
+        }
+    }
+
+    /**
+     * Preallocates storage for <code>count</code> more sections, e.g. before sections
+     * of an inflated form are added one by one.
+     */
+    void reserve(int count) {
+        ensureCapacity(size + count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (sections.length < capacity) {
+            int newCapacity = Math.max(capacity, sections.length * 2);
+            sections = Arrays.copyOf(sections, newCapacity);
+            states = Arrays.copyOf(states, newCapacity);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    SectionData get(int index) {
+        return sections[index];
+    }
+
+    /**
+     * @return Read-only {@link List} view of stored sections.
+     */
+    List<SectionData> asList() {
+        return listView;
+    }
+
+    /**
+     * @return Current state of section at given <code>index</code>
+     * or <code>null</code> if state has not been resolved yet.
+     */
+    SectionData.HeaderState getState(int index) {
+        byte state = states[index];
+        return state == STATE_NONE ? null : STATES[state];
+    }
+
+    /**
+     * Updates state of section at given <code>index</code>.
+     * @param state One of {@link PinningEngine} state constants.
+     * @return <code>true</code> if the state has changed,
+     * see {@link SectionData#update(SectionData.HeaderState)}.
+     */
+    boolean updateState(int index, byte state) {
+        states[index] = state;
+        return sections[index].update(STATES[state]);
+    }
+
+    private class ReadOnlyList extends AbstractList<SectionData> implements RandomAccess {
+
+        @Override
+        public SectionData get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return sections[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (o instanceof SectionData) {
+                int index = ((SectionData) o).getIndex();
+                if (index >= 0 && index < size && sections[index] == o) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+    }
+
+}
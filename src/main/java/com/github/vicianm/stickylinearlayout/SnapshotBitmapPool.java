@@ -0,0 +1,83 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.graphics.Bitmap;
+
+/**
+ * Bounded pool of snapshot bitmaps released by {@link SectionSnapshotView}
+ * (see {@link StickyLinearLayout#PINNED_HEADER_MODE_SNAPSHOT}).
+ * <p>A snapshot is released when its row scrolls out of header/footer area or when
+ * its section is unpinned. The bitmap is reused by the next snapshot captured,
+ * so rows moving in and out of the area do not allocate new bitmaps.</p>
+ */
+class SnapshotBitmapPool {
+
+    private final Bitmap[] bitmaps;
+
+    private int size = 0;
+
+    /**
+     * @param maxSize Maximum number of pooled bitmaps, further released bitmaps are dropped.
+     */
+    SnapshotBitmapPool(int maxSize) {
+        this.bitmaps = new Bitmap[Math.max(1, maxSize)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Pooled bitmap of given size (possibly reconfigured from a larger one)
+     * or <code>null</code> if there is no bitmap which could be used.
+     */
+    Bitmap obtain(int width, int height) {
+        int required = width * height * 4;
+        int match = -1;
+        for (int i = 0; i < size; i++) {
+            Bitmap bitmap = bitmaps[i];
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                match = i;
+                break;
+            }
+            if (match < 0 && bitmap.getAllocationByteCount() >= required) {
+                match = i;
+            }
+        }
+        if (match < 0) {
+            return null;
+        }
+
+        Bitmap bitmap = bitmaps[match];
+        size--;
+        bitmaps[match] = bitmaps[size];
+        bitmaps[size] = null;
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns snapshot bitmap to the pool.
+     * @param bitmap Bitmap no longer referenced by any section, <code>null</code> is ignored.
+     */
+    void release(Bitmap bitmap) {
+        if (bitmap == null || size == bitmaps.length) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (bitmaps[i] == bitmap) {
+                return;
+            }
+        }
+        bitmaps[size++] = bitmap;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            bitmaps[i] = null;
+        }
+        size = 0;
+    }
+
+}
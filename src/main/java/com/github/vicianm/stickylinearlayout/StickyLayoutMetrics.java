@@ -0,0 +1,136 @@
+package com.github.vicianm.stickylinearlayout;
+
+/**
+ * Simple {@link StickyLinearLayout.MetricsListener} which sums up received metrics.
+ * <p>Usage:</p>
+ * <pre>
+ * StickyLayoutMetrics metrics = new StickyLayoutMetrics();
+ * stickyLinearLayout.setMetricsListener(metrics);
+ * ...
+ * report(metrics.getUpdateCount(), metrics.getAverageUpdateNanos(), ...);
+ * metrics.reset();
+ * </pre>
+ * <p>Counters are not synchronized, read them on UI thread.</p>
+ */
+public class StickyLayoutMetrics implements StickyLinearLayout.MetricsListener {
+
+    private int updateCount;
+    private int forcedUpdateCount;
+    private long totalUpdateNanos;
+    private long maxUpdateNanos;
+    private long sectionsExamined;
+    private long sectionsChanged;
+    private long pinnedViewsAdded;
+    private long pinnedViewsRemoved;
+    private int viewportResizeCount;
+    private int implicitScrollCount;
+    private int implicitScrollUpdateCount;
+
+    @Override
+    public void onSectionsUpdated(long durationNanos, int sectionsExamined, int sectionsChanged,
+                                  int pinnedViewsAdded, int pinnedViewsRemoved, boolean forced,
+                                  boolean implicitScroll) {
+        updateCount++;
+        if (forced) {
+            forcedUpdateCount++;
+        }
+        if (implicitScroll) {
+            implicitScrollUpdateCount++;
+        }
+        totalUpdateNanos += durationNanos;
+        maxUpdateNanos = Math.max(maxUpdateNanos, durationNanos);
+        this.sectionsExamined += sectionsExamined;
+        this.sectionsChanged += sectionsChanged;
+        this.pinnedViewsAdded += pinnedViewsAdded;
+        this.pinnedViewsRemoved += pinnedViewsRemoved;
+    }
+
+    @Override
+    public void onViewportResized() {
+        viewportResizeCount++;
+    }
+
+    @Override
+    public void onImplicitScrollStarted(int fromScrollY, int toScrollY) {
+        implicitScrollCount++;
+    }
+
+    /**
+     * Clears all counters.
+     */
+    public void reset() {
+        updateCount = 0;
+        forcedUpdateCount = 0;
+        totalUpdateNanos = 0;
+        maxUpdateNanos = 0;
+        sectionsExamined = 0;
+        sectionsChanged = 0;
+        pinnedViewsAdded = 0;
+        pinnedViewsRemoved = 0;
+        viewportResizeCount = 0;
+        implicitScrollCount = 0;
+        implicitScrollUpdateCount = 0;
+    }
+
+    /**
+     * @return Number of updates of section states and pinned views.
+     */
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * @return Number of updates which refreshed pinned views of all sections
+     * (e.g. after size of the layout has changed).
+     */
+    public int getForcedUpdateCount() {
+        return forcedUpdateCount;
+    }
+
+    public long getTotalUpdateNanos() {
+        return totalUpdateNanos;
+    }
+
+    public long getMaxUpdateNanos() {
+        return maxUpdateNanos;
+    }
+
+    /**
+     * @return Average duration of an update or 0 if there was no update.
+     */
+    public long getAverageUpdateNanos() {
+        return updateCount == 0 ? 0 : totalUpdateNanos / updateCount;
+    }
+
+    public long getSectionsExamined() {
+        return sectionsExamined;
+    }
+
+    public long getSectionsChanged() {
+        return sectionsChanged;
+    }
+
+    public long getPinnedViewsAdded() {
+        return pinnedViewsAdded;
+    }
+
+    public long getPinnedViewsRemoved() {
+        return pinnedViewsRemoved;
+    }
+
+    public int getViewportResizeCount() {
+        return viewportResizeCount;
+    }
+
+    public int getImplicitScrollCount() {
+        return implicitScrollCount;
+    }
+
+    /**
+     * @return Number of updates caused by scrolls to a section.
+     */
+    public int getImplicitScrollUpdateCount() {
+        return implicitScrollUpdateCount;
+    }
+
+}
@@ -3,22 +3,29 @@ package com.github.vicianm.stickylinearlayout;
 import android.content.Context;
 import android.content.ContextWrapper;
 import android.content.res.TypedArray;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Gravity;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
+import android.view.WindowInsets;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
+import android.widget.OverScroller;
 import android.widget.ScrollView;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * <p>Layout which recognizes <code>sectionHeader</code> attributes
@@ -31,14 +38,175 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
 
     public static final String TAG = StickyLinearLayout.class.getSimpleName();
 
+    /**
+     * Debug logging is enabled by <code>adb shell setprop log.tag.StickyLinearLayout DEBUG</code>
+     * (evaluated once). Log calls on scroll path are skipped entirely otherwise.
+     */
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    /**
+     * Pinned headers/footers are added to header/footer container when section
+     * is shown in header/footer area and removed when it leaves the area.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#pinnedHeaderMode
+     */
+    public static final int PINNED_HEADER_MODE_REATTACH = 0;
+
+    /**
+     * Pinned headers/footers are attached to header/footer container when
+     * the section is shown in header/footer area for the first time. Pinning a section only
+     * changes visibility of its pinned header/footer, i.e. structure of the view tree
+     * changes only when pinned views are created or released
+     * (see {@link com.github.vicianm.stickylinearlayout.R.attr#pinnedHeaderCacheSize}).
+     * @see com.github.vicianm.stickylinearlayout.R.attr#pinnedHeaderMode
+     */
+    public static final int PINNED_HEADER_MODE_STABLE = 1;
+
+    /**
+     * No pinned header/footer views are created (<code>onCreateHeader</code> and
+     * <code>onCreateFooter</code> are not used). Header/footer area draws cached
+     * snapshots of section headers included in form instead.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#pinnedHeaderMode
+     * @see #invalidateSectionSnapshot(SectionData)
+     */
+    public static final int PINNED_HEADER_MODE_SNAPSHOT = 2;
+
+    /**
+     * Creates views displayed in header/footer area when a section is pinned.
+     * @see #setPinnedHeaderFactory(PinnedHeaderFactory)
+     */
+    public interface PinnedHeaderFactory {
+
+        /**
+         * @param sectionHeader Section header included in form
+         *                      (view with <code>sectionHeader="true"</code>).
+         * @return New view displayed in header area when the section is pinned up.
+         */
+        View onCreateHeader(View sectionHeader);
+
+        /**
+         * @param sectionHeader Section header included in form
+         *                      (view with <code>sectionHeader="true"</code>).
+         * @return New view displayed in footer area when the section is pinned down.
+         */
+        View onCreateFooter(View sectionHeader);
+    }
+
+    /**
+     * Listener notified when the active form section changes.
+     * @see #setOnActiveSectionChangedListener(OnActiveSectionChangedListener)
+     */
+    public interface OnActiveSectionChangedListener {
+
+        /**
+         * @param sections Read-only list of form sections.
+         * @param newIndex Index of the section which has become active.
+         * @param previousIndex Index of previously active section
+         *                      or <code>-1</code> if there was none.
+         */
+        void onActiveSectionChanged(List<SectionData> sections, int newIndex, int previousIndex);
+    }
+
+    /**
+     * Receives performance metrics of the layout, see {@link #setMetricsListener(MetricsListener)}.
+     * Methods are called on UI thread and should not allocate or block.
+     * @see StickyLayoutMetrics
+     */
+    public interface MetricsListener {
+
+        /**
+         * Called after each update of section states and pinned views
+         * (i.e. once per scroll frame, viewport resize etc.).
+         * @param durationNanos Duration of the update.
+         * @param sectionsExamined Number of sections whose state has been resolved again.
+         * @param sectionsChanged Number of sections which have changed their state.
+         * @param pinnedViewsAdded Number of views added to header/footer area since the previous update.
+         * @param pinnedViewsRemoved Number of views removed from header/footer area since the previous update.
+         * @param forced <code>true</code> if pinned views of all sections have been refreshed.
+         * @param implicitScroll <code>true</code> if the update is caused by scroll to a section
+         *                       (see {@link #onImplicitScrollStarted(int, int)}).
+         */
+        void onSectionsUpdated(long durationNanos, int sectionsExamined, int sectionsChanged,
+                               int pinnedViewsAdded, int pinnedViewsRemoved, boolean forced,
+                               boolean implicitScroll);
+
+        /**
+         * Called when sections are updated after the form viewport has been resized,
+         * e.g. after soft keyboard has been shown.
+         */
+        void onViewportResized();
+
+        /**
+         * Called when the form starts scrolling to a section, e.g. after the section header
+         * has been clicked or a view of the section has been focused.
+         */
+        void onImplicitScrollStarted(int fromScrollY, int toScrollY);
+    }
+
+    /**
+     * Creates sections of the form on a background thread,
+     * see {@link #inflateSectionsAsync(AsyncSectionFactory)}.
+     */
+    public interface AsyncSectionFactory {
+
+        /**
+         * Called on UI thread when loading starts.
+         * @return Number of sections to create.
+         */
+        int getSectionCount();
+
+        /**
+         * Called on a background thread for each section in the order of sections.
+         * Created views must not touch UI thread state, e.g. post to a <code>Handler</code>
+         * (the same restrictions as for <code>AsyncLayoutInflater</code> apply).
+         * @param section Index of the section among created sections.
+         * @param inflater Inflater to be used on the background thread.
+         * @param parent Parent used to generate layout params, e.g.
+         *               <code>inflater.inflate(R.layout.row, parent, false)</code>. Generated
+         *               params read <code>sectionHeader</code> and <code>scrollToSectionMargin</code>
+         *               attributes of the row (the first view is a section header regardless of them).
+         *               Views must not be added to it.
+         * @param views Output list, add the section header first followed by rows of the section.
+         */
+        void onCreateSection(int section, LayoutInflater inflater, ViewGroup parent, List<View> views);
+
+        /**
+         * Called on UI thread after all sections have been added to the form.
+         */
+        void onSectionsLoaded();
+
+        /**
+         * Called on UI thread if {@link #onCreateSection(int, LayoutInflater, ViewGroup, List)}
+         * has thrown or has created a section without views. Loading is stopped,
+         * sections added to the form so far stay in it.
+         * @param error Error thrown by the factory.
+         */
+        void onLoadFailed(Throwable error);
+    }
+
     private boolean inflateFinished = false;
 
+    /**
+     * <code>true</code> if form views have been added by <code>addView(...)</code> (i.e. by
+     * <code>LayoutInflater</code>) and their sections are not registered yet. Pending form views
+     * are registered at once in {@link #onFinishInflate()} or before the form is used,
+     * see {@link #registerPendingFormViews()}.
+     */
+    private boolean sectionRegistrationPending = false;
+
     private ScrollView headerScrollView;
     private LinearLayout headerLayout;
     private ScrollView footerScrollView;
     private LinearLayout footerLayout;
     private ScrollView formLayoutScrollView;
     private LinearLayout formLayout;
+    private SectionSnapshotView headerSnapshotView;
+    private SectionSnapshotView footerSnapshotView;
+
+    /**
+     * Bitmaps of released snapshots shared by header and footer snapshot views,
+     * <code>null</code> unless {@link #PINNED_HEADER_MODE_SNAPSHOT} is used.
+     */
+    private SnapshotBitmapPool snapshotPool;
 
     /**
      * Default 'scroll to section' margin values used
@@ -46,6 +214,49 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
      * @see com.github.vicianm.stickylinearlayout.R.attr#scrollToSectionMargin
      */
     private int defaultScrollToSectionMargin = 0;
+
+    /**
+     * @see com.github.vicianm.stickylinearlayout.R.attr#pinnedHeaderMode
+     */
+    private int pinnedHeaderMode = PINNED_HEADER_MODE_REATTACH;
+
+    /**
+     * Merges scroll, size and focus changes into one update per frame.
+     * <code>null</code> if updates are processed immediately.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#coalesceUpdates
+     */
+    private UpdateScheduler updateScheduler;
+
+    /**
+     * <code>true</code> if the form viewport has been resized and sections
+     * have to be updated after the layout, see {@link #onFormViewportResized()}.
+     */
+    private boolean viewportResized = false;
+
+    /**
+     * <code>true</code> if sections have been inserted/removed at runtime
+     * and states of sections have to be updated after the next layout.
+     */
+    private boolean sectionsChanged = false;
+
+    /**
+     * <code>true</code> if width of the form has changed and rows detached
+     * from the form (see {@link #offscreenDetachScreens}) have to be attached again.
+     */
+    private boolean sectionRowsInvalid = false;
+
+    /**
+     * Section which keeps its position on the screen after sections above it
+     * are collapsed/expanded, see {@link #setSectionCollapsed(SectionData, boolean)}.
+     */
+    private SectionData scrollAnchor;
+    private int scrollAnchorTop;
+
+    /**
+     * The most recent bottom system window inset (height of soft keyboard
+     * if it is shown) or <code>-1</code> if insets have not been applied yet.
+     */
+    private int windowInsetBottom = -1;
     private int implicitScrollToY = -1;
 
     private int previousScrollY = -1;
@@ -57,22 +268,140 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
     private int delegatedFormPaddingRight = -1;
     private int delegatedFormPaddingBottom = -1;
 
-    private List<SectionData> sectionsData = new LinkedList<>();
+    /**
+     * Form sections together with their states,
+     * see {@link #updateSectionDataAndUi(int, int, boolean)}.
+     */
+    private SectionStore sectionsData = new SectionStore();
 
     private SectionData activeSectionAfterScroll = null;
     private SectionData activeSection = null;
     private int activeSectionIndex = -1;
 
-    private MethodWithContext onCreateHeaderMethod;
-    private MethodWithContext onCreateFooterMethod;
-    private MethodWithContext onActiveSectionChangedMethod;
+    private PinnedHeaderFactory pinnedHeaderFactory;
+    private OnActiveSectionChangedListener onActiveSectionChangedListener;
+
+    /**
+     * Loads sections in background, see {@link #inflateSectionsAsync(AsyncSectionFactory)}.
+     */
+    private AsyncFormLoader asyncFormLoader;
+
+    /**
+     * Metrics and {@link Trace} sections are skipped if the listener is not set.
+     */
+    private MetricsListener metricsListener;
+    private int pinnedViewsAdded;
+    private int pinnedViewsRemoved;
 
-    // TODO -1 default; specify as XML attribute
-//    private int maxHeaderRows = -1;
+    /**
+     * Max number of rows shown in header/footer area, the area
+     * is not limited if the value is lower than <code>1</code>.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#maxHeaderRows
+     * @see com.github.vicianm.stickylinearlayout.R.attr#maxFooterRows
+     */
     private int maxHeaderRows = 3;
-    // TODO -1 default; specify as XML attribute
     private int maxFooterRows = 3;
-//    private int maxFooterRows = -1;
+
+    /**
+     * Offsets and heights of sections; resolves which sections are pinned.
+     */
+    private PinningEngine pinningEngine = new PinningEngine(maxHeaderRows, maxFooterRows);
+
+    /**
+     * Sections which have pinned header/footer views created.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#pinnedHeaderCacheSize
+     */
+    private PinnedViewCache pinnedViewCache = new PinnedViewCache(new PinnedViewCache.Callback() {
+        @Override
+        public void onCreatePinnedViews(SectionData sectionData) {
+            createPinnedViews(sectionData);
+        }
+
+        @Override
+        public void onReleasePinnedViews(SectionData sectionData) {
+            releasePinnedViews(sectionData);
+        }
+    }, getDefaultPinnedViewCacheSize());
+
+    /**
+     * <code>true</code> if estimated height of a pinned header/footer
+     * has been replaced by measured one during the current update.
+     */
+    private boolean pinnedHeightsChanged = false;
+
+    /**
+     * Width for which heights of pinned headers/footers have been measured.
+     */
+    private int pinnedHeadersMeasuredWidth = -1;
+
+    /**
+     * Height of header area, i.e. the highest total height
+     * of <code>maxHeaderRows</code> consecutive pinned headers.
+     */
+    private int headerAreaHeight = 0;
+
+    /**
+     * Height of footer area, i.e. the highest total height
+     * of <code>maxFooterRows</code> consecutive pinned footers.
+     */
+    private int footerAreaHeight = 0;
+
+    /**
+     * <code>true</code> if form, header and footer containers are direct children
+     * of this layout which measures, lays out and scrolls them itself.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#flatHierarchy
+     */
+    private boolean flatHierarchy = false;
+
+    /**
+     * <code>true</code> if pinned views of sections which get pinned during a fling
+     * are prepared when the fling starts.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#predictivePinning
+     */
+    private boolean predictivePinning = false;
+
+    /**
+     * Computes final scroll position of a fling, created lazily.
+     */
+    private OverScroller flingProjector;
+
+    /**
+     * Rows of sections further than this number of viewport heights from the
+     * visible part of the form are detached, <code>0</code> keeps all rows attached.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#offscreenDetachScreens
+     */
+    private int offscreenDetachScreens = 0;
+
+    /**
+     * Sections <code>[attachWindowFrom, attachWindowTo)</code> have rows attached
+     * since the most recent update, <code>attachWindowTo == -1</code> if unknown.
+     */
+    private int attachWindowFrom = 0;
+    private int attachWindowTo = -1;
+
+    /**
+     * Requested scroll positions of header/footer area,
+     * re-applied after the area or its content is laid out.
+     */
+    private int headerAreaScrollY = 0;
+    private int footerAreaScrollY = 0;
+
+    /**
+     * Time (ms) after the last scroll change of a fling
+     * when header/footer hardware layers are released.
+     */
+    private static final int PINNED_AREA_LAYERS_TIMEOUT = 100;
+
+    /**
+     * <code>true</code> while header/footer area is rendered to hardware layers.
+     */
+    private boolean pinnedAreaLayers = false;
+
+    /**
+     * Time ({@link SystemClock#uptimeMillis()}) of the last scroll change while
+     * header/footer area is rendered to hardware layers.
+     */
+    private long pinnedAreaLayersScrollTime;
 
     public StickyLinearLayout(Context context) {
         this(context, null);
@@ -99,6 +428,16 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         // We no longer need to focus for focus changes.
         // See #onGlobalFocusChanged(oldFocus, newFocus)
         getViewTreeObserver().removeOnGlobalFocusChangeListener(this);
+        getViewTreeObserver().removeOnPreDrawListener(layoutUpdateListener);
+
+        if (updateScheduler != null) {
+            updateScheduler.cancel();
+        }
+
+        removeCallbacks(releasePinnedAreaLayers);
+        setPinnedAreaLayers(false);
+
+        cancelAsyncInflation();
     }
 
     @Override
@@ -109,6 +448,7 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         // way we always keep track of currently active form section.
         // See #onGlobalFocusChanged(oldFocus, newFocus)
         getViewTreeObserver().addOnGlobalFocusChangeListener(this);
+        getViewTreeObserver().addOnPreDrawListener(layoutUpdateListener);
     }
 
     private void resolveAttributes(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes){
@@ -123,22 +463,42 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
             }
 
             final String onCreateHeaderReference = a.getString(R.styleable.StickyLinearLayoutAttrs_onCreateHeader);
-            if (onCreateHeaderReference != null) {
-                this.onCreateHeaderMethod = resolveMethod(this, onCreateHeaderReference, View.class);
-            }
-
             final String onCreateFooterReference = a.getString(R.styleable.StickyLinearLayoutAttrs_onCreateFooter);
-            if (onCreateFooterReference != null) {
-                this.onCreateFooterMethod = resolveMethod(this, onCreateFooterReference, View.class);
+            if (onCreateHeaderReference != null || onCreateFooterReference != null) {
+                this.pinnedHeaderFactory = bindPinnedHeaderFactory(onCreateHeaderReference, onCreateFooterReference);
             }
 
             final String onActiveSectionChangedReference = a.getString(R.styleable.StickyLinearLayoutAttrs_onActiveSectionChanged);
             if (onActiveSectionChangedReference != null) {
-                this.onActiveSectionChangedMethod = resolveMethod(this, onActiveSectionChangedReference, List.class, int.class, int.class);
+                this.onActiveSectionChangedListener = bindOnActiveSectionChangedListener(onActiveSectionChangedReference);
             }
 
             defaultScrollToSectionMargin = a.getDimensionPixelSize(R.styleable.StickyLinearLayoutAttrs_defaultScrollToSectionMargin, 0);
 
+            pinnedHeaderMode = a.getInt(R.styleable.StickyLinearLayoutAttrs_pinnedHeaderMode, PINNED_HEADER_MODE_REATTACH);
+
+            flatHierarchy = a.getBoolean(R.styleable.StickyLinearLayoutAttrs_flatHierarchy, false);
+
+            predictivePinning = a.getBoolean(R.styleable.StickyLinearLayoutAttrs_predictivePinning, false);
+
+            offscreenDetachScreens = a.getInt(R.styleable.StickyLinearLayoutAttrs_offscreenDetachScreens, 0);
+
+            int maxHeaderRows = a.getInt(R.styleable.StickyLinearLayoutAttrs_maxHeaderRows, this.maxHeaderRows);
+            int maxFooterRows = a.getInt(R.styleable.StickyLinearLayoutAttrs_maxFooterRows, this.maxFooterRows);
+            if (maxHeaderRows != this.maxHeaderRows || maxFooterRows != this.maxFooterRows) {
+                // No section is registered yet
+                this.maxHeaderRows = maxHeaderRows;
+                this.maxFooterRows = maxFooterRows;
+                pinningEngine = new PinningEngine(maxHeaderRows, maxFooterRows);
+                pinnedViewCache.setMaxSize(getDefaultPinnedViewCacheSize());
+            }
+
+            pinnedViewCache.setMaxSize(a.getInt(R.styleable.StickyLinearLayoutAttrs_pinnedHeaderCacheSize, pinnedViewCache.getMaxSize()));
+
+            if (a.getBoolean(R.styleable.StickyLinearLayoutAttrs_coalesceUpdates, false)) {
+                updateScheduler = createUpdateScheduler();
+            }
+
             resolvePaddingAttributes(a);
 
         } finally {
@@ -146,6 +506,25 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         }
     }
 
+    private UpdateScheduler createUpdateScheduler() {
+        return new UpdateScheduler(new UpdateScheduler.Target() {
+            @Override
+            public void performUpdate(int updates, int scrollY, int oldScrollY, View focus) {
+
+                if ((updates & UpdateScheduler.UPDATE_FOCUS) != 0) {
+                    updateActiveSectionForFocus(focus);
+                }
+
+                if ((updates & UpdateScheduler.UPDATE_SIZE) != 0) {
+                    // Size update uses the latest scroll position
+                    onFormViewportSizeChanged();
+                } else if ((updates & UpdateScheduler.UPDATE_SCROLL) != 0) {
+                    updateSectionDataAndUi(scrollY, oldScrollY, false);
+                }
+            }
+        });
+    }
+
     private void resolvePaddingAttributes(TypedArray a) {
         int delegatedFormPadding = a.getDimensionPixelSize(R.styleable.StickyLinearLayoutAttrs_formPadding, -1);
         delegatedFormPaddingLeft = a.getDimensionPixelSize(R.styleable.StickyLinearLayoutAttrs_formPaddingLeft, -1);
@@ -173,6 +552,254 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         }
     }
 
+    /**
+     * Binds <code>onCreateHeader</code>/<code>onCreateFooter</code> methods declared in layout XML.
+     * Methods are called directly (without reflection) only if the declaring context implements
+     * {@link PinnedHeaderFactory} and the declared names are exactly <code>onCreateHeader</code>
+     * and <code>onCreateFooter</code>. Methods of any other name are called through reflection
+     * (see {@link DeclaredPinnedHeaderFactory}), use {@link #setPinnedHeaderFactory(PinnedHeaderFactory)}
+     * to avoid it.
+     */
+    private PinnedHeaderFactory bindPinnedHeaderFactory(String onCreateHeaderName, String onCreateFooterName) {
+        MethodWithContext onCreateHeader = onCreateHeaderName == null
+                ? null
+                : resolveMethod(this, onCreateHeaderName, View.class);
+        MethodWithContext onCreateFooter = onCreateFooterName == null
+                ? null
+                : resolveMethod(this, onCreateFooterName, View.class);
+
+        if (onCreateHeader != null && onCreateFooter != null
+                && onCreateHeader.context == onCreateFooter.context
+                && onCreateHeader.context instanceof PinnedHeaderFactory
+                && "onCreateHeader".equals(onCreateHeaderName)
+                && "onCreateFooter".equals(onCreateFooterName)) {
+            return (PinnedHeaderFactory) onCreateHeader.context;
+        }
+        return new DeclaredPinnedHeaderFactory(onCreateHeader, onCreateFooter);
+    }
+
+    /**
+     * Binds <code>onActiveSectionChanged</code> method declared in layout XML.
+     * Method is called directly (without reflection and boxing of arguments) only if
+     * the declaring context implements {@link OnActiveSectionChangedListener} and the declared
+     * name is exactly <code>onActiveSectionChanged</code>. Method of any other name is called
+     * through reflection (see {@link DeclaredOnActiveSectionChangedListener}), use
+     * {@link #setOnActiveSectionChangedListener(OnActiveSectionChangedListener)} to avoid it.
+     */
+    private OnActiveSectionChangedListener bindOnActiveSectionChangedListener(String methodName) {
+        MethodWithContext method = resolveMethod(this, methodName, List.class, int.class, int.class);
+        if (method.context instanceof OnActiveSectionChangedListener
+                && "onActiveSectionChanged".equals(methodName)) {
+            return (OnActiveSectionChangedListener) method.context;
+        }
+        return new DeclaredOnActiveSectionChangedListener(method);
+    }
+
+    /**
+     * Sets factory of pinned header/footer views, replaces <code>onCreateHeader</code>
+     * and <code>onCreateFooter</code> methods declared in layout XML.
+     * <p>Pinned views are created when a section is pinned for the first time.
+     * Views created by previous factory are released. Not used in
+     * {@link #PINNED_HEADER_MODE_SNAPSHOT} mode.</p>
+     * <p>Unlike methods declared in layout XML under a custom name,
+     * the factory is always called without reflection.</p>
+     * @param pinnedHeaderFactory Factory of pinned header/footer views.
+     */
+    public void setPinnedHeaderFactory(PinnedHeaderFactory pinnedHeaderFactory) {
+        this.pinnedHeaderFactory = pinnedHeaderFactory;
+        pinnedViewCache.clear();
+
+        // Heights of new pinned views have to be measured
+        pinnedHeadersMeasuredWidth = -1;
+        requestLayout();
+
+        if (isLaidOut()) {
+            // Create views of currently pinned sections
+            int scrollY = formLayoutScrollView.getScrollY();
+            updateSectionDataAndUi(scrollY, scrollY, true);
+        }
+    }
+
+    /**
+     * Sets listener notified when the active section changes, replaces
+     * <code>onActiveSectionChanged</code> method declared in layout XML.
+     * Unlike a method declared in layout XML under a custom name,
+     * the listener is always called without reflection.
+     * @param onActiveSectionChangedListener Listener or <code>null</code> to remove it.
+     */
+    public void setOnActiveSectionChangedListener(OnActiveSectionChangedListener onActiveSectionChangedListener) {
+        this.onActiveSectionChangedListener = onActiveSectionChangedListener;
+    }
+
+    public int getMaxHeaderRows() {
+        return maxHeaderRows;
+    }
+
+    /**
+     * Sets max number of rows shown in header area.
+     * @param maxHeaderRows Number of rows, value lower than <code>1</code> for unlimited area.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#maxHeaderRows
+     */
+    public void setMaxHeaderRows(int maxHeaderRows) {
+        setMaxRows(maxHeaderRows, maxFooterRows);
+    }
+
+    public int getMaxFooterRows() {
+        return maxFooterRows;
+    }
+
+    /**
+     * Sets max number of rows shown in footer area.
+     * @param maxFooterRows Number of rows, value lower than <code>1</code> for unlimited area.
+     * @see com.github.vicianm.stickylinearlayout.R.attr#maxFooterRows
+     */
+    public void setMaxFooterRows(int maxFooterRows) {
+        setMaxRows(maxHeaderRows, maxFooterRows);
+    }
+
+    /**
+     * Rebuilds {@link #pinningEngine} for new limits of header/footer rows, offsets
+     * of sections are read again with the next update. Size of {@link #pinnedViewCache}
+     * follows the limits unless it's been set by <code>pinnedHeaderCacheSize</code>.
+     */
+    private void setMaxRows(int maxHeaderRows, int maxFooterRows) {
+        if (maxHeaderRows == this.maxHeaderRows && maxFooterRows == this.maxFooterRows) {
+            return;
+        }
+        registerPendingFormViews();
+        boolean defaultCacheSize = pinnedViewCache.getMaxSize() == getDefaultPinnedViewCacheSize();
+        this.maxHeaderRows = maxHeaderRows;
+        this.maxFooterRows = maxFooterRows;
+
+        PinningEngine engine = new PinningEngine(maxHeaderRows, maxFooterRows);
+        engine.reserve(sectionsData.size());
+        for (int i = 0; i < sectionsData.size(); i++) {
+            SectionData section = sectionsData.get(i);
+            engine.addSection();
+            engine.setPinnedHeights(i, section.getPinnedUpHeaderHeight(), section.getPinnedDownHeaderHeight());
+        }
+        engine.rebuildHeightSums();
+        pinningEngine = engine;
+
+        if (defaultCacheSize) {
+            pinnedViewCache.setMaxSize(getDefaultPinnedViewCacheSize());
+        }
+
+        headerAreaHeight = 0;
+        footerAreaHeight = 0;
+        if (headerScrollView != null) {
+            headerScrollView.getLayoutParams().height = maxHeaderRows > 0 ? 0 : LayoutParams.WRAP_CONTENT;
+            footerScrollView.getLayoutParams().height = maxFooterRows > 0 ? 0 : LayoutParams.WRAP_CONTENT;
+        }
+        updatePinnedAreaHeights();
+        requestLayout();
+
+        if (isLaidOut()) {
+            // Shows rows of header/footer area according to new limits
+            int scrollY = formLayoutScrollView.getScrollY();
+            updateSectionDataAndUi(scrollY, scrollY, true);
+        }
+    }
+
+    /**
+     * @return Number of sections which keep their pinned views by default,
+     * <code>0</code> (unlimited) if number of header or footer rows is not limited.
+     */
+    private int getDefaultPinnedViewCacheSize() {
+        return maxHeaderRows > 0 && maxFooterRows > 0 ? 2 * (maxHeaderRows + maxFooterRows) : 0;
+    }
+
+    /**
+     * Sets listener which receives performance metrics (durations of updates, number of
+     * examined/changed sections etc.). While the listener is set, phases of the update
+     * are also wrapped in {@link Trace} sections, visible in systrace.
+     * @param metricsListener Listener or <code>null</code> to disable metrics.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+        pinnedViewsAdded = 0;
+        pinnedViewsRemoved = 0;
+    }
+
+    /**
+     * <p>
+     * Creates sections of the form on a background thread and appends them to the form
+     * in batches, a few milliseconds of each frame are spent attaching sections.
+     * Sections are created in the order they appear in the form, so the first screen
+     * is shown first. Each section is registered once it is attached, pinned headers/footers
+     * and {@link OnActiveSectionChangedListener} work with sections attached so far.
+     * </p>
+     * <p>Must be called on UI thread. Loading in progress is cancelled if the layout
+     * is detached from window or if the method is called again.</p>
+     * <p>Sections are created by a single shared thread of background priority.</p>
+     */
+    public void inflateSectionsAsync(AsyncSectionFactory factory) {
+        inflateSectionsAsync(factory, AsyncFormLoader.getDefaultExecutor());
+    }
+
+    /**
+     * The same as {@link #inflateSectionsAsync(AsyncSectionFactory)}, sections
+     * are created by given <code>executor</code>. Creating of sections is interrupted
+     * if loading is cancelled.
+     */
+    public void inflateSectionsAsync(AsyncSectionFactory factory, Executor executor) {
+        cancelAsyncInflation();
+        registerPendingFormViews();
+
+        LayoutInflater inflater = LayoutInflater.from(getContext()).cloneInContext(getContext());
+        asyncFormLoader = new AsyncFormLoader(Choreographer.getInstance(), executor,
+                AsyncFormLoader.DEFAULT_FRAME_BUDGET_NANOS, factory, inflater, this, asyncFormTarget);
+        asyncFormLoader.start();
+    }
+
+    /**
+     * @return <code>true</code> while sections are loaded
+     * by {@link #inflateSectionsAsync(AsyncSectionFactory)}.
+     */
+    public boolean isAsyncInflationRunning() {
+        return asyncFormLoader != null && !asyncFormLoader.isFinished();
+    }
+
+    /**
+     * Stops loading of sections started by {@link #inflateSectionsAsync(AsyncSectionFactory)}.
+     * Sections attached so far stay in the form.
+     */
+    public void cancelAsyncInflation() {
+        if (asyncFormLoader != null) {
+            asyncFormLoader.cancel();
+            asyncFormLoader = null;
+        }
+    }
+
+    private final AsyncFormLoader.Target asyncFormTarget = new AsyncFormLoader.Target() {
+        @Override
+        public void attachSection(View[] views) {
+            addSectionHeader(views[0], -1);
+            for (int i = 1; i < views.length; i++) {
+                addFormView(views[i], -1);
+            }
+        }
+
+        @Override
+        public void onSectionsLoaded() {
+            asyncFormLoader = null;
+        }
+
+        @Override
+        public void onLoadFailed(Throwable error) {
+            asyncFormLoader = null;
+        }
+    };
+
+    /**
+     * @return Strategy used to show pinned headers/footers,
+     * {@link #PINNED_HEADER_MODE_REATTACH}, {@link #PINNED_HEADER_MODE_STABLE}
+     * or {@link #PINNED_HEADER_MODE_SNAPSHOT}.
+     */
+    public int getPinnedHeaderMode() {
+        return pinnedHeaderMode;
+    }
+
     /**
      * Call this method if you need to further customize the container of form components.
      * E.g. by adding some additional padding, background color etc.
@@ -211,24 +838,51 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
 
     protected void initLayout() {
 
-        FrameLayout container = new FrameLayout(getContext());
-
         formLayout = createFormLayout();
         formLayoutScrollView = createFormLayoutScrollView();
         headerLayout = createHeaderLayout();
         footerLayout = createFooterLayout();
 
+        if (pinnedHeaderMode == PINNED_HEADER_MODE_SNAPSHOT) {
+            // Rows of both areas can be released within one frame
+            snapshotPool = new SnapshotBitmapPool(maxHeaderRows > 0 && maxFooterRows > 0
+                    ? 2 * (maxHeaderRows + maxFooterRows)
+                    : 16);
+            headerSnapshotView = createSnapshotView(true);
+            headerLayout.addView(headerSnapshotView);
+            footerSnapshotView = createSnapshotView(false);
+            footerLayout.addView(footerSnapshotView);
+        }
+
         // ScrollView
         formLayoutScrollView.addView(formLayout);
+
+        if (flatHierarchy) {
+            // Header and footer are laid out over the form and
+            // scrolled by this layout, see onLayout(...)
+            super.addView(formLayoutScrollView, 0, new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.MATCH_PARENT,
+                    LinearLayout.LayoutParams.MATCH_PARENT));
+            super.addView(headerLayout, 1, new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.MATCH_PARENT,
+                    LinearLayout.LayoutParams.WRAP_CONTENT));
+            super.addView(footerLayout, 2, new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.MATCH_PARENT,
+                    LinearLayout.LayoutParams.WRAP_CONTENT));
+            return;
+        }
+
+        FrameLayout container = new FrameLayout(getContext());
         container.addView(formLayoutScrollView, 0, new FrameLayout.LayoutParams(
                 LayoutParams.MATCH_PARENT,
                 LayoutParams.MATCH_PARENT
         ));
 
         // Header
+        // Height is calculated from pinned headers, see #onMeasure(int, int)
         int paramHeaderHeight = maxHeaderRows <= 0
                 ? LayoutParams.WRAP_CONTENT
-                : maxHeaderRows * 99; // TODO calculate 99 from header view
+                : 0;
         FrameLayout.LayoutParams headerParams = new FrameLayout.LayoutParams(
                 LayoutParams.MATCH_PARENT,
                 paramHeaderHeight
@@ -237,9 +891,10 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         container.addView(headerScrollView, 1, headerParams);
 
         // Footer
+        // Height is calculated from pinned footers, see #onMeasure(int, int)
         int paramFooterHeight = maxFooterRows <= 0
                 ? LayoutParams.WRAP_CONTENT
-                : maxFooterRows * 99; // TODO calculate 99 from footer view
+                : 0;
         FrameLayout.LayoutParams footerParams = new FrameLayout.LayoutParams(
                 LayoutParams.MATCH_PARENT,
                 paramFooterHeight
@@ -248,12 +903,19 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         footerScrollView = createHeaderScrollView(footerLayout);
         container.addView(footerScrollView, 1, footerParams);
 
+        headerLayout.addOnLayoutChangeListener(pinnedAreaLayoutListener);
+        footerLayout.addOnLayoutChangeListener(pinnedAreaLayoutListener);
+
         super.addView(container, 0, new LinearLayout.LayoutParams(
                 LinearLayout.LayoutParams.MATCH_PARENT,
                 LinearLayout.LayoutParams.MATCH_PARENT
         ));
     }
 
+    /**
+     * Creates container which scrolls header/footer area.
+     * Not used if {@link com.github.vicianm.stickylinearlayout.R.attr#flatHierarchy} is set.
+     */
     protected ScrollView createHeaderScrollView(View content) {
 
         StickyScrollView scrollView = new StickyScrollView(getContext());
@@ -272,6 +934,17 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         return scrollView;
     }
 
+    private SectionSnapshotView createSnapshotView(boolean pinnedUp) {
+        SectionSnapshotView snapshotView = new SectionSnapshotView(getContext(), sectionsData, pinningEngine, snapshotPool, pinnedUp);
+        snapshotView.setOnSectionClickListener(new SectionSnapshotView.OnSectionClickListener() {
+            @Override
+            public void onSectionClick(SectionData sectionData) {
+                setActiveSectionAfterScroll(sectionData);
+            }
+        });
+        return snapshotView;
+    }
+
     protected LinearLayout createHeaderLayout() {
         LinearLayout headerLayout = new LinearLayout(getContext());
         headerLayout.setOrientation(LinearLayout.VERTICAL);
@@ -303,41 +976,30 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
             @Override
             protected void onSizeChanged(int w, int h, int oldw, int oldh) {
 
-                Log.d(TAG, "onSizeChanged(int w, int h, int oldw, int oldh)");
-
-                activeSectionAfterScroll = activeSection;
+                if (DEBUG) {
+                    Log.d(TAG, "onSizeChanged(int w, int h, int oldw, int oldh)");
+                }
 
                 super.onSizeChanged(w, h, oldw, oldh);
 
+                if (w != oldw) {
+                    // Heights of detached rows are no longer valid,
+                    // rows are attached after the layout pass (see layoutUpdateListener)
+                    sectionRowsInvalid = true;
+                }
 
                 // Update section data and views after container size is changed.
                 // The size change might cause that different headers are pinned/unpinned
                 // in header/footer container views.
                 // Note: ScrollView size is typically changed after soft keyboard is
-                //       shown or hidden. Unfortunately there is no keyboard show/hide
-                //       callback in Android. So far updating UI in post(...) method works.
-                //       For problems with soft keyboard show/hide detection see following link:
-                //       - https://stackoverflow.com/questions/4745988/how-do-i-detect-if-software-keyboard-is-visible-on-android-device
-                //       - https://groups.google.com/forum/#!topic/android-platform/FyjybyM0wGA
-                post(new Runnable(){
-                    @Override
-                    public void run() {
-                        Log.d(TAG, "updateSectionDataAndUi(getScrollY(), getScrollY(), true)");
-
-                        // Size of our container (ScrollView) has changed.
-                        // Reset UI = recalculate section data and update UI of headers and footers.
-                        updateSectionDataAndUi(getScrollY(), getScrollY(), true);
-
-                        if (activeSectionAfterScroll != null) {
-                            // Ensure ensure that previously active section is fully visibile.
-                            // If part of the section is hidden then we need to scroll the viewport.
-                            boolean scrollNeeded = scrollToSection(activeSectionAfterScroll);
-                            if (!scrollNeeded) {
-                                resetImplicitScrollParams();
-                            }
-                        }
-                    }
-                });
+                //       shown or hidden (see also onApplyWindowInsets(...)).
+                onFormViewportResized();
+            }
+
+            @Override
+            public void fling(int velocityY) {
+                super.fling(velocityY);
+                onFormFling(velocityY);
             }
         };
         scrollView.setOnScrollChangeListener(this);
@@ -345,19 +1007,311 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         return scrollView;
     }
 
-    protected LinearLayout createFormLayout() {
-        LinearLayout formLayout = new LinearLayout(getContext());
-        formLayout.setOrientation(LinearLayout.VERTICAL);
-        setFormPaddingIfSet(formLayout);
-        return formLayout;
+    @Override
+    public WindowInsets onApplyWindowInsets(WindowInsets insets) {
+        // Soft keyboard changes the bottom system window inset.
+        // Form viewport is resized during the next layout pass.
+        int insetBottom = insets.getSystemWindowInsetBottom();
+        if (windowInsetBottom != -1 && insetBottom != windowInsetBottom) {
+            onFormViewportResized();
+        }
+        windowInsetBottom = insetBottom;
+        return super.onApplyWindowInsets(insets);
     }
 
     /**
-     * Set form padding if defined in layout XML
-     * (formPadding, formPaddingLeft, formPaddingTop, ...)
-     **/
-    protected void setHorizontalFormPaddingIfSet(View view) {
-        if (delegatedFormPaddingSet) {
+     * Requests update of section data and views
+     * after the form viewport is resized and laid out.
+     */
+    private void onFormViewportResized() {
+        activeSectionAfterScroll = activeSection;
+
+        if (updateScheduler != null) {
+            updateScheduler.scheduleSizeChange();
+            return;
+        }
+        // Processed once the form is laid out with new size,
+        // before it's drawn (see layoutUpdateListener).
+        viewportResized = true;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (flatHierarchy) {
+            layoutFlatHierarchy(r - l, b - t);
+        } else {
+            super.onLayout(changed, l, t, r, b);
+        }
+    }
+
+    /**
+     * Processes changes of the form which require its new layout (resize of the viewport,
+     * inserted/removed/collapsed sections) after the layout pass, before the frame is drawn.
+     * Pinned views are added/removed and the form is scrolled outside of the layout pass.
+     * The draw is cancelled if the update requests another layout, the frame would show
+     * header/footer area which has not been laid out yet.
+     */
+    private final ViewTreeObserver.OnPreDrawListener layoutUpdateListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            if (sectionRowsInvalid) {
+                sectionRowsInvalid = false;
+                attachAllSectionRows();
+                if (isLayoutRequested()) {
+                    // Sections are updated once the rows are laid out
+                    return false;
+                }
+            }
+
+            if (scrollAnchor != null) {
+                // Offsets are already updated by sectionLayoutListener
+                int index = scrollAnchor.getIndex();
+                scrollAnchor = null;
+                if (index >= 0) {
+                    formLayoutScrollView.scrollTo(0, pinningEngine.getOffset(index) - scrollAnchorTop);
+                }
+            }
+
+            if (viewportResized) {
+                viewportResized = false;
+                sectionsChanged = false;
+                onFormViewportSizeChanged();
+            } else if (sectionsChanged) {
+                sectionsChanged = false;
+                int scrollY = formLayoutScrollView.getScrollY();
+                updateSectionDataAndUi(scrollY, scrollY, false);
+            } else {
+                return true;
+            }
+            return !isLayoutRequested();
+        }
+    };
+
+    /**
+     * Lays out form over the whole layout, header area at the top and footer area
+     * at the bottom of it (see {@link #flatHierarchy}). Bounds of header/footer container
+     * match the area, content of the container is scrolled by {@link View#scrollTo(int, int)}.
+     */
+    private void layoutFlatHierarchy(int width, int height) {
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        int right = width - getPaddingRight();
+        int bottom = height - getPaddingBottom();
+
+        formLayoutScrollView.layout(left, top, right, bottom);
+
+        int headerHeight = maxHeaderRows > 0 ? headerAreaHeight : headerLayout.getMeasuredHeight();
+        headerLayout.layout(left, top, right, top + headerHeight);
+
+        int footerHeight = maxFooterRows > 0 ? footerAreaHeight : footerLayout.getMeasuredHeight();
+        footerLayout.layout(left, bottom - footerHeight, right, bottom);
+
+        // Scroll range depends on laid out size
+        scrollFlatPinnedArea(headerLayout, headerAreaScrollY);
+        scrollFlatPinnedArea(footerLayout, footerAreaScrollY);
+    }
+
+    /**
+     * Scrolls content of header/footer container laid out by {@link #layoutFlatHierarchy(int, int)}.
+     * @param y Scroll position relative to the top of content, the same as
+     *          if the container was wrapped by {@link ScrollView}.
+     */
+    private void scrollFlatPinnedArea(LinearLayout layout, int y) {
+        int contentHeight = layout.getMeasuredHeight();
+        int areaHeight = layout.getHeight();
+        y = Math.max(0, Math.min(y, contentHeight - areaHeight));
+        if (layout == footerLayout) {
+            // Footer aligns its content to the bottom (see createFooterLayout()),
+            // i.e. content starts above the top of the container.
+            y -= contentHeight - areaHeight;
+        }
+        layout.scrollTo(0, y);
+    }
+
+    /**
+     * Scrolls content of header area, the scroll is skipped if it's already requested.
+     * Requested position is re-applied after the content is resized.
+     */
+    private void scrollHeaderArea(int y) {
+        if (y == headerAreaScrollY) {
+            return;
+        }
+        headerAreaScrollY = y;
+        if (flatHierarchy) {
+            scrollFlatPinnedArea(headerLayout, y);
+        } else {
+            headerScrollView.scrollTo(0, y);
+        }
+    }
+
+    /**
+     * @see #scrollHeaderArea(int)
+     */
+    private void scrollFooterArea(int y) {
+        if (y == footerAreaScrollY) {
+            return;
+        }
+        footerAreaScrollY = y;
+        if (flatHierarchy) {
+            scrollFlatPinnedArea(footerLayout, y);
+        } else {
+            footerScrollView.scrollTo(0, y);
+        }
+    }
+
+    /**
+     * Re-applies requested scroll of header/footer area after its content
+     * has been resized (only if header/footer is wrapped by {@link ScrollView}).
+     */
+    private final OnLayoutChangeListener pinnedAreaLayoutListener = new OnLayoutChangeListener() {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            if (bottom - top == oldBottom - oldTop) {
+                return;
+            }
+            if (v == headerLayout) {
+                headerScrollView.scrollTo(0, headerAreaScrollY);
+            } else {
+                footerScrollView.scrollTo(0, footerAreaScrollY);
+            }
+        }
+    };
+
+    private int getHeaderAreaHeight() {
+        return flatHierarchy ? headerLayout.getHeight() : headerScrollView.getHeight();
+    }
+
+    /**
+     * Renders header/footer area to hardware layers while the form is being flung.
+     * Pinned headers/footers are then only translated, without being redrawn.
+     */
+    private void onFormFling(int velocityY) {
+        setPinnedAreaLayers(true);
+        pinnedAreaLayersScrollTime = SystemClock.uptimeMillis();
+        removeCallbacks(releasePinnedAreaLayers);
+        postDelayed(releasePinnedAreaLayers, PINNED_AREA_LAYERS_TIMEOUT);
+
+        if (predictivePinning) {
+            preparePinnedViews(getFlingFinalY(velocityY));
+        }
+    }
+
+    /**
+     * @return Scroll position of the form at which fling with given velocity stops.
+     */
+    private int getFlingFinalY(int velocityY) {
+        if (flingProjector == null) {
+            flingProjector = new OverScroller(getContext());
+        }
+        int viewportHeight = formLayoutScrollView.getHeight()
+                - formLayoutScrollView.getPaddingTop()
+                - formLayoutScrollView.getPaddingBottom();
+        int maxScrollY = Math.max(0, formLayout.getHeight() - viewportHeight);
+        // The same fling as ScrollView runs, see ScrollView#fling(int)
+        flingProjector.fling(0, formLayoutScrollView.getScrollY(), 0, velocityY, 0, 0, 0, maxScrollY);
+        int finalY = flingProjector.getFinalY();
+        flingProjector.abortAnimation();
+        return finalY;
+    }
+
+    /**
+     * Creates and measures pinned views of sections which get pinned if the form
+     * is scrolled to <code>targetScrollY</code>. Scroll updates during the fling
+     * then only move prepared views and pinned area heights are changed at most once.
+     * <p>Sections closest to the target are used last, so they are the last ones
+     * released by {@link #pinnedViewCache}.</p>
+     */
+    private void preparePinnedViews(int targetScrollY) {
+        if (pinnedHeaderFactory == null
+                || pinnedHeaderMode == PINNED_HEADER_MODE_SNAPSHOT
+                || pinnedHeadersMeasuredWidth <= 0) {
+            return;
+        }
+
+        pinningEngine.project(targetScrollY, formLayoutScrollView.getHeight());
+        int limit = pinnedViewCache.getMaxSize() > 0 ? pinnedViewCache.getMaxSize() : Integer.MAX_VALUE;
+
+        // Sections pinned up, the last one is the closest to the target
+        int upTo = pinningEngine.getProjectedUpTo();
+        int upFrom = Math.max(pinningEngine.getProjectedUpFrom(), upTo - limit);
+        for (int i = upFrom; i < upTo; i++) {
+            usePinnedViews(sectionsData.get(i));
+        }
+
+        // Sections pinned down, the first one is the closest to the target
+        int downFrom = pinningEngine.getProjectedDownFrom();
+        int downTo = Math.min(pinningEngine.getProjectedDownTo(), downFrom + limit);
+        for (int i = downTo - 1; i >= downFrom; i--) {
+            usePinnedViews(sectionsData.get(i));
+        }
+
+        applyPinnedHeightsChanged();
+    }
+
+    private void setPinnedAreaLayers(boolean enabled) {
+        if (pinnedAreaLayers == enabled) {
+            return;
+        }
+        pinnedAreaLayers = enabled;
+        int layerType = enabled ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE;
+        headerLayout.setLayerType(layerType, null);
+        footerLayout.setLayerType(layerType, null);
+    }
+
+    private final Runnable releasePinnedAreaLayers = new Runnable() {
+        @Override
+        public void run() {
+            long remaining = pinnedAreaLayersScrollTime + PINNED_AREA_LAYERS_TIMEOUT - SystemClock.uptimeMillis();
+            if (remaining > 0) {
+                postDelayed(this, remaining);
+            } else {
+                setPinnedAreaLayers(false);
+            }
+        }
+    };
+
+    /**
+     * Updates section data and views after size of the form viewport has changed.
+     */
+    private void onFormViewportSizeChanged() {
+
+        if (DEBUG) {
+            Log.d(TAG, "updateSectionDataAndUi(getScrollY(), getScrollY(), false)");
+        }
+
+        // Size of our container (ScrollView) has changed.
+        // Only sections which cross new header/footer bounds change their
+        // state, pinned views of the other sections are left untouched.
+        int scrollY = formLayoutScrollView.getScrollY();
+        updateSectionDataAndUi(scrollY, scrollY, false);
+        if (metricsListener != null) {
+            metricsListener.onViewportResized();
+        }
+
+        if (activeSectionAfterScroll != null) {
+            // Ensure ensure that previously active section is fully visibile.
+            // If part of the section is hidden then we need to scroll the viewport.
+            boolean scrollNeeded = scrollToSection(activeSectionAfterScroll);
+            if (!scrollNeeded) {
+                resetImplicitScrollParams();
+            }
+        }
+    }
+
+    protected LinearLayout createFormLayout() {
+        LinearLayout formLayout = new LinearLayout(getContext());
+        formLayout.setOrientation(LinearLayout.VERTICAL);
+        setFormPaddingIfSet(formLayout);
+        return formLayout;
+    }
+
+    /**
+     * Set form padding if defined in layout XML
+     * (formPadding, formPaddingLeft, formPaddingTop, ...)
+     **/
+    protected void setHorizontalFormPaddingIfSet(View view) {
+        if (delegatedFormPaddingSet) {
             view.setPadding(
                     delegatedFormPaddingLeft, 0,
                     delegatedFormPaddingRight, 0
@@ -386,7 +1340,7 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
             super.addView(child, index, params);
         } else {
             formLayout.addView(child, index, params);
-            initSectionDataForView(child);
+            sectionRegistrationPending = true;
         }
     }
 
@@ -396,7 +1350,7 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
             super.addView(child, index);
         } else {
             formLayout.addView(child, index);
-            initSectionDataForView(child);
+            sectionRegistrationPending = true;
         }
     }
 
@@ -406,7 +1360,7 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
             super.addView(child, params);
         } else {
             formLayout.addView(child, params);
-            initSectionDataForView(child);
+            sectionRegistrationPending = true;
         }
     }
 
@@ -416,135 +1370,882 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
             super.addView(child, width, height);
         } else {
             formLayout.addView(child, width, height);
-            initSectionDataForView(child);
+            sectionRegistrationPending = true;
+        }
+    }
+
+    /**
+     * Registers sections of form views added by <code>addView(...)</code> in one pass,
+     * storages of sections are grown just once. Views with <code>sectionHeader</code>
+     * attribute become section headers, other views become rows of the section above them.
+     * Sections registered before (e.g. by {@link #addSectionHeader(View, int)}) are kept.
+     */
+    private void registerPendingFormViews() {
+        if (!sectionRegistrationPending) {
+            return;
+        }
+        sectionRegistrationPending = false;
+
+        int childCount = formLayout.getChildCount();
+        int sectionCount = 0;
+        for (int i = 0; i < childCount; i++) {
+            ViewGroup.LayoutParams layoutParams = formLayout.getChildAt(i).getLayoutParams();
+            if (layoutParams instanceof LayoutParams
+                    && ((LayoutParams) layoutParams).sectionHeader
+                    && ((LayoutParams) layoutParams).section == null) {
+                sectionCount++;
+            }
+        }
+        sectionsData.reserve(sectionCount);
+        pinningEngine.reserve(sectionCount);
+
+        SectionData section = null;
+        for (int i = 0; i < childCount; i++) {
+            View child = formLayout.getChildAt(i);
+            ViewGroup.LayoutParams layoutParams = child.getLayoutParams();
+            if (!(layoutParams instanceof LayoutParams)) {
+                continue;
+            }
+            LayoutParams params = (LayoutParams) layoutParams;
+            if (params.sectionHeader) {
+                if (params.section == null) {
+                    // Use global/default margin if
+                    // component does not define one itself.
+                    int scrollToSectionMargin = params.scrollToSectionMargin;
+                    if (scrollToSectionMargin < 0) {
+                        scrollToSectionMargin = defaultScrollToSectionMargin;
+                    }
+                    params.section = createSectionData(child, scrollToSectionMargin);
+                    sectionsData.add(params.section);
+                    pinningEngine.addSection();
+                }
+                section = params.section;
+            } else {
+                // Form row belongs to the section above it
+                params.section = section;
+            }
+        }
+    }
+
+    private SectionData createSectionData(View formView, int scrollToSectionMargin) {
+        SectionData sectionData = new SectionData(formView, scrollToSectionMargin);
+        formView.addOnLayoutChangeListener(sectionLayoutListener);
+
+        // Configure on click listener which
+        // scrolls the form in a way that section
+        // under the header will be visible.
+        setHeaderOnClickListener(formView);
+
+        if (pinnedHeaderMode == PINNED_HEADER_MODE_SNAPSHOT) {
+            // No pinned views, header/footer area draws snapshot of 'formView'
+            formView.addOnLayoutChangeListener(snapshotLayoutListener);
+        }
+
+        // Pinned views are created when the section
+        // is pinned for the first time, see usePinnedViews(...)
+
+        return sectionData;
+    }
+
+    /**
+     * Adds view to the form after the layout has been inflated.
+     * The view is a section header if its layout params are inflated
+     * with <code>sectionHeader="true"</code> attribute, otherwise
+     * it's a row of the section above it.
+     * @param index Position in {@link #getFormLayout()}, <code>-1</code> to add the view to the end.
+     * @see #addSectionHeader(View, int)
+     */
+    public void addFormView(View view, int index) {
+        registerPendingFormViews();
+        insertFormView(view, index, getOrCreateFormLayoutParams(view));
+    }
+
+    /**
+     * Adds new section to the form after the layout has been inflated.
+     * Rows following the header (up to the next section header) become rows of the new section.
+     * @param index Position of the header in {@link #getFormLayout()},
+     *              <code>-1</code> to add the header to the end.
+     */
+    public void addSectionHeader(View header, int index) {
+        registerPendingFormViews();
+        LayoutParams params = getOrCreateFormLayoutParams(header);
+        params.sectionHeader = true;
+        insertFormView(header, index, params);
+    }
+
+    /**
+     * Removes view from the form. If the view is a section header, the section
+     * is removed and its rows become rows of the section above.
+     * @see #removeSection(SectionData)
+     */
+    public void removeFormView(View view) {
+        registerPendingFormViews();
+        attachSectionRows(view);
+        int index = formLayout.indexOfChild(view);
+        if (index < 0) {
+            return;
+        }
+        SectionData section = getSectionOfFormView(view);
+        if (section != null && section.getUnpinnedHeader() == view) {
+            attachSectionRows(section);
+            SectionData previous = section.getIndex() > 0 ? sectionsData.get(section.getIndex() - 1) : null;
+            setSectionOfRows(index + 1, previous);
+            removeSectionData(section);
+        }
+        formLayout.removeViewAt(index);
+        if (view.getLayoutParams() instanceof LayoutParams) {
+            ((LayoutParams) view.getLayoutParams()).section = null;
+        }
+    }
+
+    /**
+     * Moves form row (not a section header) to another position in the form.
+     * The row becomes part of the section above its new position.
+     * @param index Position of the row in {@link #getFormLayout()} after the move.
+     * @see #moveSection(SectionData, int)
+     */
+    public void moveFormView(View row, int index) {
+        registerPendingFormViews();
+        attachSectionRows(row);
+        int currentIndex = formLayout.indexOfChild(row);
+        if (currentIndex < 0) {
+            throw new IllegalArgumentException("View is not part of the form");
+        }
+        SectionData section = getSectionOfFormView(row);
+        if (section != null && section.getUnpinnedHeader() == row) {
+            throw new IllegalArgumentException("Section header has to be moved by moveSection(...)");
+        }
+        if (currentIndex == index) {
+            return;
+        }
+        formLayout.removeViewAt(currentIndex);
+        formLayout.addView(row, index);
+        if (row.getLayoutParams() instanceof LayoutParams) {
+            setSectionOfRow(row, (LayoutParams) row.getLayoutParams(), getSectionAbove(index));
+        }
+    }
+
+    /**
+     * Removes section header and all rows of the section from the form.
+     */
+    public void removeSection(SectionData section) {
+        registerPendingFormViews();
+        if (!containsSection(section)) {
+            return;
+        }
+        int start = formLayout.indexOfChild(section.getUnpinnedHeader());
+        if (start < 0) {
+            return;
+        }
+        int end = getNextSectionHeaderIndex(start + 1);
+        removeSectionData(section);
+        formLayout.removeViews(start, end - start);
+    }
+
+    /**
+     * Moves section header together with all rows of the section.
+     * @param toIndex Index of the section after the move (see {@link #getSectionsData()}).
+     */
+    public void moveSection(SectionData section, int toIndex) {
+        registerPendingFormViews();
+        if (!containsSection(section)) {
+            throw new IllegalArgumentException("Section is not part of the form");
+        }
+        int fromIndex = section.getIndex();
+        if (toIndex < 0 || toIndex >= sectionsData.size()) {
+            throw new IndexOutOfBoundsException("Index: " + toIndex + ", Size: " + sectionsData.size());
+        }
+        if (fromIndex == toIndex) {
+            return;
+        }
+
+        // Detach section views, keep the section and its pinned views
+        int start = formLayout.indexOfChild(section.getUnpinnedHeader());
+        int end = getNextSectionHeaderIndex(start + 1);
+        View[] views = new View[end - start];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = formLayout.getChildAt(start + i);
+        }
+        formLayout.removeViews(start, views.length);
+
+        int pinnedUpHeight = pinningEngine.getPinnedUpHeight(fromIndex);
+        int pinnedDownHeight = pinningEngine.getPinnedDownHeight(fromIndex);
+        sectionsData.remove(fromIndex);
+        pinningEngine.removeSection(fromIndex);
+
+        // Attach them in front of the section which is at 'toIndex' now
+        int position = toIndex < sectionsData.size()
+                ? formLayout.indexOfChild(sectionsData.get(toIndex).getUnpinnedHeader())
+                : formLayout.getChildCount();
+        for (int i = 0; i < views.length; i++) {
+            formLayout.addView(views[i], position + i);
+        }
+
+        insertSectionData(section, toIndex, pinnedUpHeight, pinnedDownHeight);
+    }
+
+    /**
+     * Collapses (hides all rows of the section, the section header stays visible)
+     * or expands the section. Offsets of the following sections are updated by the next
+     * layout pass from actual heights of rows (rows which have not been laid out yet,
+     * e.g. added while the section was collapsed, have no reliable height before).
+     * After the layout, the form is scrolled so that the active section keeps its position
+     * on the screen and pinned headers/footers are updated (see {@link #layoutUpdateListener}).
+     */
+    public void setSectionCollapsed(SectionData section, boolean collapsed) {
+        registerPendingFormViews();
+        if (section.isCollapsed() == collapsed || !containsSection(section)) {
+            return;
+        }
+        attachSectionRows(section);
+
+        int start = formLayout.indexOfChild(section.getUnpinnedHeader()) + 1;
+        int end = getNextSectionHeaderIndex(start);
+        for (int i = start; i < end; i++) {
+            View row = formLayout.getChildAt(i);
+            if (!(row.getLayoutParams() instanceof LayoutParams)) {
+                continue;
+            }
+            LayoutParams params = (LayoutParams) row.getLayoutParams();
+            if (collapsed && row.getVisibility() != GONE) {
+                params.collapsedVisibility = row.getVisibility();
+                row.setVisibility(GONE);
+            } else if (!collapsed && params.collapsedVisibility != -1) {
+                row.setVisibility(params.collapsedVisibility);
+                params.collapsedVisibility = -1;
+            }
         }
+        section.setCollapsed(collapsed);
+
+        if (activeSection != null && scrollAnchor == null) {
+            // Offset is read before the layout, sectionLayoutListener
+            // updates it once the section header is laid out
+            scrollAnchor = activeSection;
+            scrollAnchorTop = pinningEngine.getOffset(activeSection.getIndex()) - formLayoutScrollView.getScrollY();
+        }
+        sectionsChanged = true;
+        requestLayout();
+    }
+
+    /**
+     * @return <code>true</code> if the section is part of the form,
+     * resolved by index of the section (i.e. without searching the sections).
+     */
+    private boolean containsSection(SectionData section) {
+        int index = section.getIndex();
+        return index >= 0 && index < sectionsData.size() && sectionsData.get(index) == section;
+    }
+
+    private void insertFormView(View view, int index, LayoutParams params) {
+        if (index < 0) {
+            index = formLayout.getChildCount();
+        }
+        formLayout.addView(view, index, params);
+
+        SectionData previous = getSectionAbove(index);
+        if (!params.sectionHeader) {
+            setSectionOfRow(view, params, previous);
+            return;
+        }
+
+        int scrollToSectionMargin = params.scrollToSectionMargin < 0
+                ? defaultScrollToSectionMargin
+                : params.scrollToSectionMargin;
+        SectionData section = createSectionData(view, scrollToSectionMargin);
+        params.section = section;
+        setSectionOfRows(index + 1, section);
+
+        // Heights are estimated from the neighbour section,
+        // views are measured when the section is pinned.
+        int sectionIndex = previous == null ? 0 : previous.getIndex() + 1;
+        int pinnedUpHeight = 0;
+        int pinnedDownHeight = 0;
+        if (sectionsData.size() > 0) {
+            int neighbour = Math.max(0, sectionIndex - 1);
+            pinnedUpHeight = pinningEngine.getPinnedUpHeight(neighbour);
+            pinnedDownHeight = pinningEngine.getPinnedDownHeight(neighbour);
+        }
+        if (pinnedHeaderMode == PINNED_HEADER_MODE_SNAPSHOT) {
+            // Snapshot height is read once the header is measured by the form, see onMeasure(...)
+            pinnedHeadersMeasuredWidth = -1;
+        }
+        insertSectionData(section, sectionIndex, pinnedUpHeight, pinnedDownHeight);
+    }
+
+    /**
+     * Inserts section into {@link #sectionsData} and {@link #pinningEngine}
+     * and resolves its state. Other sections keep their state until the form is laid out.
+     */
+    private void insertSectionData(SectionData section, int index, int pinnedUpHeight, int pinnedDownHeight) {
+        // Keep offsets sorted until the header is laid out, see sectionLayoutListener
+        int size = pinningEngine.size();
+        int offset = size == 0 ? 0 : pinningEngine.getOffset(Math.min(index, size - 1));
+
+        sectionsData.insert(index, section);
+        pinningEngine.insertSection(index, offset, pinnedUpHeight, pinnedDownHeight);
+        section.setPinnedUpHeaderHeight(pinnedUpHeight);
+        section.setPinnedDownHeaderHeight(pinnedDownHeight);
+
+        if (pinningEngine.isStatesValid()) {
+            // Pinned views of moved section are attached again at the new position
+            if (pinnedHeaderMode != PINNED_HEADER_MODE_SNAPSHOT) {
+                removePinnedView(section.getPinnedUpHeader());
+                removePinnedView(section.getPinnedDownHeader());
+            }
+            sectionsData.updateState(index, pinningEngine.getState(index));
+            updatePinnedViews(index, index + 1);
+            applyPinnedHeightsChanged();
+        }
+        onSectionsChanged();
+    }
+
+    /**
+     * Removes section from {@link #sectionsData} and {@link #pinningEngine}
+     * and releases its pinned views.
+     */
+    private void removeSectionData(SectionData section) {
+        View formView = section.getUnpinnedHeader();
+        formView.removeOnLayoutChangeListener(sectionLayoutListener);
+        formView.removeOnLayoutChangeListener(snapshotLayoutListener);
+        pinnedViewCache.remove(section);
+        releaseSnapshot(section);
+
+        int index = section.getIndex();
+        sectionsData.remove(index);
+        pinningEngine.removeSection(index);
+        if (pinningEngine.isStatesValid()) {
+            // Sections following the removed one move into header/footer area
+            updatePinnedViews(index, index);
+        }
+
+        if (activeSectionAfterScroll == section) {
+            resetImplicitScrollParams();
+        }
+        if (scrollAnchor == section) {
+            scrollAnchor = null;
+        }
+        if (activeSection == section) {
+            // Resolved again by the next update
+            activeSection = null;
+        }
+        onSectionsChanged();
+    }
+
+    /**
+     * Sections have been inserted/removed. Offsets of section headers are updated
+     * by {@link #sectionLayoutListener} during the next layout, states are
+     * updated afterwards (see {@link #layoutUpdateListener}).
+     */
+    private void onSectionsChanged() {
+        activeSectionIndex = activeSection == null ? -1 : activeSection.getIndex();
+        attachWindowTo = -1;
+        sectionsChanged = true;
+        requestLayout();
+    }
+
+    /**
+     * Attaches rows of the section of given form row if they are detached.
+     */
+    private void attachSectionRows(View row) {
+        SectionData section = getSectionOfFormView(row);
+        if (section != null && row.getParent() == null) {
+            attachSectionRows(section);
+        }
+    }
+
+    private LayoutParams getOrCreateFormLayoutParams(View view) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (params instanceof LayoutParams) {
+            return (LayoutParams) params;
+        }
+        return params == null ? generateDefaultLayoutParams() : generateLayoutParams(params);
+    }
+
+    /**
+     * @return Section of the form row at given position in {@link #formLayout}.
+     */
+    private SectionData getSectionAbove(int index) {
+        return index > 0 ? getSectionOfFormView(formLayout.getChildAt(index - 1)) : null;
+    }
+
+    private static SectionData getSectionOfFormView(View view) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        return params instanceof LayoutParams ? ((LayoutParams) params).section : null;
+    }
+
+    /**
+     * Assigns form rows from position <code>from</code> up to the next section header to the section.
+     */
+    private void setSectionOfRows(int from, SectionData section) {
+        int end = getNextSectionHeaderIndex(from);
+        for (int i = from; i < end; i++) {
+            View row = formLayout.getChildAt(i);
+            if (row instanceof SectionPlaceholder) {
+                // Detached rows of another section, they have to be assigned one by one
+                attachSectionRows(getSectionOfFormView(row));
+                end = getNextSectionHeaderIndex(from);
+                break;
+            }
+        }
+        for (int i = from; i < end; i++) {
+            View row = formLayout.getChildAt(i);
+            if (row.getLayoutParams() instanceof LayoutParams) {
+                setSectionOfRow(row, (LayoutParams) row.getLayoutParams(), section);
+            }
+        }
+    }
+
+    /**
+     * Assigns form row to the section, the row is hidden if the section is collapsed.
+     */
+    private static void setSectionOfRow(View row, LayoutParams params, SectionData section) {
+        params.section = section;
+        if (section != null && section.isCollapsed()) {
+            if (params.collapsedVisibility == -1 && row.getVisibility() != GONE) {
+                params.collapsedVisibility = row.getVisibility();
+                row.setVisibility(GONE);
+            }
+        } else if (params.collapsedVisibility != -1) {
+            row.setVisibility(params.collapsedVisibility);
+            params.collapsedVisibility = -1;
+        }
+    }
+
+    /**
+     * @return Position of the first section header in {@link #formLayout}
+     * starting at <code>from</code>, or number of form rows if there is none.
+     */
+    private int getNextSectionHeaderIndex(int from) {
+        int count = formLayout.getChildCount();
+        for (int i = from; i < count; i++) {
+            ViewGroup.LayoutParams params = formLayout.getChildAt(i).getLayoutParams();
+            if (params instanceof LayoutParams && ((LayoutParams) params).sectionHeader) {
+                return i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates pinned header/footer of the section using {@link #pinnedHeaderFactory}.
+     */
+    private void createPinnedViews(SectionData sectionData) {
+        if (pinnedHeaderFactory == null) {
+            return;
+        }
+        View formView = sectionData.getUnpinnedHeader();
+
+        View pinnedUpHeader = pinnedHeaderFactory.onCreateHeader(formView);
+        if (pinnedUpHeader != null) {
+            sectionData.setPinnedUpHeader(pinnedUpHeader);
+            setHeaderOnClickListener(pinnedUpHeader);
+        }
+
+        View pinnedDownHeader = pinnedHeaderFactory.onCreateFooter(formView);
+        if (pinnedDownHeader != null) {
+            sectionData.setPinnedDownHeader(pinnedDownHeader);
+            setHeaderOnClickListener(pinnedDownHeader);
+        }
+    }
+
+    /**
+     * Detaches pinned header/footer of the section evicted from {@link #pinnedViewCache}.
+     */
+    private void releasePinnedViews(SectionData sectionData) {
+        removePinnedView(sectionData.getPinnedUpHeader());
+        removePinnedView(sectionData.getPinnedDownHeader());
+        sectionData.releasePinnedHeaders();
+    }
+
+    /**
+     * Detaches pinned view from header/footer container. Pinned views are added/removed
+     * only through this method and {@link #addInSectionOrder(LinearLayout, View)}, so that
+     * they are counted for {@link MetricsListener}.
+     */
+    private void removePinnedView(View view) {
+        if (view != null && view.getParent() instanceof ViewGroup) {
+            ((ViewGroup) view.getParent()).removeView(view);
+            if (metricsListener != null) {
+                pinnedViewsRemoved++;
+            }
+        }
+    }
+
+    /**
+     * Marks pinned views of the section as recently used, creates them
+     * if the section is pinned for the first time (or after they have been
+     * released). Estimated heights of new views are replaced by measured ones.
+     */
+    private void usePinnedViews(SectionData section) {
+        if (!pinnedViewCache.use(section) || pinnedHeadersMeasuredWidth <= 0) {
+            return;
+        }
+
+        int index = section.getIndex();
+        int upHeight = measurePinnedHeader(section.getPinnedUpHeader(), getPinnedHeaderWidth(pinnedHeadersMeasuredWidth));
+        int downHeight = measurePinnedHeader(section.getPinnedDownHeader(), getPinnedFooterWidth(pinnedHeadersMeasuredWidth));
+        section.setPinnedUpHeaderHeight(upHeight);
+        section.setPinnedDownHeaderHeight(downHeight);
+        if (upHeight != pinningEngine.getPinnedUpHeight(index) || downHeight != pinningEngine.getPinnedDownHeight(index)) {
+            pinningEngine.setPinnedHeights(index, upHeight, downHeight);
+            pinnedHeightsChanged = true;
+        }
+    }
+
+    /**
+     * Invalidates snapshot of section header if size of the header changes
+     * (see {@link #PINNED_HEADER_MODE_SNAPSHOT}).
+     */
+    private final OnLayoutChangeListener snapshotLayoutListener = new OnLayoutChangeListener() {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            int oldHeight = oldBottom - oldTop;
+            if (right - left == oldRight - oldLeft && bottom - top == oldHeight) {
+                return;
+            }
+            SectionData section = getSectionOfFormView(v);
+            if (section == null) {
+                // Listener is removed together with the section
+                return;
+            }
+            invalidateSectionSnapshot(section);
+
+            // Initial layout is already covered by onMeasure(...)
+            if (oldHeight > 0 && bottom - top != oldHeight && pinnedHeadersMeasuredWidth != -1) {
+                // Heights of header/footer rows have to be measured again
+                pinnedHeadersMeasuredWidth = -1;
+                post(requestLayoutRunnable);
+            }
+        }
+    };
+
+    private final Runnable requestLayoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            requestLayout();
+        }
+    };
+
+    /**
+     * Forces the snapshot of section header to be captured again before it is
+     * drawn in header/footer area. Snapshots are captured again automatically
+     * after the section header (or any of its descendants) is invalidated, call this
+     * method only if the header draws different content without being invalidated.
+     * Applicable to {@link #PINNED_HEADER_MODE_SNAPSHOT} mode only.
+     * @param section Section which header has changed.
+     */
+    public void invalidateSectionSnapshot(SectionData section) {
+        section.invalidateSnapshot();
+        if (headerSnapshotView != null) {
+            headerSnapshotView.invalidate();
+            footerSnapshotView.invalidate();
+        }
+    }
+
+    /**
+     * Sets click listener for <code>pinnedView</code> which scrolls the form
+     * in a way that section under the header/footer will be visible.
+     * The listener is shared by all headers, the section is read
+     * from the view (see {@link SectionData#of(View)}).
+     */
+    protected void setHeaderOnClickListener(View sectionHeader) {
+        sectionHeader.setOnClickListener(headerClickListener);
+    }
+
+    private final OnClickListener headerClickListener = new OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            SectionData section = SectionData.of(v);
+            if (section != null && section.getIndex() >= 0) {
+                setActiveSectionAfterScroll(section);
+            }
+        }
+    };
+
+    private boolean scrollToSection(SectionData sectionData) {
+
+        if (!pinningEngine.isOffsetsValid()) {
+            refreshSectionOffsets();
+        }
+
+        // Location where we should first
+        // scroll the form in order to make the section active
+        // (Y value of section header minus pinned headers above it)
+        int sectionY = pinningEngine.getScrollToSectionY(
+                sectionData.getIndex(),
+                sectionData.getScrollToSectionMargin(),
+                getHeaderAreaHeight());
+
+        // First check if any scroll is needed or possible.
+        // We might already be scrolled at given position or
+        // no scroll is posible (we are at the very top/bottom).
+        int currentScrollY = getFormLayoutScrollView().getScrollY();
+        if (!PinningEngine.isScrollNeeded(currentScrollY, sectionY, getMinScrollY(), getMaxScrollY())) {
+            return false;
+        }
+
+        // Some scroll is needed before making the section active
+        if (metricsListener != null) {
+            metricsListener.onImplicitScrollStarted(currentScrollY, sectionY);
+        }
+        this.implicitScrollToY = sectionY;
+        this.formLayoutScrollView.smoothScrollTo(0, implicitScrollToY);
+        return true;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+
+        // Form views added without inflation (onFinishInflate() is not called)
+        registerPendingFormViews();
+
+        // Pinned headers/footers are measured only once for given width
+        // (or after new sections are added). Heights are cached in SectionData.
+        int width = MeasureSpec.getSize(widthMeasureSpec) - getPaddingLeft() - getPaddingRight();
+        boolean measureHeaders = width > 0
+                && (width != pinnedHeadersMeasuredWidth || !pinningEngine.isHeightsValid());
+        boolean snapshots = pinnedHeaderMode == PINNED_HEADER_MODE_SNAPSHOT;
+        if (measureHeaders && !snapshots) {
+            measurePinnedHeaders(width);
+        }
+
+        measureHierarchy(widthMeasureSpec, heightMeasureSpec);
+
+        if (measureHeaders && snapshots) {
+            // Snapshots have the size of section headers measured by the form,
+            // header/footer area is measured again to fit them
+            measurePinnedHeaders(width);
+            measureHierarchy(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+
+    private void measureHierarchy(int widthMeasureSpec, int heightMeasureSpec) {
+        if (flatHierarchy) {
+            measureFlatHierarchy(widthMeasureSpec, heightMeasureSpec);
+        } else {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+
+    /**
+     * Measures form, header and footer containers which are all
+     * stacked over each other (see {@link #flatHierarchy}).
+     */
+    private void measureFlatHierarchy(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        int height = getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec);
+
+        int childWidthSpec = MeasureSpec.makeMeasureSpec(
+                Math.max(0, width - getPaddingLeft() - getPaddingRight()), MeasureSpec.EXACTLY);
+        formLayoutScrollView.measure(childWidthSpec, MeasureSpec.makeMeasureSpec(
+                Math.max(0, height - getPaddingTop() - getPaddingBottom()), MeasureSpec.EXACTLY));
+        measurePinnedArea(headerLayout, childWidthSpec, maxHeaderRows > 0 ? headerAreaHeight : -1);
+        measurePinnedArea(footerLayout, childWidthSpec, maxFooterRows > 0 ? footerAreaHeight : -1);
+
+        setMeasuredDimension(width, height);
+    }
+
+    /**
+     * Measures header/footer container to the height of its content. Container
+     * smaller than the area fills the area (the same as
+     * {@link ScrollView#setFillViewport(boolean)} in {@link #createHeaderScrollView(View)}).
+     * @param areaHeight Height of header/footer area or <code>-1</code> if it wraps content.
+     */
+    private static void measurePinnedArea(LinearLayout layout, int widthMeasureSpec, int areaHeight) {
+        layout.measure(widthMeasureSpec, MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        if (layout.getMeasuredHeight() < areaHeight) {
+            layout.measure(widthMeasureSpec, MeasureSpec.makeMeasureSpec(areaHeight, MeasureSpec.EXACTLY));
+        }
+    }
+
+    /**
+     * Measures pinned headers/footers of all sections and resizes
+     * header/footer area so that it fits <code>maxHeaderRows</code>
+     * (<code>maxFooterRows</code>) rows. Section headers of the form are
+     * not measured, heights of snapshots are read after the form is measured.
+     * @param width Width available for header/footer area.
+     */
+    private void measurePinnedHeaders(int width) {
+
+        int headerWidth = getPinnedHeaderWidth(width);
+        int footerWidth = getPinnedFooterWidth(width);
+        if (pinnedHeaderMode == PINNED_HEADER_MODE_SNAPSHOT) {
+            for (int i = 0; i < sectionsData.size(); i++) {
+                SectionData data = sectionsData.get(i);
+                // Snapshot has the same size as the section header
+                int height = getMeasuredFormViewHeight(data.getUnpinnedHeader());
+                data.setPinnedUpHeaderHeight(height);
+                data.setPinnedDownHeaderHeight(height);
+                pinningEngine.setPinnedHeights(i, height, height);
+            }
+        } else {
+            measureCreatedPinnedHeaders(headerWidth, footerWidth);
+        }
+        pinningEngine.rebuildHeightSums();
+        pinnedHeadersMeasuredWidth = width;
+
+        // Called from onMeasure(...), it's enough to update
+        // layout params without requesting new layout.
+        updatePinnedAreaHeights();
+    }
+
+    /**
+     * Measures pinned headers/footers which have been created (see {@link #pinnedViewCache}).
+     * Heights of the other ones are estimated from the first measured header/footer,
+     * they are measured when the views are created.
+     */
+    private void measureCreatedPinnedHeaders(int headerWidth, int footerWidth) {
+        if (pinnedViewCache.size() == 0 && sectionsData.size() > 0) {
+            // Use the first section as a sample for estimates
+            pinnedViewCache.use(sectionsData.get(0));
+        }
+
+        int estimatedUpHeight = -1;
+        int estimatedDownHeight = -1;
+        for (int i = 0; i < sectionsData.size(); i++) {
+            SectionData data = sectionsData.get(i);
+            if (data.getPinnedUpHeader() != null) {
+                data.setPinnedUpHeaderHeight(measurePinnedHeader(data.getPinnedUpHeader(), headerWidth));
+                if (estimatedUpHeight < 0) estimatedUpHeight = data.getPinnedUpHeaderHeight();
+            }
+            if (data.getPinnedDownHeader() != null) {
+                data.setPinnedDownHeaderHeight(measurePinnedHeader(data.getPinnedDownHeader(), footerWidth));
+                if (estimatedDownHeight < 0) estimatedDownHeight = data.getPinnedDownHeaderHeight();
+            }
+        }
+
+        for (int i = 0; i < sectionsData.size(); i++) {
+            SectionData data = sectionsData.get(i);
+            if (data.getPinnedUpHeader() == null) {
+                data.setPinnedUpHeaderHeight(Math.max(0, estimatedUpHeight));
+            }
+            if (data.getPinnedDownHeader() == null) {
+                data.setPinnedDownHeaderHeight(Math.max(0, estimatedDownHeight));
+            }
+            pinningEngine.setPinnedHeights(i, data.getPinnedUpHeaderHeight(), data.getPinnedDownHeaderHeight());
+        }
+    }
+
+    private int getPinnedHeaderWidth(int width) {
+        return width - headerLayout.getPaddingLeft() - headerLayout.getPaddingRight();
+    }
+
+    private int getPinnedFooterWidth(int width) {
+        return width - footerLayout.getPaddingLeft() - footerLayout.getPaddingRight();
     }
 
     /**
-     * Initializes section data for child view if child's
-     * <code>sectionHeader</code> attribute is set <code>true</code>.
-     * View's without <code>sectionHeader</code> attribute are ignored.
-     * @param child View for which <code>SectionData</code> should be initialized.
+     * Updates pinning engine and header/footer area
+     * after heights of newly created pinned views are measured.
      */
-    private void initSectionDataForView(View child) {
-
-        ViewGroup.LayoutParams layoutParams = child.getLayoutParams();
-        if (layoutParams instanceof StickyLinearLayout.LayoutParams) {
-
-            boolean sectionHeader = ((LayoutParams) layoutParams).sectionHeader;
+    private void applyPinnedHeightsChanged() {
+        if (pinnedHeightsChanged) {
+            // Views pinned for the first time had only estimated heights
+            pinnedHeightsChanged = false;
+            pinningEngine.rebuildHeightSums();
+            updatePinnedAreaHeights();
+            requestLayout();
+        }
+    }
 
-            // Use global/default margin if
-            // component does not define one itself.
-            int scrollToSectionMargin = ((LayoutParams) layoutParams).scrollToSectionMargin;
-            if (scrollToSectionMargin < 0) {
-                scrollToSectionMargin = defaultScrollToSectionMargin;
+    /**
+     * Resizes header/footer area so that it fits <code>maxHeaderRows</code>
+     * (<code>maxFooterRows</code>) rows.
+     */
+    private void updatePinnedAreaHeights() {
+        if (maxHeaderRows > 0) {
+            headerAreaHeight = pinningEngine.getMaxPinnedUpHeight(maxHeaderRows);
+            if (headerScrollView != null) {
+                headerScrollView.getLayoutParams().height = headerAreaHeight;
             }
-
-            if (sectionHeader) {
-                SectionData sectionData = new SectionData(child, scrollToSectionMargin);
-                View formView = sectionData.getUnpinnedHeader();
-
-                // Get header view instance from callback method
-                if(this.onCreateHeaderMethod != null){
-                    Object result = this.onCreateHeaderMethod.invoke(formView);
-                    if(result instanceof  View){
-                        sectionData.setPinnedUpHeader((View) result);
-                    } else {
-                        throw new RuntimeException("Method invocation of onCreateHeaderMethod did not return new view");
-                    }
-                }
-
-                // Get footer view instance from callback method
-                if(this.onCreateFooterMethod != null){
-                    Object result = this.onCreateFooterMethod.invoke(formView);
-                    if(result instanceof  View){
-                        sectionData.setPinnedDownHeader((View)result);
-                    } else {
-                        throw new RuntimeException("Method invocation of onCreateFooterMethod did not return new view");
-                    }
-                }
-
-                // Configure on click listeners which
-                // scrolls the form in a way that section
-                // under the header/footer will be visible.
-                setHeaderOnClickListener(sectionData.getPinnedUpHeader(), sectionData);
-                setHeaderOnClickListener(sectionData.getUnpinnedHeader(), sectionData);
-                setHeaderOnClickListener(sectionData.getPinnedDownHeader(), sectionData);
-
-                sectionsData.add(sectionData);
+        }
+        if (maxFooterRows > 0) {
+            footerAreaHeight = pinningEngine.getMaxPinnedDownHeight(maxFooterRows);
+            if (footerScrollView != null) {
+                footerScrollView.getLayoutParams().height = footerAreaHeight;
             }
         }
     }
 
     /**
-     * Sets click listener for <code>pinnedView</code> which scrolls the form
-     * in a way that section under the header/footer will be visible.
+     * @return Measured height of the form view including vertical margins,
+     * <code>0</code> if the view is not shown.
      */
-    protected void setHeaderOnClickListener(View sectionHeader, final SectionData sectionData) {
-        sectionHeader.setOnClickListener(new OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                setActiveSectionAfterScroll(sectionData);
-            }
-        });
+    private static int getMeasuredFormViewHeight(View formView) {
+        if (formView.getVisibility() == GONE) {
+            return 0;
+        }
+        int height = formView.getMeasuredHeight();
+        ViewGroup.LayoutParams params = formView.getLayoutParams();
+        if (params instanceof MarginLayoutParams) {
+            height += ((MarginLayoutParams) params).topMargin + ((MarginLayoutParams) params).bottomMargin;
+        }
+        return height;
     }
 
-    private boolean scrollToSection(SectionData sectionData) {
+    /**
+     * @return Height of <code>pinnedHeader</code> including vertical margins
+     * if displayed in header/footer area of given <code>width</code>.
+     */
+    static int measurePinnedHeader(View pinnedHeader, int width) {
+        if (pinnedHeader == null) {
+            return 0;
+        }
 
-        int heightAfterScroll = 0;
-        int scrollToSectionMargin = 0;
-        for (SectionData data : sectionsData) {
-            // We are done if we reached the view on which user clicked
-            if (data == sectionData) {
-                scrollToSectionMargin = sectionData.getScrollToSectionMargin();
-                break;
-            }
-            heightAfterScroll += data.getUnpinnedHeader().getHeight();
+        int horizontalMargins = 0;
+        int verticalMargins = 0;
+        int heightSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+        ViewGroup.LayoutParams params = pinnedHeader.getLayoutParams();
+        if (params instanceof MarginLayoutParams) {
+            MarginLayoutParams marginParams = (MarginLayoutParams) params;
+            horizontalMargins = marginParams.leftMargin + marginParams.rightMargin;
+            verticalMargins = marginParams.topMargin + marginParams.bottomMargin;
+        }
+        if (params != null && params.height >= 0) {
+            heightSpec = MeasureSpec.makeMeasureSpec(params.height, MeasureSpec.EXACTLY);
         }
-        heightAfterScroll =
-                Math.min(
-                    heightAfterScroll,
-                    headerScrollView.getHeight());
 
-        // Location where we should first
-        // scroll the form in order to make the section active
-        // (Y value of section header)
-        int sectionY =
-                (int)sectionData.getUnpinnedHeader().getY()
-                - heightAfterScroll
-                - scrollToSectionMargin;
+        pinnedHeader.measure(
+                MeasureSpec.makeMeasureSpec(Math.max(0, width - horizontalMargins), MeasureSpec.EXACTLY),
+                heightSpec);
+        return pinnedHeader.getMeasuredHeight() + verticalMargins;
+    }
 
-        // First check if any scroll is needed or possible.
-        // We might already be scrolled at given position or
-        // no scroll is posible (we are at the very top/bottom).
-        int currentScrollY = getFormLayoutScrollView().getScrollY();
-        if (sectionY > currentScrollY)
-        {   // should scroll down
-            boolean alreadyScrolledToBottom = currentScrollY >= getMaxScrollY();
-            if (alreadyScrolledToBottom) {
-                return false;
-            }
-        } else if (sectionY < currentScrollY)
-        {   // should scroll up
-            boolean alreadyScrolledToTop = currentScrollY <= getMinScrollY();
-            if (alreadyScrolledToTop) {
-                return false;
+    /**
+     * Keeps cached offset of section header up to date after the header
+     * is laid out at a new position. Only the moved header is updated,
+     * scroll updates then read offsets from {@link #pinningEngine}.
+     */
+    private final OnLayoutChangeListener sectionLayoutListener = new OnLayoutChangeListener() {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            if (top != oldTop) {
+                SectionData sectionData = getSectionOfFormView(v);
+                if (sectionData != null && sectionData.getIndex() >= 0) {
+                    pinningEngine.setOffset(sectionData.getIndex(), (int) v.getY());
+                }
             }
-        } else {
-            // no scroll needed, position is already OK
-            return false;
         }
+    };
 
-        // Some scroll is needed before making the section active
-        this.implicitScrollToY = sectionY;
-        this.formLayoutScrollView.smoothScrollTo(0, implicitScrollToY);
-        return true;
+    /**
+     * Reads current Y coordinates of all section headers.
+     * Afterwards offsets are updated by {@link #sectionLayoutListener}.
+     */
+    private void refreshSectionOffsets() {
+        for (int i = 0; i < sectionsData.size(); i++) {
+            pinningEngine.setOffset(i, (int) sectionsData.get(i).getUnpinnedHeader().getY());
+        }
+        pinningEngine.validateOffsets();
     }
 
     @Override
     protected void onFinishInflate() {
         super.onFinishInflate();
         inflateFinished = true;
+        registerPendingFormViews();
     }
     @Override
     protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
@@ -563,6 +2264,12 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
 
     @Override
     protected StickyLinearLayout.LayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+        // Keep margins, weight and gravity of the source params
+        if (p instanceof LinearLayout.LayoutParams) {
+            return new LayoutParams((LinearLayout.LayoutParams) p);
+        } else if (p instanceof MarginLayoutParams) {
+            return new LayoutParams((MarginLayoutParams) p);
+        }
         return new LayoutParams(p);
     }
 
@@ -583,13 +2290,37 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         previousScrollX = scrollX;
         previousScrollY = scrollY;
 
-        Log.d(TAG, "onScrollChange(View v, int scrollX, int scrollY, int oldScrollX, int oldScrollY)");
+        if (DEBUG) {
+            Log.d(TAG, "onScrollChange(View v, int scrollX, int scrollY, int oldScrollX, int oldScrollY)");
+        }
+
+        if (pinnedAreaLayers) {
+            // Fling is still running, release of layers is postponed
+            // by the callback itself instead of re-posting it on every change
+            pinnedAreaLayersScrollTime = SystemClock.uptimeMillis();
+        }
+
+        if (updateScheduler != null) {
+            // Processed once in the next frame together with other scroll events
+            updateScheduler.scheduleScroll(scrollY, oldScrollY);
+            return;
+        }
 
         updateSectionDataAndUi(scrollY, oldScrollY, false);
     }
 
     protected void updateSectionDataAndUi(int scrollY, int oldScrollY, boolean forceUpdateUi) {
 
+        // Listener might change during the update (e.g. from a callback), keep sections balanced
+        MetricsListener metrics = metricsListener;
+        long startNanos = 0;
+        boolean implicitScroll = false;
+        if (metrics != null) {
+            startNanos = System.nanoTime();
+            implicitScroll = isScrollImplicit();
+            Trace.beginSection("StickyLinearLayout.update");
+        }
+
         boolean scrollDown = scrollY > oldScrollY; // scrolling the scrollview content towards the bottom
         boolean scrollUp = !scrollDown; // scrolling the scrollview content towards the top
 
@@ -605,222 +2336,442 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         // This instance if not part of the content (form). It's used to simulate
         // the pin effect of "section header" when form is scrolled outside of the visible viewport.
 
+        // Offsets of section headers are read from views only once
+        // after sections are added, layout listener keeps them updated.
+        if (!pinningEngine.isOffsetsValid()) {
+            refreshSectionOffsets();
+        }
+        int sectionsCount = sectionsData.size();
+        int formViewportHeight = formLayoutScrollView.getHeight();
+
         // STEP A:
         // Calculate heights of header/footer ScrollView from available state data.
         // In other words, we need to get notion of how the header/footer looked
         // in previous scroll callback.
-        // This info is used to detect diffs in header/footer ScrollView content
-        // before and after the scroll.
-
-        int formViewportHeight = formLayoutScrollView.getHeight();
-        int headerRowHeight = 99; // TODO calculate: height of the single header row
-        int prevHeaderHeight = 0;
-        int prevHeaderRowsCount = 0;
-        int footerRowHeight = 99; // TODO calculate: height of the single footer row
-        int prevFooterHeight = 0;
-        int prevFooterRowsCount = 0;
-        for (SectionData data : sectionsData) {
-            if (data.getHeaderState() == SectionData.HeaderState.PINNED_UP) {
-                prevHeaderHeight += data.getPinnedUpHeader().getHeight();
-                prevHeaderRowsCount++;
-            } else if (data.getHeaderState() == SectionData.HeaderState.PINNED_DOWN) {
-                prevFooterHeight += data.getPinnedDownHeader().getHeight();
-                prevFooterRowsCount++;
-            }
-        }
-        // take maxHeader rows into consideration
-        int maxHeaderHeigth = maxHeaderRows*headerRowHeight;
-        if (prevHeaderHeight > maxHeaderHeigth) prevHeaderHeight = maxHeaderHeigth;
-        // take maxFooter rows into consideration
-        int maxFooterHeigth = maxFooterRows*footerRowHeight;
-        if (prevFooterHeight > maxFooterHeigth) prevFooterHeight = maxFooterHeigth;
-
         // STEP B:
         // Calculate the new content of header/footer ScrollView depending on
         // - current scroll position of the form
         // - previous content of header/footer (see step A)
+        // Both steps are done by PinningEngine, only sections between old and
+        // new pinned up/down boundaries change their state.
 
-        boolean updateUi = false;
-        int pinnedUpCount = 0;
-        int pinnedDownCount = 0;
-
-        for (SectionData data : sectionsData) {
-            float sectionHeaderY = data.getUnpinnedHeader().getY();
-
-            if ((scrollDown && prevHeaderRowsCount <  maxHeaderRows && sectionHeaderY < scrollY + prevHeaderHeight) ||
-                (scrollUp   && prevHeaderRowsCount <  maxHeaderRows && sectionHeaderY < scrollY + prevHeaderHeight - headerRowHeight) ||
-                (scrollDown && prevHeaderRowsCount >= maxHeaderRows && sectionHeaderY < scrollY + prevHeaderHeight - headerRowHeight) ||
-                (scrollUp   && prevHeaderRowsCount >= maxHeaderRows && sectionHeaderY < scrollY + prevHeaderHeight - headerRowHeight))
-            {
-                updateUi |= data.update(SectionData.HeaderState.PINNED_UP);
-                pinnedUpCount++;
-
-            } else if ((scrollUp   && prevFooterRowsCount <  maxFooterRows && sectionHeaderY > scrollY + formViewportHeight - prevFooterHeight - footerRowHeight) ||
-                       (scrollDown && prevFooterRowsCount <  maxFooterRows && sectionHeaderY > scrollY + formViewportHeight - prevFooterHeight) ||
-                       (scrollUp   && prevFooterRowsCount >= maxFooterRows && sectionHeaderY > scrollY + formViewportHeight - prevFooterHeight) ||
-                       (scrollDown && prevFooterRowsCount >= maxFooterRows && sectionHeaderY > scrollY + formViewportHeight - prevFooterHeight))
-            {
-                updateUi |= data.update(SectionData.HeaderState.PINNED_DOWN);
-                pinnedDownCount++;
-
-            } else {
-                updateUi |= data.update(SectionData.HeaderState.UNPINNED);
-            }
+        if (metrics != null) {
+            Trace.beginSection("StickyLinearLayout.states");
         }
 
-        SectionData pinningHeader = null;
-        SectionData pinningFooter = null;
-        for (SectionData data : sectionsData) {
+        pinningEngine.update(scrollY, oldScrollY, formViewportHeight);
 
-            if (SectionData.HeaderState.UNPINNED == data.getHeaderState()) {
-                float sectionHeaderY = data.getUnpinnedHeader().getY();
+        int changedUpFrom = pinningEngine.getChangedUpFrom();
+        int changedUpTo = pinningEngine.getChangedUpTo();
+        int changedDownFrom = pinningEngine.getChangedDownFrom();
+        int changedDownTo = pinningEngine.getChangedDownTo();
 
-                // This section is UNPINNED yet, but is soon about to be PINNED_UP
-                // The section will be PINNED_UP after the header is fully scrolled
-                // so there is place for the new header.
-                if (pinnedUpCount >= maxHeaderRows && sectionHeaderY < scrollY + prevHeaderHeight) {
-                    pinningHeader = data;
-                }
+        int changedSectionCount = updateSectionStates(changedUpFrom, changedUpTo)
+                + updateSectionStates(changedDownFrom, changedDownTo);
+        boolean updateUi = changedSectionCount > 0;
 
-                // This section is UNPINNED yet, but is soon about to be PINNED_DOWN
-                // The section will be PINNED_DOWN after the footer is fully scrolled
-                // so there is place for the new footer.
-                if (pinnedDownCount >= maxFooterRows && sectionHeaderY + footerRowHeight > scrollY + formViewportHeight - prevFooterHeight) {
-                    pinningFooter = data;
-                }
-            }
+        // Sections which are UNPINNED yet, but are soon about to be PINNED_UP/PINNED_DOWN
+        SectionData pinningHeader = pinningEngine.getPinningHeader() < 0
+                ? null
+                : sectionsData.get(pinningEngine.getPinningHeader());
+        SectionData pinningFooter = pinningEngine.getPinningFooter() < 0
+                ? null
+                : sectionsData.get(pinningEngine.getPinningFooter());
+
+        if (metrics != null) {
+            Trace.endSection();
+            Trace.beginSection("StickyLinearLayout.pinnedViews");
         }
 
         // STEP C:
         // Update UI content of header/footer ScrollView according to calculations in STEP B.
 
+        if (pinnedHeaderMode == PINNED_HEADER_MODE_SNAPSHOT) {
+            if (forceUpdateUi) {
+                updatePinnedSnapshots(0, sectionsCount, true);
+            } else if (updateUi) {
+                updatePinnedSnapshots(changedUpFrom, changedUpTo, false);
+                updatePinnedSnapshots(changedDownFrom, changedDownTo, false);
+            }
+        } else if (updateUi || forceUpdateUi) {
+            // Only rows shown in header/footer area have pinned views
+            updatePinnedRows();
+        }
+
+        applyPinnedHeightsChanged();
         if (updateUi || forceUpdateUi) {
+            pinnedViewCache.trim(pinningEngine.getShownUpFrom(), pinningEngine.getPinnedUpEnd(),
+                    pinningEngine.getPinnedDownStart(), pinningEngine.getShownDownTo());
+        }
 
-            int pinnedDownIndex = 0;
-            for (int i = 0; i < sectionsData.size(); i++) {
-                SectionData section = sectionsData.get(i);
-
-                if (section.isStateUpdated() || forceUpdateUi) {
-
-                    // Ensure child is removed from parent
-                    headerLayout.removeView(section.getPinnedUpHeader());
-                    footerLayout.removeView(section.getPinnedDownHeader());
-
-                    switch (section.getHeaderState()) {
-                        case PINNED_UP:
-                            headerLayout.addView(section.getPinnedUpHeader());
-                            break;
-                        case PINNED_DOWN:
-                            footerLayout.addView(section.getPinnedDownHeader(), pinnedDownIndex);
-                            pinnedDownIndex++;
-                            break;
-                        case UNPINNED:
-                            // nothing to do with header/footer container
-                            break;
-                    }
-                }
-            }
+        if (metrics != null) {
+            Trace.endSection();
+            Trace.beginSection("StickyLinearLayout.sync");
         }
 
         // STEP D:
         // Sync position of "section headers" and "pinned headers/footers".
+        // Pinned headers/footers are only translated, the position is updated
+        // without measure/layout of header/footer area (see syncPinnedAreas(...)).
 
-        if (pinningHeader != null) {
+        syncPinnedAreas(scrollY, formViewportHeight, pinningHeader, pinningFooter);
+
+        if (metrics != null) {
+            Trace.endSection();
+            Trace.beginSection("StickyLinearLayout.activeSection");
+        }
+
+        // STEP E:
+        // Detect if 'active section' has changed.
+        // If so then notify listener registered layout XML file.
+        // Active section is tracked without listener too, it anchors
+        // the scroll position when sections above it are collapsed.
 
-            // lazily set bottom padding
-            if (headerLayout.getPaddingBottom() != headerRowHeight) {
-                headerLayout.setPadding(
-                        headerLayout.getPaddingLeft(),
-                        headerLayout.getPaddingTop(),
-                        headerLayout.getPaddingRight(),
-                        headerRowHeight); // <- bottom padding
+        if (sectionsCount > 0) {
+            if (isScrollImplicit()) {
+                if (isImplicitScrollFinished(scrollY, oldScrollY)) {
+                    setActiveSection(activeSectionAfterScroll);
+                    resetImplicitScrollParams();
+                }
+            } else if (pinningEngine.getPinnedUpEnd() < pinningEngine.getPinnedDownStart()) {
+                // The first UNPINNED section is the active one
+                setActiveSection(sectionsData.get(pinningEngine.getPinnedUpEnd())); // This calls onActiveSectionChanged(...) callback
             }
+        }
+
+        if (offscreenDetachScreens > 0) {
+            updateAttachedSections(scrollY, formViewportHeight);
+        }
+
+        if (metrics != null) {
+            Trace.endSection();
+            Trace.endSection();
+            metrics.onSectionsUpdated(System.nanoTime() - startNanos,
+                    (changedUpTo - changedUpFrom) + (changedDownTo - changedDownFrom),
+                    changedSectionCount, pinnedViewsAdded, pinnedViewsRemoved, forceUpdateUi,
+                    implicitScroll);
+            pinnedViewsAdded = 0;
+            pinnedViewsRemoved = 0;
+        }
+    }
+
+    /**
+     * Attaches rows of sections which are close to the visible part of the form
+     * and detaches rows of sections which are far from it. Only sections which
+     * entered/left the window since the previous update are processed.
+     */
+    private void updateAttachedSections(int scrollY, int viewportHeight) {
+        if (viewportHeight <= 0 || sectionsData.size() == 0) {
+            return;
+        }
+        int margin = offscreenDetachScreens * viewportHeight;
+        // Section containing the top of the window up to the last one starting above its bottom
+        int from = Math.max(0, pinningEngine.upperBound(scrollY - margin) - 1);
+        int to = pinningEngine.lowerBound(scrollY + viewportHeight + margin);
 
-            // calculate new scroll position
-            int newScroll = (int) (scrollY
-                    + headerLayout.getHeight()
-                    - headerRowHeight
-                    - pinningHeader.getUnpinnedHeader().getY());
-            // update the scroll
-            headerScrollView.scrollTo(0, newScroll);
+        if (attachWindowTo < 0) {
+            for (int i = 0; i < sectionsData.size(); i++) {
+                setSectionRowsAttached(sectionsData.get(i), i >= from && i < to);
+            }
+        } else {
+            // Sections which left the window
+            for (int i = attachWindowFrom; i < Math.min(attachWindowTo, from); i++) {
+                setSectionRowsAttached(sectionsData.get(i), false);
+            }
+            for (int i = Math.max(to, attachWindowFrom); i < attachWindowTo; i++) {
+                setSectionRowsAttached(sectionsData.get(i), false);
+            }
+            // Sections which entered the window
+            for (int i = from; i < Math.min(to, attachWindowFrom); i++) {
+                setSectionRowsAttached(sectionsData.get(i), true);
+            }
+            for (int i = Math.max(from, attachWindowTo); i < to; i++) {
+                setSectionRowsAttached(sectionsData.get(i), true);
+            }
+        }
+        attachWindowFrom = from;
+        attachWindowTo = to;
+    }
 
+    private void setSectionRowsAttached(SectionData section, boolean attached) {
+        if (attached) {
+            attachSectionRows(section);
         } else {
-            // clear bottom padding
-            if (headerLayout.getPaddingBottom() != 0) {
-                headerLayout.setPadding(
-                        headerLayout.getPaddingLeft(),
-                        headerLayout.getPaddingTop(),
-                        headerLayout.getPaddingRight(),
-                        0); // <- clear bottom padding
+            detachSectionRows(section);
+        }
+    }
+
+    /**
+     * Replaces form rows of the section by {@link SectionPlaceholder} of the same height.
+     * Rows of the section containing the focused view are kept.
+     */
+    private void detachSectionRows(SectionData section) {
+        if (section.getPlaceholder() != null) {
+            return;
+        }
+        int start = formLayout.indexOfChild(section.getUnpinnedHeader()) + 1;
+        int end = getNextSectionHeaderIndex(start);
+        if (start <= 0 || start == end) {
+            return;
+        }
+
+        View focused = formLayout.getFocusedChild();
+        int height = 0;
+        View[] rows = new View[end - start];
+        for (int i = 0; i < rows.length; i++) {
+            View row = formLayout.getChildAt(start + i);
+            if (row == focused || row.isLayoutRequested()) {
+                // Focus would be lost, or the row has not been laid out with its final size yet
+                return;
+            }
+            if (row.getVisibility() != GONE) {
+                height += row.getHeight();
+                ViewGroup.LayoutParams params = row.getLayoutParams();
+                if (params instanceof MarginLayoutParams) {
+                    height += ((MarginLayoutParams) params).topMargin + ((MarginLayoutParams) params).bottomMargin;
+                }
             }
+            rows[i] = row;
+        }
+
+        SectionPlaceholder placeholder = new SectionPlaceholder(getContext(), rows);
+        LayoutParams params = new LayoutParams(LayoutParams.MATCH_PARENT, height);
+        params.section = section;
+        formLayout.removeViews(start, rows.length);
+        formLayout.addView(placeholder, start, params);
+        section.setPlaceholder(placeholder);
+    }
+
+    /**
+     * Puts detached form rows of the section back to the form.
+     */
+    private void attachSectionRows(SectionData section) {
+        SectionPlaceholder placeholder = section.getPlaceholder();
+        if (placeholder == null) {
+            return;
+        }
+        section.setPlaceholder(null);
+        int index = formLayout.indexOfChild(placeholder);
+        if (index < 0) {
+            return;
+        }
+        formLayout.removeViewAt(index);
+        View[] rows = placeholder.getRows();
+        for (int i = 0; i < rows.length; i++) {
+            formLayout.addView(rows[i], index + i);
+        }
+    }
 
-            // If no header is being pinned then
-            // ensure the header is fully scrolled.
-            // It might be left partially scrolled from
-            // previous animation if the scroll steps were too large.
-            headerScrollView.smoothScrollTo(0, headerLayout.getHeight());
+    private void attachAllSectionRows() {
+        for (int i = 0; i < sectionsData.size(); i++) {
+            attachSectionRows(sectionsData.get(i));
+        }
+        attachWindowTo = -1;
+    }
+
+    /**
+     * Scrolls header/footer area to its rest position and translates it by the section
+     * header which is about to be pinned. The section header being pinned pushes
+     * pinned headers up (pinned footers down) until there is space for it.
+     * <p>Both properties are changed only if they differ from the current ones.</p>
+     */
+    private void syncPinnedAreas(int scrollY, int formViewportHeight,
+                                 SectionData pinningHeader, SectionData pinningFooter) {
+
+        // Header area shows the last pinned headers
+        int headerRowsHeight = pinningEngine.getPinnedUpHeight(pinningEngine.getShownUpFrom(), pinningEngine.getPinnedUpEnd());
+        int headerHeight = maxHeaderRows > 0 ? headerAreaHeight : headerRowsHeight;
+        scrollHeaderArea(Math.max(0, headerRowsHeight - headerHeight));
+
+        int headerTranslation = 0;
+        if (pinningHeader != null) {
+            int headerRowHeight = pinningEngine.getPinnedUpHeight(pinningHeader.getIndex());
+            // top of the section header being pinned relative to header area
+            int headerTop = pinningEngine.getOffset(pinningHeader.getIndex()) - scrollY;
+            int restBottom = Math.min(headerRowsHeight, headerHeight);
+            int minBottom = Math.min(headerRowsHeight, headerHeight - headerRowHeight);
+            headerTranslation = Math.max(minBottom, Math.min(headerTop, restBottom)) - restBottom;
         }
+        if (headerLayout.getTranslationY() != headerTranslation) {
+            headerLayout.setTranslationY(headerTranslation);
+        }
+
+        // Footer area shows the first pinned footers
+        int footerRowsHeight = pinningEngine.getPinnedDownHeight(pinningEngine.getPinnedDownStart(), pinningEngine.getShownDownTo());
+        int footerHeight = maxFooterRows > 0 ? footerAreaHeight : footerRowsHeight;
+        scrollFooterArea(0);
 
+        int footerTranslation = 0;
         if (pinningFooter != null) {
+            int footerRowHeight = pinningEngine.getPinnedDownHeight(pinningFooter.getIndex());
+            // bottom of the section header being pinned relative to footer area
+            int footerBottom = pinningEngine.getOffset(pinningFooter.getIndex()) + footerRowHeight
+                    - scrollY - formViewportHeight + footerHeight;
+            int restTop = Math.max(0, footerHeight - footerRowsHeight);
+            int maxTop = Math.max(footerRowHeight, restTop);
+            footerTranslation = Math.min(maxTop, Math.max(footerBottom, restTop)) - restTop;
+        }
+        if (footerLayout.getTranslationY() != footerTranslation) {
+            footerLayout.setTranslationY(footerTranslation);
+        }
+    }
 
-            // lazily set top padding
-            if (footerLayout.getPaddingTop() != footerRowHeight) {
-                footerLayout.setPadding(
-                        footerLayout.getPaddingLeft(),
-                        footerRowHeight, // <- padding top
-                        footerLayout.getPaddingRight(),
-                        footerLayout.getPaddingBottom());
-            }
-
-            // calculate new scroll position
-            int newScroll = (int) (
-                    (prevFooterRowsCount - maxFooterRows + 1) * footerRowHeight
-                    - pinningFooter.getUnpinnedHeader().getY()
-                    + scrollY
-                    + formViewportHeight
-                    - footerLayout.getHeight());
-            // update the scroll
-            footerScrollView.scrollTo(0, newScroll);
+    /**
+     * Updates state of sections in range <code>[from, to)</code> according
+     * to current pinned up/down boundaries.
+     * @return Number of sections which have changed their state.
+     */
+    private int updateSectionStates(int from, int to) {
+        int updated = 0;
+        for (int i = from; i < to; i++) {
+            if (sectionsData.updateState(i, pinningEngine.getState(i))) {
+                updated++;
+            }
+        }
+        return updated;
+    }
 
+    /**
+     * Updates header/footer area after state of sections in range <code>[from, to)</code>
+     * has changed because sections have been inserted/removed.
+     */
+    private void updatePinnedViews(int from, int to) {
+        if (pinnedHeaderMode == PINNED_HEADER_MODE_SNAPSHOT) {
+            updatePinnedSnapshots(from, to, true);
         } else {
-            // clear bottom padding
-            if (footerLayout.getPaddingTop() != 0) {
-                footerLayout.setPadding(
-                        footerLayout.getPaddingLeft(),
-                        0, // <- clear top padding
-                        footerLayout.getPaddingRight(),
-                        footerLayout.getPaddingBottom());
+            updatePinnedRows();
+        }
+    }
+
+    /**
+     * Attaches pinned views of sections shown in header area (the last <code>maxHeaderRows</code>
+     * sections pinned up) and footer area (the first <code>maxFooterRows</code> sections
+     * pinned down). Pinned views of other sections are detached, or hidden in
+     * {@link #PINNED_HEADER_MODE_STABLE}. Pinned views are created only for shown sections,
+     * so the work does not depend on the number of sections in the form.
+     */
+    private void updatePinnedRows() {
+        updatePinnedRows(headerLayout, pinningEngine.getShownUpFrom(), pinningEngine.getPinnedUpEnd(), true);
+        updatePinnedRows(footerLayout, pinningEngine.getPinnedDownStart(), pinningEngine.getShownDownTo(), false);
+    }
+
+    /**
+     * Attaches pinned views of sections <code>[from, to)</code> to <code>container</code>
+     * (in section order) and detaches (hides) pinned views of any other sections.
+     * Views added to the container by the app are left untouched.
+     */
+    private void updatePinnedRows(LinearLayout container, int from, int to, boolean pinnedUp) {
+        boolean stable = pinnedHeaderMode == PINNED_HEADER_MODE_STABLE;
+        for (int i = container.getChildCount() - 1; i >= 0; i--) {
+            View child = container.getChildAt(i);
+            SectionData section = SectionData.of(child);
+            if (section == null || (section.getIndex() >= from && section.getIndex() < to)) {
+                continue;
+            }
+            if (!stable) {
+                removePinnedView(child);
+            } else if (child.getVisibility() != GONE) {
+                child.setVisibility(GONE);
             }
+        }
 
-            // If no footer is being pinned then
-            // ensure the footer is fully scrolled.
-            // It might be left partially scrolled from
-            // previous animation if the scroll steps were too large.
-            footerScrollView.smoothScrollTo(0, 0);
+        for (int i = from; i < to; i++) {
+            SectionData section = sectionsData.get(i);
+            usePinnedViews(section);
+            if (stable) {
+                // Both views stay attached until the section is released by the cache
+                attachInSectionOrder(headerLayout, section.getPinnedUpHeader());
+                attachInSectionOrder(footerLayout, section.getPinnedDownHeader());
+            }
+            View pinnedView = pinnedUp ? section.getPinnedUpHeader() : section.getPinnedDownHeader();
+            if (pinnedView == null) {
+                continue;
+            }
+            if (pinnedView.getParent() != container) {
+                removePinnedView(pinnedView);
+                addInSectionOrder(container, pinnedView);
+            }
+            if (stable && pinnedView.getVisibility() != VISIBLE) {
+                pinnedView.setVisibility(VISIBLE);
+            }
         }
+    }
 
-        // STEP E:
-        // Detect if 'active section' has changed.
-        // If so then notify listener registered layout XML file.
+    /**
+     * Adds hidden pinned view to <code>container</code> unless it is already attached.
+     * Children of container are kept ordered by section index.
+     */
+    private void attachInSectionOrder(LinearLayout container, View pinnedView) {
+        if (pinnedView == null || pinnedView.getParent() != null) {
+            return;
+        }
+        pinnedView.setVisibility(GONE);
+        addInSectionOrder(container, pinnedView);
+    }
 
-        for (SectionData section : sectionsData) {
-            if (onActiveSectionChangedMethod != null) {
-                if (isScrollImplicit() && isImplicitScrollFinished(scrollY, oldScrollY)) {
-                    setActiveSection(activeSectionAfterScroll);
-                    resetImplicitScrollParams();
-                    break;
-                } else if (!isScrollImplicit() &&
-                        section.getHeaderState() == SectionData.HeaderState.UNPINNED) {
-                    setActiveSection(section); // This calls onActiveSectionChanged(...) callback
-                    break;
+    /**
+     * Adds pinned view to <code>container</code> whose children are ordered by section index.
+     * Appending (the common case) does not iterate the children.
+     */
+    private void addInSectionOrder(LinearLayout container, View pinnedView) {
+        int index = getSectionIndexOfPinnedView(pinnedView);
+        int position = container.getChildCount();
+        while (position > 0 && getSectionIndexOfPinnedView(container.getChildAt(position - 1)) > index) {
+            position--;
+        }
+        container.addView(pinnedView, position);
+        if (metricsListener != null) {
+            pinnedViewsAdded++;
+        }
+    }
+
+    /**
+     * @return Index of the section of pinned header/footer,
+     * <code>-1</code> if the view is not a pinned view of any section.
+     */
+    private static int getSectionIndexOfPinnedView(View pinnedView) {
+        SectionData section = SectionData.of(pinnedView);
+        return section == null ? -1 : section.getIndex();
+    }
+
+    /**
+     * Updates sections drawn in header/footer area (see {@link #PINNED_HEADER_MODE_SNAPSHOT}).
+     * Snapshots of sections in range <code>[from, to)</code> which have just been pinned
+     * are captured again on next draw. Snapshots of unpinned sections are released.
+     */
+    private void updatePinnedSnapshots(int from, int to, boolean forceUpdateUi) {
+        for (int i = from; i < to; i++) {
+            SectionData section = sectionsData.get(i);
+
+            if (section.isStateUpdated() || forceUpdateUi) {
+                if (section.getHeaderState() == SectionData.HeaderState.UNPINNED) {
+                    releaseSnapshot(section);
+                } else {
+                    section.invalidateSnapshot();
                 }
             }
         }
+        headerSnapshotView.setSections(0, pinningEngine.getPinnedUpEnd());
+        headerSnapshotView.invalidate();
+        footerSnapshotView.setSections(pinningEngine.getPinnedDownStart(), sectionsData.size());
+        footerSnapshotView.invalidate();
+    }
+
+    /**
+     * Drops snapshot of the section, its bitmap is reused by the next snapshot captured.
+     */
+    private void releaseSnapshot(SectionData section) {
+        if (snapshotPool != null) {
+            snapshotPool.release(section.getSnapshot());
+        }
+        section.releaseSnapshot();
     }
 
     private void resetImplicitScrollParams() {
 
-        Log.d(TAG, "resetImplicitScrollParams()");
+        if (DEBUG) {
+            Log.d(TAG, "resetImplicitScrollParams()");
+        }
 
         activeSectionAfterScroll = null;
         implicitScrollToY = -1;
@@ -837,17 +2788,8 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
     }
 
     private boolean isImplicitScrollFinished(int scrollY, int oldScrollY) {
-        if (scrollY < oldScrollY) {
-            // scrolling up
-            return
-                scrollY <= getMinScrollY() ||
-                scrollY == implicitScrollToY;
-        } else {
-            // scrolling down
-            return
-                scrollY >= getMaxScrollY() ||
-                scrollY == implicitScrollToY;
-        }
+        return PinningEngine.isImplicitScrollFinished(
+                scrollY, oldScrollY, implicitScrollToY, getMinScrollY(), getMaxScrollY());
     }
 
     private int getMinScrollY() {
@@ -869,9 +2811,9 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
 
     /**
      * <p>
-     * Marks the provided <code>section</code> as active and calls
-     * <code>onActiveSectionChanged()</code> callback method
-     * registered/specified in layout XML file.
+     * Marks the provided <code>section</code> as active and notifies
+     * {@link OnActiveSectionChangedListener} (or <code>onActiveSectionChanged()</code>
+     * callback method registered/specified in layout XML file).
      * </p><p>
      * Does nothing if provided <code>section</code> is already active
      * (see {@link #isSectionActive(SectionData)}).
@@ -883,21 +2825,27 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         // Ignore if section is already active
         if (isSectionActive(section)) return;
 
-        int newIndex = sectionsData.indexOf(section);
+        int newIndex = section.getIndex();
         int previousIndex = activeSectionIndex;
 
         activeSection = section;
         activeSectionIndex = newIndex;
 
-        onActiveSectionChangedMethod.invoke(sectionsData, newIndex, previousIndex);
+        if (onActiveSectionChangedListener != null) {
+            onActiveSectionChangedListener.onActiveSectionChanged(sectionsData.asList(), newIndex, previousIndex);
+        }
     }
 
     private boolean isSectionActive(SectionData section) {
         return activeSection == section;
     }
 
+    /**
+     * @return Read-only list of form sections in the order they appear in the form.
+     */
     public List<SectionData> getSectionsData() {
-        return sectionsData;
+        registerPendingFormViews();
+        return sectionsData.asList();
     }
 
     private static class LayoutParams extends LinearLayout.LayoutParams {
@@ -906,6 +2854,18 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
 
         private int scrollToSectionMargin = -1;
 
+        /**
+         * Section to which the form row belongs, i.e. the section of the nearest
+         * section header above the row (or the row itself if it is the header).
+         */
+        private SectionData section;
+
+        /**
+         * Visibility of the form row before its section has been collapsed
+         * or <code>-1</code> if the row is not hidden by collapsed section.
+         */
+        private int collapsedVisibility = -1;
+
         public LayoutParams(Context c, AttributeSet attrs) {
             super(c, attrs);
             this.readCustomParams(c, attrs);
@@ -919,6 +2879,22 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
             super(layoutParams);
         }
 
+        public LayoutParams(MarginLayoutParams layoutParams) {
+            super(layoutParams);
+        }
+
+        /**
+         * Copies weight and gravity too, attributes of {@link StickyLinearLayout}
+         * are copied if <code>layoutParams</code> are its params.
+         */
+        public LayoutParams(LinearLayout.LayoutParams layoutParams) {
+            super(layoutParams);
+            if (layoutParams instanceof LayoutParams) {
+                this.sectionHeader = ((LayoutParams) layoutParams).sectionHeader;
+                this.scrollToSectionMargin = ((LayoutParams) layoutParams).scrollToSectionMargin;
+            }
+        }
+
         private void readCustomParams(Context c, AttributeSet attrs){
             TypedArray typedArray = c.obtainStyledAttributes(attrs, R.styleable.StickyLinearLayoutParams);
             try {
@@ -960,6 +2936,88 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
         }
     }
 
+    /**
+     * {@link PinnedHeaderFactory} calling methods declared in layout XML through reflection.
+     */
+    private static class DeclaredPinnedHeaderFactory implements PinnedHeaderFactory {
+
+        private final MethodWithContext onCreateHeaderMethod;
+        private final MethodWithContext onCreateFooterMethod;
+
+        public DeclaredPinnedHeaderFactory(MethodWithContext onCreateHeaderMethod, MethodWithContext onCreateFooterMethod) {
+            this.onCreateHeaderMethod = onCreateHeaderMethod;
+            this.onCreateFooterMethod = onCreateFooterMethod;
+        }
+
+        @Override
+        public View onCreateHeader(View sectionHeader) {
+            return createView(onCreateHeaderMethod, sectionHeader);
+        }
+
+        @Override
+        public View onCreateFooter(View sectionHeader) {
+            return createView(onCreateFooterMethod, sectionHeader);
+        }
+
+        private static View createView(MethodWithContext method, View sectionHeader) {
+            if (method == null) {
+                return null;
+            }
+            Object result = method.invoke(sectionHeader);
+            if (result instanceof View) {
+                return (View) result;
+            }
+            throw new RuntimeException("Method invocation of " + method.method.getName() + " did not return new view");
+        }
+    }
+
+    /**
+     * {@link OnActiveSectionChangedListener} calling method declared in layout XML through reflection.
+     */
+    private static class DeclaredOnActiveSectionChangedListener implements OnActiveSectionChangedListener {
+
+        private final MethodWithContext method;
+
+        /**
+         * Arguments array reused by every invocation.
+         */
+        private final Object[] args = new Object[3];
+
+        /**
+         * Boxed section indexes reused by every invocation, indexes outside
+         * of the <code>Integer</code> cache would be allocated by each call otherwise.
+         */
+        private Integer[] boxedIndexes = new Integer[0];
+
+        public DeclaredOnActiveSectionChangedListener(MethodWithContext method) {
+            this.method = method;
+        }
+
+        @Override
+        public void onActiveSectionChanged(List<SectionData> sections, int newIndex, int previousIndex) {
+            args[0] = sections;
+            args[1] = box(newIndex, sections.size());
+            args[2] = box(previousIndex, sections.size());
+            method.invoke(args);
+            args[0] = null;
+        }
+
+        private Integer box(int index, int sectionCount) {
+            if (index < 0) {
+                return Integer.valueOf(index);
+            }
+            if (index >= boxedIndexes.length) {
+                boxedIndexes = Arrays.copyOf(boxedIndexes, Math.max(index + 1, sectionCount));
+            }
+            Integer boxed = boxedIndexes[index];
+            if (boxed == null) {
+                boxed = Integer.valueOf(index);
+                boxedIndexes[index] = boxed;
+            }
+            return boxed;
+        }
+    }
+
     /**
      * Copy from {@link View}, DeclaredOnClickListener
      */
@@ -995,6 +3053,19 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
 
     @Override
     public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+        if (updateScheduler != null) {
+            // Only the last focus change within a frame is processed
+            updateScheduler.scheduleFocusChange(newFocus);
+        } else {
+            updateActiveSectionForFocus(newFocus);
+        }
+    }
+
+    /**
+     * Makes the section to which <code>newFocus</code> belongs active
+     * (scrolls the form if needed).
+     */
+    private void updateActiveSectionForFocus(View newFocus) {
 
         // Traverse view hierarchy down to 'formLayout'
         // to find View which is a direct child of 'formLayout'.
@@ -1019,27 +3090,13 @@ public class StickyLinearLayout extends LinearLayout implements View.OnScrollCha
             // - 'newFocus' is from form layout
             // - 'child' is direct child of 'formLayout'
 
-            // Detect section to which 'child' belongs by traversing
-            // 'formLayout' upwards ('formLayout' is LinearLayout therefore
-            // we can traverse its children by index until child with
-            // 'sectionHeader' attribute is found).
-
-            View sectionFormView = null;
-            int viewIndex = getFormLayout().indexOfChild(child);
-            for (int i = viewIndex-1; i>=0; i--) {
-                child = getFormLayout().getChildAt(i);
-                LayoutParams layoutParams = (LayoutParams) child.getLayoutParams();
-                if (layoutParams.isSectionHeader()) {
-                    sectionFormView = child;
-                    break;
-                }
-            }
-
-            if (sectionFormView != null) {
-                for (SectionData sectionData : sectionsData) {
-                    if (sectionData.getUnpinnedHeader() == sectionFormView) {
-                        setActiveSectionAfterScroll(sectionData);
-                    }
+            // Section to which 'child' belongs is kept
+            // in its layout params (see registerPendingFormViews).
+            ViewGroup.LayoutParams layoutParams = child.getLayoutParams();
+            if (layoutParams instanceof LayoutParams) {
+                SectionData sectionData = ((LayoutParams) layoutParams).section;
+                if (sectionData != null) {
+                    setActiveSectionAfterScroll(sectionData);
                 }
             }
         }
@@ -0,0 +1,806 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.AttributeSet;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+
+import java.util.List;
+
+/**
+ * <p>Virtualized variant of {@link StickyLinearLayout} for very large forms.</p>
+ *
+ * <p>Form rows are provided by {@link SectionAdapter} and displayed by {@link RecyclerView},
+ * i.e. only rows within the visible window are created, measured and laid out.
+ * Rows for which {@link SectionAdapter#isSectionHeader(int)} returns <code>true</code>
+ * are pinned to the header or footer of the layout the same way as section headers
+ * of {@link StickyLinearLayout}.</p>
+ *
+ * <p>Pinned headers/footers are created when a section is pinned for the first time,
+ * either by {@link StickyLinearLayout.PinnedHeaderFactory} or, if no factory is set,
+ * by binding the section header row with the adapter. Only the visible rows of
+ * header/footer area are attached.</p>
+ *
+ * <p>Offsets of sections are computed from heights of rows. Rows which have not been
+ * laid out yet use height of the first row measured, therefore offsets of sections
+ * far from the viewport are estimates. Offsets around the viewport are exact.
+ * A measured row and changes of the adapter (inserted, removed or changed rows)
+ * shift offsets of the following sections only (see {@link SectionRows}).</p>
+ */
+public class StickyRecyclerLayout extends FrameLayout implements ViewTreeObserver.OnGlobalFocusChangeListener {
+
+    /**
+     * Adapter of form rows which marks rows being section headers.
+     * @param <VH> View holder type.
+     */
+    public static abstract class SectionAdapter<VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH> {
+
+        /**
+         * @return <code>true</code> if row at given <code>position</code> is a section header.
+         */
+        public abstract boolean isSectionHeader(int position);
+
+        /**
+         * @return 'Scroll to section' margin of section header at given
+         * <code>position</code> or <code>-1</code> to use the default one.
+         */
+        public int getScrollToSectionMargin(int position) {
+            return -1;
+        }
+    }
+
+    private RecyclerView recyclerView;
+    private LinearLayoutManager layoutManager;
+    private LinearLayout headerLayout;
+    private LinearLayout footerLayout;
+
+    private SectionAdapter<?> adapter;
+
+    private int defaultScrollToSectionMargin = 0;
+
+    private int maxHeaderRows = 3;
+    private int maxFooterRows = 3;
+
+    /**
+     * Sections, adapter positions of their headers and heights of rows.
+     */
+    private final SectionRows sectionRows = new SectionRows(maxHeaderRows, maxFooterRows, new SectionRows.Callback() {
+        @Override
+        public void onSectionRemoved(SectionData section) {
+            pinnedViewCache.remove(section);
+            onSectionsChanged();
+        }
+
+        @Override
+        public void onSectionChanged(SectionData section) {
+            pinnedViewCache.remove(section);
+            onSectionsChanged();
+        }
+    });
+
+    /**
+     * Form sections together with their states (see {@link SectionRows#getSections()}).
+     */
+    private SectionStore sectionsData = sectionRows.getSections();
+
+    /**
+     * Offsets and heights of sections; resolves which sections are pinned
+     * (see {@link SectionRows#getPinningEngine()}).
+     */
+    private PinningEngine pinningEngine = sectionRows.getPinningEngine();
+
+    /**
+     * Rows of {@link #adapter} for {@link #sectionRows}.
+     */
+    private final SectionRows.Rows adapterRows = new SectionRows.Rows() {
+        @Override
+        public boolean isSectionHeader(int position) {
+            return adapter.isSectionHeader(position);
+        }
+
+        @Override
+        public int getScrollToSectionMargin(int position) {
+            int scrollToSectionMargin = adapter.getScrollToSectionMargin(position);
+            return scrollToSectionMargin < 0 ? defaultScrollToSectionMargin : scrollToSectionMargin;
+        }
+    };
+
+    /**
+     * Sections which have pinned header/footer views created.
+     */
+    private final PinnedViewCache pinnedViewCache = new PinnedViewCache(new PinnedViewCache.Callback() {
+        @Override
+        public void onCreatePinnedViews(SectionData sectionData) {
+            createPinnedViews(sectionData);
+        }
+
+        @Override
+        public void onReleasePinnedViews(SectionData sectionData) {
+            releasePinnedViews(sectionData);
+        }
+    }, getPinnedViewCacheSize());
+
+    private StickyLinearLayout.PinnedHeaderFactory pinnedHeaderFactory;
+    private StickyLinearLayout.OnActiveSectionChangedListener onActiveSectionChangedListener;
+
+    private int previousScrollY = 0;
+
+    /**
+     * Adapter position of the first laid out row when {@link #previousScrollY}
+     * was read. Its offset anchors the scroll position while offsets of rows above
+     * it change (e.g. estimated heights are corrected or rows are inserted).
+     */
+    private int previousFirstPosition = RecyclerView.NO_POSITION;
+
+    /**
+     * <code>true</code> if pinned views of all sections have to be updated
+     * with the next update, e.g. after data set or size change.
+     */
+    private boolean forceUpdateUi = true;
+
+    /**
+     * <code>true</code> if rows have been laid out since the last update,
+     * sections are updated before the next draw (see {@link #layoutUpdateListener}).
+     */
+    private boolean layoutChanged = false;
+
+    private SectionData activeSectionAfterScroll = null;
+    private SectionData activeSection = null;
+    private int activeSectionIndex = -1;
+
+    /**
+     * Shared by pinned views of all sections, the section is resolved from the clicked view.
+     */
+    private final OnClickListener pinnedViewClickListener = new OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            SectionData section = SectionData.of(v);
+            if (section != null && section.getIndex() >= 0) {
+                setActiveSectionAfterScroll(section);
+            }
+        }
+    };
+
+    private final RecyclerView.AdapterDataObserver adapterDataObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            onDataSetChanged();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            int anchorOffset = getAnchorOffset();
+            if (sectionRows.changeRows(adapterRows, positionStart, itemCount)) {
+                onSectionsReset();
+            } else {
+                onSectionsChanged();
+            }
+            previousScrollY += getAnchorOffset() - anchorOffset;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            int anchorOffset = getAnchorOffset();
+            sectionRows.insertRows(adapterRows, positionStart, itemCount);
+            if (positionStart <= previousFirstPosition) {
+                previousFirstPosition += itemCount;
+            }
+            previousScrollY += getAnchorOffset() - anchorOffset;
+            onSectionsChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            int anchorOffset = getAnchorOffset();
+            sectionRows.removeRows(positionStart, itemCount);
+            if (positionStart < previousFirstPosition) {
+                previousFirstPosition = Math.max(positionStart, previousFirstPosition - itemCount);
+            }
+            previousScrollY += getAnchorOffset() - anchorOffset;
+            onSectionsChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            // Rarely used, sections are rebuilt
+            onDataSetChanged();
+        }
+    };
+
+    public StickyRecyclerLayout(Context context) {
+        this(context, null);
+    }
+
+    public StickyRecyclerLayout(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public StickyRecyclerLayout(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        this(context, attrs, defStyleAttr, 0);
+    }
+
+    public StickyRecyclerLayout(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+        initLayout();
+    }
+
+    protected void initLayout() {
+
+        layoutManager = new LinearLayoutManager(getContext());
+        recyclerView = new RecyclerView(getContext());
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (isInLayout()) {
+                    // RecyclerView reports scroll from its layout pass as well,
+                    // pinned rows must not be added/removed during the layout
+                    layoutChanged = true;
+                } else {
+                    updateSectionDataAndUi();
+                }
+            }
+        });
+        recyclerView.addOnChildAttachStateChangeListener(new RecyclerView.OnChildAttachStateChangeListener() {
+            @Override
+            public void onChildViewAttachedToWindow(View view) {
+                int position = recyclerView.getChildAdapterPosition(view);
+                int sectionIndex = findSectionIndex(position);
+                if (sectionIndex >= 0 && sectionRows.getPosition(sectionIndex) == position) {
+                    sectionsData.get(sectionIndex).setUnpinnedHeader(view);
+                }
+            }
+
+            @Override
+            public void onChildViewDetachedFromWindow(View view) {
+                SectionData section = SectionData.of(view);
+                if (section != null && section.getUnpinnedHeader() == view) {
+                    section.clearUnpinnedHeader();
+                }
+            }
+        });
+        addView(recyclerView, new FrameLayout.LayoutParams(
+                LayoutParams.MATCH_PARENT,
+                LayoutParams.MATCH_PARENT));
+
+        // Header/footer areas hold only visible pinned rows,
+        // they are shifted by translation while a section is being pinned.
+        headerLayout = new LinearLayout(getContext());
+        headerLayout.setOrientation(LinearLayout.VERTICAL);
+        addView(headerLayout, new FrameLayout.LayoutParams(
+                LayoutParams.MATCH_PARENT,
+                LayoutParams.WRAP_CONTENT,
+                Gravity.TOP));
+
+        footerLayout = new LinearLayout(getContext());
+        footerLayout.setOrientation(LinearLayout.VERTICAL);
+        addView(footerLayout, new FrameLayout.LayoutParams(
+                LayoutParams.MATCH_PARENT,
+                LayoutParams.WRAP_CONTENT,
+                Gravity.BOTTOM));
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnGlobalFocusChangeListener(this);
+        getViewTreeObserver().addOnPreDrawListener(layoutUpdateListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        getViewTreeObserver().removeOnGlobalFocusChangeListener(this);
+        getViewTreeObserver().removeOnPreDrawListener(layoutUpdateListener);
+    }
+
+    /**
+     * @return {@link RecyclerView} which displays form rows.
+     */
+    public RecyclerView getRecyclerView() {
+        return recyclerView;
+    }
+
+    /**
+     * @return {@link LinearLayout} used as a container for visible header views.
+     */
+    public LinearLayout getHeaderLayout() {
+        return headerLayout;
+    }
+
+    /**
+     * @return {@link LinearLayout} used as a container for visible footer views.
+     */
+    public LinearLayout getFooterLayout() {
+        return footerLayout;
+    }
+
+    public SectionAdapter<?> getAdapter() {
+        return adapter;
+    }
+
+    /**
+     * Sets adapter of form rows. Sections are recognized
+     * by {@link SectionAdapter#isSectionHeader(int)}.
+     */
+    public void setAdapter(SectionAdapter<?> adapter) {
+        if (this.adapter != null) {
+            this.adapter.unregisterAdapterDataObserver(adapterDataObserver);
+        }
+        this.adapter = adapter;
+        if (adapter != null) {
+            adapter.registerAdapterDataObserver(adapterDataObserver);
+        }
+        recyclerView.setAdapter(adapter);
+        onDataSetChanged();
+    }
+
+    /**
+     * @see StickyLinearLayout#setPinnedHeaderFactory(StickyLinearLayout.PinnedHeaderFactory)
+     */
+    public void setPinnedHeaderFactory(StickyLinearLayout.PinnedHeaderFactory pinnedHeaderFactory) {
+        this.pinnedHeaderFactory = pinnedHeaderFactory;
+        pinnedViewCache.clear();
+        forceUpdateUi = true;
+        requestLayout();
+    }
+
+    /**
+     * @see StickyLinearLayout#setOnActiveSectionChangedListener(StickyLinearLayout.OnActiveSectionChangedListener)
+     */
+    public void setOnActiveSectionChangedListener(StickyLinearLayout.OnActiveSectionChangedListener onActiveSectionChangedListener) {
+        this.onActiveSectionChangedListener = onActiveSectionChangedListener;
+    }
+
+    /**
+     * Default 'scroll to section' margin used by sections for which
+     * {@link SectionAdapter#getScrollToSectionMargin(int)} returns <code>-1</code>.
+     */
+    public void setDefaultScrollToSectionMargin(int defaultScrollToSectionMargin) {
+        this.defaultScrollToSectionMargin = defaultScrollToSectionMargin;
+        onDataSetChanged();
+    }
+
+    public int getMaxHeaderRows() {
+        return maxHeaderRows;
+    }
+
+    /**
+     * Sets max number of rows shown in header area, <code>-1</code> for unlimited.
+     * Sections are recreated, i.e. measured heights of rows are forgotten.
+     */
+    public void setMaxHeaderRows(int maxHeaderRows) {
+        this.maxHeaderRows = maxHeaderRows;
+        onMaxRowsChanged();
+    }
+
+    public int getMaxFooterRows() {
+        return maxFooterRows;
+    }
+
+    /**
+     * Sets max number of rows shown in footer area, <code>-1</code> for unlimited.
+     * Sections are recreated, i.e. measured heights of rows are forgotten.
+     */
+    public void setMaxFooterRows(int maxFooterRows) {
+        this.maxFooterRows = maxFooterRows;
+        onMaxRowsChanged();
+    }
+
+    private void onMaxRowsChanged() {
+        sectionRows.setMaxRows(maxHeaderRows, maxFooterRows);
+        pinnedViewCache.setMaxSize(getPinnedViewCacheSize());
+        onDataSetChanged();
+    }
+
+    /**
+     * @return Number of sections which keep their pinned views,
+     * <code>0</code> (unlimited) if number of header or footer rows is not limited.
+     */
+    private int getPinnedViewCacheSize() {
+        return maxHeaderRows > 0 && maxFooterRows > 0 ? 2 * (maxHeaderRows + maxFooterRows) : 0;
+    }
+
+    /**
+     * @return Read-only list of form sections in the order they appear in the form.
+     */
+    public List<SectionData> getSectionsData() {
+        return sectionsData.asList();
+    }
+
+    /**
+     * Recreates sections after rows of the adapter have changed.
+     */
+    private void onDataSetChanged() {
+        sectionRows.reset(adapterRows, adapter == null ? 0 : adapter.getItemCount());
+        previousFirstPosition = RecyclerView.NO_POSITION;
+        onSectionsReset();
+    }
+
+    /**
+     * Releases pinned views of all sections after {@link SectionRows#reset(SectionRows.Rows, int)}.
+     */
+    private void onSectionsReset() {
+        pinnedViewCache.clear();
+        headerLayout.removeAllViews();
+        footerLayout.removeAllViews();
+
+        sectionsData = sectionRows.getSections();
+        pinningEngine = sectionRows.getPinningEngine();
+
+        activeSectionAfterScroll = null;
+        activeSection = null;
+        activeSectionIndex = -1;
+        forceUpdateUi = true;
+        requestLayout();
+    }
+
+    /**
+     * Sections have been inserted, removed or changed, indexes of sections might have been shifted.
+     */
+    private void onSectionsChanged() {
+        if (activeSectionAfterScroll != null && activeSectionAfterScroll.getIndex() < 0) {
+            activeSectionAfterScroll = null;
+        }
+        if (activeSection != null) {
+            activeSectionIndex = activeSection.getIndex();
+            if (activeSectionIndex < 0) {
+                activeSection = null;
+            }
+        }
+        forceUpdateUi = true;
+        requestLayout();
+    }
+
+    /**
+     * @return Index of section to which row at given adapter <code>position</code>
+     * belongs or <code>-1</code> if the row lies above the first section.
+     */
+    private int findSectionIndex(int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            return -1;
+        }
+        return sectionRows.findSectionIndex(position);
+    }
+
+    /**
+     * @return Offset of the row at {@link #previousFirstPosition}.
+     */
+    private int getAnchorOffset() {
+        if (previousFirstPosition < 0 || previousFirstPosition > sectionRows.getRowCount()) {
+            return 0;
+        }
+        return sectionRows.getOffset(previousFirstPosition);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (w != oldw) {
+            // Pinned views have to be measured for new width
+            pinnedViewCache.clear();
+        }
+        forceUpdateUi = true;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+
+        // Rows might have been laid out for the first time
+        // or changed their heights, sections are updated
+        // after the layout pass (see layoutUpdateListener).
+        layoutChanged = true;
+    }
+
+    /**
+     * Updates sections after rows have been laid out, before the frame is drawn.
+     * Pinned rows are added/removed outside of the layout pass. The draw is cancelled
+     * if the update requests another layout, the frame would show header/footer area
+     * which has not been laid out yet.
+     */
+    private final ViewTreeObserver.OnPreDrawListener layoutUpdateListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            if (!layoutChanged) {
+                return true;
+            }
+            layoutChanged = false;
+            updateSectionDataAndUi();
+            return !isLayoutRequested();
+        }
+    };
+
+    /**
+     * Reads heights of laid out rows, offsets of the following sections are shifted
+     * by changed heights. Corrected heights of rows above {@link #previousFirstPosition}
+     * shift {@link #previousScrollY} as well, i.e. they are not reported as a scroll.
+     */
+    private void updateGeometry() {
+        int anchorOffset = getAnchorOffset();
+        sectionRows.setStartOffset(recyclerView.getPaddingTop());
+        for (int i = 0; i < layoutManager.getChildCount(); i++) {
+            View child = layoutManager.getChildAt(i);
+            int position = layoutManager.getPosition(child);
+            if (position >= 0 && position < sectionRows.getRowCount()) {
+                sectionRows.setRowHeight(position, getRowHeight(child));
+            }
+        }
+        sectionRows.validateOffsets();
+        previousScrollY += getAnchorOffset() - anchorOffset;
+    }
+
+    private int getRowHeight(View child) {
+        int height = layoutManager.getDecoratedMeasuredHeight(child);
+        ViewGroup.LayoutParams params = child.getLayoutParams();
+        if (params instanceof MarginLayoutParams) {
+            height += ((MarginLayoutParams) params).topMargin + ((MarginLayoutParams) params).bottomMargin;
+        }
+        return height;
+    }
+
+    /**
+     * @return Scroll position of the form, i.e. Y coordinate of the form
+     * (see {@link RowHeights}) shown at the top of the viewport.
+     */
+    private int getFormScrollY() {
+        View first = layoutManager.getChildAt(0);
+        int top = layoutManager.getDecoratedTop(first);
+        ViewGroup.LayoutParams params = first.getLayoutParams();
+        if (params instanceof MarginLayoutParams) {
+            top -= ((MarginLayoutParams) params).topMargin;
+        }
+        return sectionRows.getOffset(layoutManager.getPosition(first)) - top;
+    }
+
+    private void updateSectionDataAndUi() {
+
+        if (sectionsData.size() == 0 || layoutManager.getChildCount() == 0) {
+            return;
+        }
+
+        updateGeometry();
+        int scrollY = getFormScrollY();
+        int viewportHeight = recyclerView.getHeight();
+
+        pinningEngine.update(scrollY, previousScrollY, viewportHeight);
+        previousScrollY = scrollY;
+        previousFirstPosition = layoutManager.getPosition(layoutManager.getChildAt(0));
+
+        boolean updateUi = forceUpdateUi;
+        updateUi |= updateSectionStates(pinningEngine.getChangedUpFrom(), pinningEngine.getChangedUpTo());
+        updateUi |= updateSectionStates(pinningEngine.getChangedDownFrom(), pinningEngine.getChangedDownTo());
+        forceUpdateUi = false;
+
+        int pinnedUpEnd = pinningEngine.getPinnedUpEnd();
+        int pinnedDownStart = pinningEngine.getPinnedDownStart();
+        int headerFrom = pinningEngine.getShownUpFrom();
+        int footerTo = pinningEngine.getShownDownTo();
+
+        if (updateUi) {
+            updatePinnedRows(headerLayout, headerFrom, pinnedUpEnd, true);
+            updatePinnedRows(footerLayout, pinnedDownStart, footerTo, false);
+            pinnedViewCache.trim(headerFrom, pinnedUpEnd, pinnedDownStart, footerTo);
+        }
+
+        // Sync position of section headers and pinned headers/footers,
+        // the section being pinned pushes header/footer area away.
+
+        float headerTranslation = 0;
+        int pinningHeader = pinningEngine.getPinningHeader();
+        if (pinningHeader >= 0) {
+            int headerY = pinningEngine.getOffset(pinningHeader) - scrollY;
+            headerTranslation = Math.min(0, headerY - pinningEngine.getPinnedUpHeight(headerFrom, pinnedUpEnd));
+        }
+        headerLayout.setTranslationY(headerTranslation);
+
+        float footerTranslation = 0;
+        int pinningFooter = pinningEngine.getPinningFooter();
+        if (pinningFooter >= 0) {
+            int footerY = pinningEngine.getOffset(pinningFooter) + pinningEngine.getPinnedDownHeight(pinningFooter) - scrollY;
+            footerTranslation = Math.max(0, footerY - viewportHeight + pinningEngine.getPinnedDownHeight(pinnedDownStart, footerTo));
+        }
+        footerLayout.setTranslationY(footerTranslation);
+
+        // Detect if 'active section' has changed
+
+        if (activeSectionAfterScroll != null) {
+            SectionData section = activeSectionAfterScroll;
+            activeSectionAfterScroll = null;
+            setActiveSection(section);
+        } else if (pinnedUpEnd < pinnedDownStart) {
+            // The first UNPINNED section is the active one
+            setActiveSection(sectionsData.get(pinnedUpEnd));
+        }
+    }
+
+    private boolean updateSectionStates(int from, int to) {
+        boolean updated = false;
+        for (int i = from; i < to; i++) {
+            updated |= sectionsData.updateState(i, pinningEngine.getState(i));
+        }
+        return updated;
+    }
+
+    /**
+     * Attaches pinned views of sections <code>[from, to)</code> to <code>container</code>
+     * (in section order) and detaches any other pinned views.
+     */
+    private void updatePinnedRows(LinearLayout container, int from, int to, boolean pinnedUp) {
+        for (int i = container.getChildCount() - 1; i >= 0; i--) {
+            SectionData section = SectionData.of(container.getChildAt(i));
+            int index = section == null ? -1 : section.getIndex();
+            if (index < from || index >= to) {
+                container.removeViewAt(i);
+            }
+        }
+
+        int position = 0;
+        for (int i = from; i < to; i++) {
+            SectionData section = sectionsData.get(i);
+            usePinnedViews(section);
+            View pinnedView = pinnedUp ? section.getPinnedUpHeader() : section.getPinnedDownHeader();
+            if (pinnedView == null) {
+                continue;
+            }
+            if (pinnedView.getParent() != container) {
+                removeFromParent(pinnedView);
+                container.addView(pinnedView, position);
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Marks pinned views of the section as recently used, creates them
+     * if needed and replaces estimated heights by measured ones.
+     */
+    private void usePinnedViews(SectionData section) {
+        if (!pinnedViewCache.use(section)) {
+            return;
+        }
+
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        int upHeight = StickyLinearLayout.measurePinnedHeader(section.getPinnedUpHeader(),
+                width - headerLayout.getPaddingLeft() - headerLayout.getPaddingRight());
+        int downHeight = StickyLinearLayout.measurePinnedHeader(section.getPinnedDownHeader(),
+                width - footerLayout.getPaddingLeft() - footerLayout.getPaddingRight());
+        section.setPinnedUpHeaderHeight(upHeight);
+        section.setPinnedDownHeaderHeight(downHeight);
+
+        int index = section.getIndex();
+        if (upHeight != pinningEngine.getPinnedUpHeight(index) || downHeight != pinningEngine.getPinnedDownHeight(index)) {
+            pinningEngine.setPinnedHeights(index, upHeight, downHeight);
+            pinningEngine.rebuildHeightSums();
+        }
+    }
+
+    private void createPinnedViews(SectionData sectionData) {
+        if (adapter == null) {
+            return;
+        }
+
+        int position = sectionRows.getPosition(sectionData.getIndex());
+        View sectionHeader = createHeaderRow(adapter, position);
+        View pinnedUpHeader;
+        View pinnedDownHeader;
+        if (pinnedHeaderFactory != null) {
+            pinnedUpHeader = pinnedHeaderFactory.onCreateHeader(sectionHeader);
+            pinnedDownHeader = pinnedHeaderFactory.onCreateFooter(sectionHeader);
+        } else {
+            // Pinned views look the same as section header rows
+            pinnedUpHeader = sectionHeader;
+            pinnedDownHeader = createHeaderRow(adapter, position);
+        }
+
+        if (pinnedUpHeader != null) {
+            sectionData.setPinnedUpHeader(pinnedUpHeader);
+            pinnedUpHeader.setOnClickListener(pinnedViewClickListener);
+        }
+        if (pinnedDownHeader != null) {
+            sectionData.setPinnedDownHeader(pinnedDownHeader);
+            pinnedDownHeader.setOnClickListener(pinnedViewClickListener);
+        }
+    }
+
+    /**
+     * @return New view of the row at given <code>position</code> bound by the adapter
+     * (the view is not managed by {@link RecyclerView}).
+     */
+    private <VH extends RecyclerView.ViewHolder> View createHeaderRow(SectionAdapter<VH> adapter, int position) {
+        VH holder = adapter.createViewHolder(recyclerView, adapter.getItemViewType(position));
+        adapter.bindViewHolder(holder, position);
+        return holder.itemView;
+    }
+
+    private void releasePinnedViews(SectionData sectionData) {
+        removeFromParent(sectionData.getPinnedUpHeader());
+        removeFromParent(sectionData.getPinnedDownHeader());
+        sectionData.releasePinnedHeaders();
+    }
+
+    private static void removeFromParent(View view) {
+        if (view != null && view.getParent() instanceof ViewGroup) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+    }
+
+    /**
+     * Scrolls the form so that the section header is shown
+     * right below the pinned headers of sections above it.
+     * @return <code>true</code> if scroll has been triggered.
+     */
+    private boolean scrollToSection(SectionData section) {
+        if (layoutManager.getChildCount() == 0) {
+            return false;
+        }
+        updateGeometry();
+
+        int index = section.getIndex();
+        int headerAreaHeight = maxHeaderRows > 0
+                ? pinningEngine.getMaxPinnedUpHeight(maxHeaderRows)
+                : Integer.MAX_VALUE;
+        int sectionY = pinningEngine.getScrollToSectionY(index, section.getScrollToSectionMargin(), headerAreaHeight);
+        if (sectionY == getFormScrollY()) {
+            return false;
+        }
+
+        // Scroll to adapter position, offsets of rows far from
+        // the viewport are estimates only.
+        int headerY = pinningEngine.getOffset(index) - sectionY;
+        recyclerView.stopScroll();
+        layoutManager.scrollToPositionWithOffset(sectionRows.getPosition(index), headerY - recyclerView.getPaddingTop());
+        return true;
+    }
+
+    private void setActiveSectionAfterScroll(SectionData section) {
+        if (scrollToSection(section)) {
+            // Section becomes active after the scroll
+            activeSectionAfterScroll = section;
+        } else {
+            setActiveSection(section);
+        }
+    }
+
+    private void setActiveSection(SectionData section) {
+
+        // Ignore if section is already active
+        if (activeSection == section) return;
+
+        int newIndex = section.getIndex();
+        int previousIndex = activeSectionIndex;
+
+        activeSection = section;
+        activeSectionIndex = newIndex;
+
+        if (onActiveSectionChangedListener != null) {
+            onActiveSectionChangedListener.onActiveSectionChanged(sectionsData.asList(), newIndex, previousIndex);
+        }
+    }
+
+    @Override
+    public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+
+        // Find row (direct child of RecyclerView) to which 'newFocus' belongs
+        View child = newFocus;
+        while (child != null && child.getParent() != recyclerView) {
+            child = child.getParent() instanceof View ? (View) child.getParent() : null;
+        }
+        if (child == null) {
+            return;
+        }
+
+        int sectionIndex = findSectionIndex(recyclerView.getChildAdapterPosition(child));
+        if (sectionIndex >= 0) {
+            setActiveSectionAfterScroll(sectionsData.get(sectionIndex));
+        }
+    }
+
+}
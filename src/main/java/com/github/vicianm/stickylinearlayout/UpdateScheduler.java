@@ -0,0 +1,113 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * Coalesces scroll, size and focus changes into a single update per frame.
+ * <p>Requests are collected until the next vsync (see {@link Choreographer}),
+ * then {@link Target#performUpdate(int, int, int, View)} is called once
+ * with the latest scroll position and the focus change which happened last.</p>
+ */
+class UpdateScheduler implements Choreographer.FrameCallback {
+
+    /**
+     * Form has been scrolled.
+     */
+    static final int UPDATE_SCROLL = 1;
+
+    /**
+     * Size of the form viewport has changed.
+     */
+    static final int UPDATE_SIZE = 1 << 1;
+
+    /**
+     * Focused view has changed.
+     */
+    static final int UPDATE_FOCUS = 1 << 2;
+
+    /**
+     * Receiver of coalesced updates.
+     */
+    interface Target {
+
+        /**
+         * @param updates Bit mask of requested updates, see {@link #UPDATE_SCROLL},
+         *                {@link #UPDATE_SIZE} and {@link #UPDATE_FOCUS}.
+         * @param scrollY The latest scroll position (valid for {@link #UPDATE_SCROLL}).
+         * @param oldScrollY Scroll position before the first scroll in this frame
+         *                   (valid for {@link #UPDATE_SCROLL}).
+         * @param focus The most recently focused view (valid for {@link #UPDATE_FOCUS}).
+         */
+        void performUpdate(int updates, int scrollY, int oldScrollY, View focus);
+    }
+
+    private final Target target;
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    private boolean scheduled = false;
+
+    private int pendingUpdates = 0;
+
+    private int scrollY;
+    private int oldScrollY;
+    private View focus;
+
+    UpdateScheduler(Target target) {
+        this.target = target;
+    }
+
+    void scheduleScroll(int scrollY, int oldScrollY) {
+        if ((pendingUpdates & UPDATE_SCROLL) == 0) {
+            // Keep position before the first scroll of this frame,
+            // so the scroll direction is preserved.
+            this.oldScrollY = oldScrollY;
+        }
+        this.scrollY = scrollY;
+        schedule(UPDATE_SCROLL);
+    }
+
+    void scheduleSizeChange() {
+        schedule(UPDATE_SIZE);
+    }
+
+    void scheduleFocusChange(View focus) {
+        this.focus = focus;
+        schedule(UPDATE_FOCUS);
+    }
+
+    private void schedule(int update) {
+        pendingUpdates |= update;
+        if (!scheduled) {
+            scheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Drops all pending updates, e.g. after the layout is detached from window.
+     */
+    void cancel() {
+        if (scheduled) {
+            choreographer.removeFrameCallback(this);
+            scheduled = false;
+        }
+        pendingUpdates = 0;
+        focus = null;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        int updates = pendingUpdates;
+        View focus = this.focus;
+        pendingUpdates = 0;
+        scheduled = false;
+        this.focus = null;
+
+        if (updates != 0) {
+            target.performUpdate(updates, scrollY, oldScrollY, focus);
+        }
+    }
+
+}
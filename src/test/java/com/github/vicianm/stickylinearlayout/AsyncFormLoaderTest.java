@@ -0,0 +1,205 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frames are driven by calling <code>doFrame(...)</code> directly,
+ * sections consist of <code>null</code> views (views are not touched by the loader).
+ */
+public class AsyncFormLoaderTest {
+
+    private final List<Integer> attachedSectionSizes = new ArrayList<>();
+
+    private int targetLoadedCalls;
+    private int factoryLoadedCalls;
+    private Throwable targetError;
+    private Throwable factoryError;
+
+    /**
+     * Builds sections on a new thread (default executor sets priority by Android API).
+     */
+    private final Executor threadExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            new Thread(command).start();
+        }
+    };
+
+    private final AsyncFormLoader.Target target = new AsyncFormLoader.Target() {
+        @Override
+        public void attachSection(View[] views) {
+            attachedSectionSizes.add(views.length);
+        }
+
+        @Override
+        public void onSectionsLoaded() {
+            targetLoadedCalls++;
+        }
+
+        @Override
+        public void onLoadFailed(Throwable error) {
+            targetError = error;
+        }
+    };
+
+    private StickyLinearLayout.AsyncSectionFactory factory(final int sections, final int failingSection) {
+        return new StickyLinearLayout.AsyncSectionFactory() {
+            @Override
+            public int getSectionCount() {
+                return sections;
+            }
+
+            @Override
+            public void onCreateSection(int section, LayoutInflater inflater, ViewGroup parent, List<View> views) {
+                if (section == failingSection) {
+                    throw new IllegalArgumentException("Section " + section);
+                }
+                // Header and 'section' rows
+                for (int i = 0; i <= section; i++) {
+                    views.add(null);
+                }
+            }
+
+            @Override
+            public void onSectionsLoaded() {
+                factoryLoadedCalls++;
+            }
+
+            @Override
+            public void onLoadFailed(Throwable error) {
+                factoryError = error;
+            }
+        };
+    }
+
+    @Test
+    public void doFrame_attachesSectionsInOrder() throws Exception {
+        AsyncFormLoader loader = new AsyncFormLoader(null, threadExecutor, Long.MAX_VALUE, factory(5, -1), null, null, target);
+        loader.start();
+        loader.awaitBuild();
+
+        loader.doFrame(0);
+
+        assertEquals(5, attachedSectionSizes.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, (int) attachedSectionSizes.get(i));
+        }
+        assertTrue(loader.isFinished());
+        assertEquals(1, targetLoadedCalls);
+        assertEquals(1, factoryLoadedCalls);
+
+        loader.doFrame(1);
+        assertEquals(1, factoryLoadedCalls);
+    }
+
+    @Test
+    public void doFrame_attachesOneSectionPerFrameWhenBudgetIsSpent() throws Exception {
+        AsyncFormLoader loader = new AsyncFormLoader(null, threadExecutor, 0, factory(3, -1), null, null, target);
+        loader.start();
+        loader.awaitBuild();
+
+        loader.doFrame(0);
+        assertEquals(1, attachedSectionSizes.size());
+        loader.doFrame(1);
+        assertEquals(2, attachedSectionSizes.size());
+        assertFalse(loader.isFinished());
+
+        loader.doFrame(2);
+        assertEquals(3, attachedSectionSizes.size());
+        assertTrue(loader.isFinished());
+        assertEquals(1, factoryLoadedCalls);
+    }
+
+    @Test
+    public void cancel_dropsSectionsNotAttachedYet() throws Exception {
+        AsyncFormLoader loader = new AsyncFormLoader(null, threadExecutor, 0, factory(3, -1), null, null, target);
+        loader.start();
+        loader.awaitBuild();
+
+        loader.doFrame(0);
+        loader.cancel();
+        loader.doFrame(1);
+
+        assertEquals(1, attachedSectionSizes.size());
+        assertTrue(loader.isFinished());
+        assertEquals(0, factoryLoadedCalls);
+    }
+
+    @Test
+    public void cancel_dropsBuildNotStartedYet() throws Exception {
+        final List<Runnable> queued = new ArrayList<>();
+        Executor queue = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        };
+        AsyncFormLoader loader = new AsyncFormLoader(null, queue, Long.MAX_VALUE, factory(3, -1), null, null, target);
+        loader.start();
+        loader.cancel();
+        queued.get(0).run();
+        loader.doFrame(0);
+
+        assertEquals(0, attachedSectionSizes.size());
+        assertTrue(loader.isFinished());
+        assertEquals(0, factoryLoadedCalls);
+    }
+
+    @Test
+    public void doFrame_reportsBuildError() throws Exception {
+        AsyncFormLoader loader = new AsyncFormLoader(null, threadExecutor, Long.MAX_VALUE, factory(3, 1), null, null, target);
+        loader.start();
+        loader.awaitBuild();
+
+        loader.doFrame(0);
+
+        assertTrue(targetError instanceof IllegalArgumentException);
+        assertSame(targetError, factoryError);
+        assertEquals(0, attachedSectionSizes.size());
+        assertTrue(loader.isFinished());
+        assertEquals(0, factoryLoadedCalls);
+    }
+
+    @Test
+    public void doFrame_reportsSectionWithoutViews() throws Exception {
+        AsyncFormLoader loader = new AsyncFormLoader(null, threadExecutor, Long.MAX_VALUE, new StickyLinearLayout.AsyncSectionFactory() {
+            @Override
+            public int getSectionCount() {
+                return 1;
+            }
+
+            @Override
+            public void onCreateSection(int section, LayoutInflater inflater, ViewGroup parent, List<View> views) {
+            }
+
+            @Override
+            public void onSectionsLoaded() {
+                factoryLoadedCalls++;
+            }
+
+            @Override
+            public void onLoadFailed(Throwable error) {
+                factoryError = error;
+            }
+        }, null, null, target);
+        loader.start();
+        loader.awaitBuild();
+
+        loader.doFrame(0);
+
+        assertTrue(factoryError instanceof IllegalStateException);
+        assertTrue(loader.isFinished());
+        assertEquals(0, targetLoadedCalls);
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.github.vicianm.stickylinearlayout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameJankMonitorTest {
+
+    private static final long FRAME = 16000000L;
+
+    private FrameJankMonitor monitor;
+
+    private int reports;
+    private int reportedFrames;
+    private int reportedSlowFrames;
+
+    @Before
+    public void setUp() throws Exception {
+        monitor = new FrameJankMonitor(null, FRAME, 100, new FrameJankMonitor.OnFrameStatsListener() {
+            @Override
+            public void onFrameStats(FrameJankMonitor monitor) {
+                reports++;
+                reportedFrames = monitor.getMeasuredFrames();
+                reportedSlowFrames = monitor.getSlowFrameCount(FrameJankMonitor.GROUP_ALL);
+            }
+        });
+    }
+
+    @Test
+    public void doFrame_linksSlowFramesToPinningActivity() throws Exception {
+        long time = 0;
+
+        // First frame of the scroll is not measured
+        monitor.onSectionsUpdated(0, 2, 0, 0, 0, false, false);
+        monitor.doFrame(time);
+
+        // On time frame without pinning
+        monitor.onSectionsUpdated(0, 2, 0, 0, 0, false, false);
+        monitor.doFrame(time += FRAME);
+
+        // Frame with 2 missed vsyncs, sections changed and pinned views added
+        monitor.onSectionsUpdated(0, 2, 1, 1, 0, false, false);
+        monitor.onSectionsUpdated(0, 2, 1, 1, 0, false, false);
+        monitor.doFrame(time += 3 * FRAME);
+
+        // Slightly late frame of implicit scroll is rounded to one interval
+        monitor.onSectionsUpdated(0, 2, 0, 0, 0, false, true);
+        monitor.doFrame(time += FRAME + FRAME / 4);
+
+        assertEquals(3, monitor.getMeasuredFrames());
+        assertEquals(2, monitor.getFrameCount(FrameJankMonitor.GROUP_ALL, 0));
+        assertEquals(1, monitor.getFrameCount(FrameJankMonitor.GROUP_ALL, 2));
+        assertEquals(1, monitor.getFrameCount(FrameJankMonitor.GROUP_STATES_CHANGED, 2));
+        assertEquals(1, monitor.getFrameCount(FrameJankMonitor.GROUP_CONTAINERS_MUTATED, 2));
+        assertEquals(2, monitor.getFrameCount(FrameJankMonitor.GROUP_NO_PINNING, 0));
+        assertEquals(0, monitor.getSlowFrameCount(FrameJankMonitor.GROUP_NO_PINNING));
+        assertEquals(1, monitor.getFrameCount(FrameJankMonitor.GROUP_IMPLICIT_SCROLL, 0));
+        assertEquals(1, monitor.getSlowFrameCountBySectionsChanged(2));
+    }
+
+    @Test
+    public void doFrame_stopsMeasuringAfterIdleFrame() throws Exception {
+        monitor.onSectionsUpdated(0, 2, 0, 0, 0, false, false);
+        monitor.doFrame(0);
+        monitor.doFrame(FRAME);
+
+        // Long pause between two scrolls is not a slow frame
+        monitor.onSectionsUpdated(0, 2, 0, 0, 0, false, false);
+        monitor.doFrame(100 * FRAME);
+        monitor.onSectionsUpdated(0, 2, 0, 0, 0, false, false);
+        monitor.doFrame(101 * FRAME);
+
+        assertEquals(2, monitor.getMeasuredFrames());
+        assertEquals(0, monitor.getSlowFrameCount(FrameJankMonitor.GROUP_ALL));
+    }
+
+    @Test
+    public void report_passesAndClearsStatistics() throws Exception {
+        long time = 0;
+        monitor.onSectionsUpdated(0, 2, 0, 0, 0, false, false);
+        monitor.doFrame(time);
+        for (int i = 0; i < 150; i++) {
+            monitor.onSectionsUpdated(0, 2, 0, 0, 0, false, false);
+            monitor.doFrame(time += (i % 10 == 0 ? 2 : 1) * FRAME);
+        }
+
+        assertEquals(1, reports);
+        assertEquals(100, reportedFrames);
+        assertEquals(10, reportedSlowFrames);
+        assertEquals(50, monitor.getMeasuredFrames());
+
+        monitor.report();
+        assertEquals(2, reports);
+        assertEquals(50, reportedFrames);
+        assertEquals(0, monitor.getMeasuredFrames());
+
+        monitor.report();
+        assertEquals(2, reports);
+    }
+
+}
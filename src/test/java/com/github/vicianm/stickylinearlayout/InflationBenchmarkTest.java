@@ -0,0 +1,155 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * Measures construction of forms with 10 to 5 000 rows, from creation of the layout
+ * to the first layout pass. The form is built in the same way as by <code>LayoutInflater</code>
+ * (<code>generateLayoutParams(attrs)</code>, <code>addView(...)</code>, <code>onFinishInflate()</code>),
+ * i.e. sections are registered in one pass after inflation. Programmatic construction
+ * (<code>addSectionHeader(...)</code>, <code>addFormView(...)</code>), which registers
+ * each section when its header is added, is measured for comparison.
+ * </p>
+ * <pre>
+ * ./gradlew testDebugUnitTest --tests '*InflationBenchmarkTest'
+ * </pre>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class InflationBenchmarkTest {
+
+    private static final int[] ROWS = {10, 100, 1000, 5000};
+
+    /**
+     * Each section has a header and 4 rows.
+     */
+    private static final int ROWS_PER_SECTION = 5;
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private static final int WARMUP_ITERATIONS = 1;
+    private static final int ITERATIONS = 3;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private long buildNanos;
+    private long layoutNanos;
+
+    @Test
+    public void inflateForms() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        AttributeSet layoutAttrs = Robolectric.buildAttributeSet().build();
+        AttributeSet headerAttrs = Robolectric.buildAttributeSet()
+                .addAttribute(android.R.attr.layout_width, "match_parent")
+                .addAttribute(android.R.attr.layout_height, "100px")
+                .addAttribute(R.attr.sectionHeader, "true")
+                .build();
+        AttributeSet rowAttrs = Robolectric.buildAttributeSet()
+                .addAttribute(android.R.attr.layout_width, "match_parent")
+                .addAttribute(android.R.attr.layout_height, "150px")
+                .build();
+
+        System.out.println(String.format(Locale.US, "%7s %-12s %10s %10s",
+                "rows", "path", "build ms", "layout ms"));
+        for (int rows : ROWS) {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                buildForm(context, rows, layoutAttrs, headerAttrs, rowAttrs);
+                buildForm(context, rows, null, headerAttrs, rowAttrs);
+            }
+            report(rows, "inflated", context, layoutAttrs, headerAttrs, rowAttrs);
+            report(rows, "programmatic", context, null, headerAttrs, rowAttrs);
+        }
+    }
+
+    private void report(int rows, String path, Context context,
+                        AttributeSet layoutAttrs, AttributeSet headerAttrs, AttributeSet rowAttrs) {
+        long totalBuildNanos = 0;
+        long totalLayoutNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            buildForm(context, rows, layoutAttrs, headerAttrs, rowAttrs);
+            totalBuildNanos += buildNanos;
+            totalLayoutNanos += layoutNanos;
+        }
+        System.out.println(String.format(Locale.US, "%7d %-12s %10.2f %10.2f",
+                rows, path,
+                totalBuildNanos / 1e6 / ITERATIONS,
+                totalLayoutNanos / 1e6 / ITERATIONS));
+    }
+
+    /**
+     * Builds and lays out the form, durations are stored to {@link #buildNanos} and {@link #layoutNanos}.
+     * @param layoutAttrs Attributes of the layout, <code>null</code> for programmatic construction.
+     */
+    private void buildForm(Context context, int rows,
+                           AttributeSet layoutAttrs, AttributeSet headerAttrs, AttributeSet rowAttrs) {
+        // Views are created by the app in both cases, only their registration is measured
+        View[] views = new View[rows];
+        for (int i = 0; i < rows; i++) {
+            if (i % ROWS_PER_SECTION == 0) {
+                TextView header = new TextView(context);
+                header.setText("Section " + i / ROWS_PER_SECTION);
+                views[i] = header;
+            } else {
+                views[i] = new EditText(context);
+            }
+        }
+
+        long start = threadBean.getCurrentThreadCpuTime();
+        StickyLinearLayout layout = new StickyLinearLayout(context, layoutAttrs);
+        for (int i = 0; i < rows; i++) {
+            boolean header = i % ROWS_PER_SECTION == 0;
+            ViewGroup.LayoutParams params = layout.generateLayoutParams(header ? headerAttrs : rowAttrs);
+            if (layoutAttrs != null) {
+                layout.addView(views[i], params);
+            } else {
+                views[i].setLayoutParams(params);
+                if (header) {
+                    layout.addSectionHeader(views[i], -1);
+                } else {
+                    layout.addFormView(views[i], -1);
+                }
+            }
+        }
+        if (layoutAttrs != null) {
+            layout.onFinishInflate();
+        }
+        List<SectionData> sections = layout.getSectionsData();
+        buildNanos = threadBean.getCurrentThreadCpuTime() - start;
+
+        start = threadBean.getCurrentThreadCpuTime();
+        layout.measure(
+                View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        layout.layout(0, 0, WIDTH, HEIGHT);
+        layoutNanos = threadBean.getCurrentThreadCpuTime() - start;
+
+        // Both paths register the same sections
+        assertEquals((rows + ROWS_PER_SECTION - 1) / ROWS_PER_SECTION, sections.size());
+        for (int i = 0; i < sections.size(); i++) {
+            assertSame(views[i * ROWS_PER_SECTION], sections.get(i).getUnpinnedHeader());
+            assertEquals(i, sections.get(i).getIndex());
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.github.vicianm.stickylinearlayout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link PinningEngine}, executed on plain JVM.
+ */
+public class PinningEngineTest {
+
+    private static final int SECTIONS = 10;
+    private static final int SECTION_HEIGHT = 500;
+    private static final int HEADER_HEIGHT = 100;
+    private static final int VIEWPORT_HEIGHT = 1000;
+
+    private PinningEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        engine = new PinningEngine(3, 3);
+        for (int i = 0; i < SECTIONS; i++) {
+            engine.addSection();
+            engine.setOffset(i, i * SECTION_HEIGHT);
+            engine.setPinnedHeights(i, HEADER_HEIGHT, HEADER_HEIGHT);
+        }
+        engine.validateOffsets();
+    }
+
+    @Test
+    public void initialUpdate_resolvesAllSections() throws Exception {
+        engine.update(0, 0, VIEWPORT_HEIGHT);
+
+        assertEquals(0, engine.getPinnedUpEnd());
+        assertEquals(2, engine.getPinnedDownStart());
+        assertEquals(0, engine.getChangedUpFrom());
+        assertEquals(SECTIONS, engine.getChangedUpTo());
+        assertEquals(PinningEngine.STATE_UNPINNED, engine.getState(1));
+        assertEquals(PinningEngine.STATE_PINNED_DOWN, engine.getState(5));
+    }
+
+    @Test
+    public void scrollDown_pinsSectionsAboveViewport() throws Exception {
+        engine.update(0, 0, VIEWPORT_HEIGHT);
+        engine.update(600, 0, VIEWPORT_HEIGHT);
+
+        assertEquals(2, engine.getPinnedUpEnd());
+        assertEquals(3, engine.getPinnedDownStart());
+        assertEquals(PinningEngine.STATE_PINNED_UP, engine.getState(1));
+        assertEquals(PinningEngine.STATE_UNPINNED, engine.getState(2));
+
+        // only sections between old and new boundaries are reported as changed
+        assertEquals(0, engine.getChangedUpFrom());
+        assertEquals(2, engine.getChangedUpTo());
+        assertEquals(2, engine.getChangedDownFrom());
+        assertEquals(3, engine.getChangedDownTo());
+    }
+
+    @Test
+    public void smallScroll_reportsNoChange() throws Exception {
+        engine.update(0, 0, VIEWPORT_HEIGHT);
+        engine.update(600, 0, VIEWPORT_HEIGHT);
+        engine.update(610, 600, VIEWPORT_HEIGHT);
+
+        assertEquals(engine.getChangedUpFrom(), engine.getChangedUpTo());
+        assertEquals(engine.getChangedDownFrom(), engine.getChangedDownTo());
+    }
+
+    @Test
+    public void shownRows_areLimitedByMaxRows() throws Exception {
+        engine.update(0, 0, VIEWPORT_HEIGHT);
+        // Footer area shows the first 3 of 8 sections pinned down
+        assertEquals(0, engine.getShownUpFrom());
+        assertEquals(5, engine.getShownDownTo());
+
+        engine.update(2600, 0, VIEWPORT_HEIGHT);
+        assertEquals(6, engine.getPinnedUpEnd());
+        assertEquals(3, engine.getShownUpFrom());
+        assertEquals(SECTIONS, engine.getShownDownTo());
+    }
+
+    @Test
+    public void jump_doesNotReportSectionTwice() throws Exception {
+        engine.update(0, 0, VIEWPORT_HEIGHT);
+        engine.update(4000, 0, VIEWPORT_HEIGHT);
+
+        assertTrue(engine.getChangedUpTo() <= engine.getChangedDownFrom());
+        assertEquals(PinningEngine.STATE_PINNED_UP, engine.getState(5));
+        assertEquals(PinningEngine.STATE_UNPINNED, engine.getState(SECTIONS - 1));
+    }
+
+    @Test
+    public void pinningHeader_isReportedWhenHeaderIsFull() throws Exception {
+        engine.update(0, 0, VIEWPORT_HEIGHT);
+        for (int scrollY = 10; scrollY <= 2250; scrollY += 10) {
+            engine.update(scrollY, scrollY - 10, VIEWPORT_HEIGHT);
+        }
+
+        // Three headers fill the header area, section 5 (offset 2500)
+        // is pushing them up and is about to be pinned.
+        assertEquals(5, engine.getPinnedUpEnd());
+        assertEquals(5, engine.getPinningHeader());
+    }
+
+    @Test
+    public void project_reportsSectionsPinnedByFling() throws Exception {
+        engine.update(0, 0, VIEWPORT_HEIGHT);
+        int pinnedUpEnd = engine.getPinnedUpEnd();
+        int pinnedDownStart = engine.getPinnedDownStart();
+
+        // Fling down, visible sections get pinned up
+        engine.project(3000, VIEWPORT_HEIGHT);
+        assertTrue(pinnedUpEnd < pinnedDownStart);
+        assertEquals(pinnedUpEnd, engine.getProjectedUpFrom());
+        assertEquals(pinnedDownStart, engine.getProjectedUpTo());
+        assertEquals(engine.getProjectedDownFrom(), engine.getProjectedDownTo());
+
+        // Projection does not change states
+        assertEquals(pinnedUpEnd, engine.getPinnedUpEnd());
+        assertEquals(pinnedDownStart, engine.getPinnedDownStart());
+
+        // Fling up from the bottom, visible sections get pinned down
+        engine.update(4000, 0, VIEWPORT_HEIGHT);
+        engine.project(0, VIEWPORT_HEIGHT);
+        assertTrue(engine.getPinnedUpEnd() < engine.getPinnedDownStart());
+        assertEquals(engine.getProjectedUpFrom(), engine.getProjectedUpTo());
+        assertEquals(engine.getPinnedUpEnd(), engine.getProjectedDownFrom());
+        assertEquals(engine.getPinnedDownStart(), engine.getProjectedDownTo());
+    }
+
+    @Test
+    public void insertAndRemove_shiftSectionsAndBoundaries() throws Exception {
+        engine.update(0, 0, VIEWPORT_HEIGHT);
+        engine.update(2000, 0, VIEWPORT_HEIGHT);
+        int pinnedUpEnd = engine.getPinnedUpEnd();
+        int pinnedDownStart = engine.getPinnedDownStart();
+
+        // New section above the viewport is pinned up
+        engine.insertSection(1, engine.getOffset(1), 200, 50);
+        assertEquals(SECTIONS + 1, engine.size());
+        assertEquals(pinnedUpEnd + 1, engine.getPinnedUpEnd());
+        assertEquals(pinnedDownStart + 1, engine.getPinnedDownStart());
+        assertEquals(PinningEngine.STATE_PINNED_UP, engine.getState(1));
+        assertEquals(200, engine.getPinnedUpHeight(1));
+        assertEquals(HEADER_HEIGHT, engine.getPinnedUpHeight(2));
+        assertEquals(HEADER_HEIGHT + 200, engine.getPinnedUpHeight(0, 2));
+        assertEquals(SECTIONS * HEADER_HEIGHT + 50, engine.getPinnedDownHeight(0, SECTIONS + 1));
+
+        engine.removeSection(1);
+        assertEquals(SECTIONS, engine.size());
+        assertEquals(pinnedUpEnd, engine.getPinnedUpEnd());
+        assertEquals(pinnedDownStart, engine.getPinnedDownStart());
+        assertEquals(2 * HEADER_HEIGHT, engine.getPinnedUpHeight(0, 2));
+        assertEquals(SECTION_HEIGHT, engine.getOffset(1));
+
+        // Section inserted at the end is pinned down
+        engine.insertSection(SECTIONS, engine.getOffset(SECTIONS - 1), HEADER_HEIGHT, HEADER_HEIGHT);
+        assertEquals(PinningEngine.STATE_PINNED_DOWN, engine.getState(SECTIONS));
+    }
+
+    @Test
+    public void shiftOffsets_movesFollowingSectionsOnly() throws Exception {
+        // Section 2 has been collapsed
+        engine.shiftOffsets(3, -400);
+
+        assertEquals(2 * SECTION_HEIGHT, engine.getOffset(2));
+        assertEquals(3 * SECTION_HEIGHT - 400, engine.getOffset(3));
+        assertEquals((SECTIONS - 1) * SECTION_HEIGHT - 400, engine.getOffset(SECTIONS - 1));
+        assertEquals(3, engine.lowerBound(3 * SECTION_HEIGHT - 400));
+    }
+
+    @Test
+    public void shiftOffsets_mergesPendingShifts() throws Exception {
+        // Rows of sections measured one by one while scrolling down and up
+        engine.shiftOffsets(4, 30);
+        engine.shiftOffsets(6, -10);
+        engine.shiftOffsets(2, 5);
+        engine.setOffset(7, 7 * SECTION_HEIGHT + 100);
+        engine.shiftOffsets(8, 0);
+        engine.shiftOffsets(SECTIONS, 1000);
+
+        int[] expected = new int[SECTIONS];
+        for (int i = 0; i < SECTIONS; i++) {
+            expected[i] = i * SECTION_HEIGHT + (i >= 4 ? 30 : 0) + (i >= 6 ? -10 : 0) + (i >= 2 ? 5 : 0);
+        }
+        expected[7] = 7 * SECTION_HEIGHT + 100;
+        for (int i = 0; i < SECTIONS; i++) {
+            assertEquals(expected[i], engine.getOffset(i));
+        }
+        assertEquals(6, engine.upperBound(expected[5]));
+
+        // Sections are moved with offsets shifted
+        engine.removeSection(1);
+        assertEquals(expected[2], engine.getOffset(1));
+        assertEquals(expected[SECTIONS - 1], engine.getOffset(SECTIONS - 2));
+    }
+
+    @Test
+    public void heights_variableRows() throws Exception {
+        engine.setPinnedHeights(1, 200, 50);
+
+        assertEquals(400, engine.getPinnedUpHeight(0, 3));
+        assertEquals(250, engine.getPinnedDownHeight(0, 3));
+        assertEquals(400, engine.getMaxPinnedUpHeight(3));
+        assertEquals(300, engine.getMaxPinnedDownHeight(3));
+        assertEquals(1, engine.findPinnedUpRow(0, 5, 250));
+        assertEquals(2, engine.findPinnedUpRow(0, 5, 300));
+        assertEquals(5, engine.findPinnedUpRow(0, 5, 10000));
+    }
+
+    @Test
+    public void scrollToSection() throws Exception {
+        assertEquals(5 * SECTION_HEIGHT - 3 * HEADER_HEIGHT - 10,
+                engine.getScrollToSectionY(5, 10, 3 * HEADER_HEIGHT));
+        assertEquals(SECTION_HEIGHT - HEADER_HEIGHT,
+                engine.getScrollToSectionY(1, 0, 3 * HEADER_HEIGHT));
+
+        assertTrue(PinningEngine.isScrollNeeded(0, 100, 0, 1000));
+        assertFalse(PinningEngine.isScrollNeeded(1000, 1100, 0, 1000));
+        assertFalse(PinningEngine.isScrollNeeded(0, -100, 0, 1000));
+        assertFalse(PinningEngine.isScrollNeeded(100, 100, 0, 1000));
+
+        assertTrue(PinningEngine.isImplicitScrollFinished(100, 50, 100, 0, 1000));
+        assertFalse(PinningEngine.isImplicitScrollFinished(90, 50, 100, 0, 1000));
+        assertTrue(PinningEngine.isImplicitScrollFinished(0, 50, -20, 0, 1000));
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.github.vicianm.stickylinearlayout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests of {@link RowHeights}.
+ */
+public class RowHeightsTest {
+
+    private RowHeights rowHeights;
+
+    @Before
+    public void setUp() {
+        rowHeights = new RowHeights();
+        rowHeights.reset(10);
+    }
+
+    @Test
+    public void unknownHeightsAreEstimatedFromFirstMeasuredRow() {
+        assertEquals(0, rowHeights.getOffset(10));
+
+        assertFalse(rowHeights.hasEstimate());
+        rowHeights.setHeight(3, 100);
+        assertTrue(rowHeights.hasEstimate());
+        assertEquals(100, rowHeights.getHeight(0));
+        assertEquals(300, rowHeights.getOffset(3));
+        assertEquals(1000, rowHeights.getOffset(10));
+        assertTrue(rowHeights.isMeasured(3));
+        assertFalse(rowHeights.isMeasured(4));
+    }
+
+    @Test
+    public void measuredHeightShiftsFollowingRows() {
+        rowHeights.setHeight(0, 100);
+        // Same as estimate, offsets do not change
+        assertEquals(0, rowHeights.setHeight(1, 100));
+        assertEquals(200, rowHeights.getOffset(2));
+
+        assertEquals(150, rowHeights.setHeight(2, 250));
+        assertEquals(200, rowHeights.getOffset(2));
+        assertEquals(450, rowHeights.getOffset(3));
+        assertEquals(1150, rowHeights.getOffset(10));
+    }
+
+    @Test
+    public void startOffset() {
+        rowHeights.setHeight(0, 50);
+        rowHeights.setStartOffset(16);
+        assertEquals(16, rowHeights.getOffset(0));
+        assertEquals(66, rowHeights.getOffset(1));
+    }
+
+    @Test
+    public void resetKeepsEstimate() {
+        rowHeights.setHeight(0, 50);
+        rowHeights.setHeight(1, 80);
+        rowHeights.reset(20);
+        assertFalse(rowHeights.isMeasured(1));
+        assertEquals(50, rowHeights.getHeight(1));
+        assertEquals(1000, rowHeights.getOffset(20));
+    }
+
+    @Test
+    public void insertAndRemoveShiftRows() {
+        rowHeights.setHeight(0, 50);
+        rowHeights.setHeight(2, 80);
+
+        rowHeights.insert(1, 3);
+        assertEquals(13, rowHeights.size());
+        assertFalse(rowHeights.isMeasured(1));
+        assertTrue(rowHeights.isMeasured(5));
+        assertEquals(80, rowHeights.getHeight(5));
+        assertEquals(50 + 4 * 50 + 80, rowHeights.getOffset(6));
+
+        rowHeights.remove(0, 2);
+        assertEquals(11, rowHeights.size());
+        assertEquals(80, rowHeights.getHeight(3));
+        assertEquals(3 * 50, rowHeights.getOffset(3));
+        assertEquals(10 * 50 + 80, rowHeights.getOffset(11));
+    }
+
+    @Test
+    public void invalidateUsesEstimate() {
+        rowHeights.setHeight(0, 50);
+        rowHeights.setHeight(4, 120);
+        assertEquals(-70, rowHeights.invalidate(4));
+        assertFalse(rowHeights.isMeasured(4));
+        assertEquals(500, rowHeights.getOffset(10));
+        assertEquals(0, rowHeights.invalidate(5));
+    }
+
+    @Test
+    public void offsetsMatchSumsOfHeights() {
+        rowHeights.reset(1000);
+        rowHeights.setStartOffset(16);
+        java.util.Random random = new java.util.Random(7);
+        for (int i = 0; i < 5000; i++) {
+            int position = random.nextInt(rowHeights.size());
+            switch (random.nextInt(20)) {
+                case 0:
+                    rowHeights.insert(position, 1 + random.nextInt(5));
+                    break;
+                case 1:
+                    rowHeights.remove(position, Math.min(rowHeights.size() - position, 1 + random.nextInt(5)));
+                    break;
+                case 2:
+                    rowHeights.invalidate(position);
+                    break;
+                default:
+                    rowHeights.setHeight(position, 50 + random.nextInt(200));
+                    break;
+            }
+        }
+
+        int offset = 16;
+        for (int position = 0; position < rowHeights.size(); position++) {
+            assertEquals(offset, rowHeights.getOffset(position));
+            offset += rowHeights.getHeight(position);
+        }
+        assertEquals(offset, rowHeights.getOffset(rowHeights.size()));
+    }
+
+}
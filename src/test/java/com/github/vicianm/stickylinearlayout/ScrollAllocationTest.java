@@ -0,0 +1,229 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.app.Activity;
+import android.util.AttributeSet;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Verifies that scroll updates of {@link StickyLinearLayout} do not allocate any object.
+ * Scroll traces are replayed on generated form (see {@link ScrollTraceReplay}), allocations
+ * are measured around <code>onScrollChange(...)</code> of the layout only, i.e. without
+ * allocations of the framework dispatching the scroll.
+ * <p>Steady-state scroll events (no section changes its state) must neither allocate
+ * nor request layout. Events which pin/unpin a section change header/footer area
+ * (views are attached/detached or shown/hidden), they request layout by design
+ * and are not measured. The default mode and {@link StickyLinearLayout#PINNED_HEADER_MODE_STABLE}
+ * are covered with the default size of the pinned view cache.</p>
+ * The active section is reported to a method declared in layout XML (called through reflection).
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ScrollAllocationTest {
+
+    private static final int SECTIONS = 1000;
+    private static final int ROWS_PER_SECTION = 4;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private static final int SECTION_HEIGHT = ScrollTraceReplay.HEADER_HEIGHT
+            + ROWS_PER_SECTION * ScrollTraceReplay.ROW_HEIGHT;
+
+    private static final int MAX_SCROLL_Y = SECTIONS * SECTION_HEIGHT - HEIGHT;
+
+    /**
+     * Declares <code>onActiveSectionChanged</code> attribute of the layout,
+     * the method is not an implementation of {@link StickyLinearLayout.OnActiveSectionChangedListener}.
+     */
+    public static class FormActivity extends Activity {
+
+        private int activeSectionChanges;
+
+        public void onFormSectionChanged(List<SectionData> sections, int newIndex, int previousIndex) {
+            activeSectionChanges++;
+        }
+    }
+
+    private ScrollTraceReplay replay;
+
+    private StickyLinearLayout layout;
+
+    private List<SectionData> sections;
+
+    /**
+     * States of sections before the current scroll event.
+     */
+    private final SectionData.HeaderState[] states = new SectionData.HeaderState[SECTIONS];
+
+    private com.sun.management.ThreadMXBean threadBean;
+
+    private long threadId;
+
+    /**
+     * Bytes allocated by <code>getThreadAllocatedBytes(...)</code> itself.
+     */
+    private long measuringOverhead;
+
+    private long allocatedBytes;
+
+    /**
+     * Steady-state scroll events, i.e. events which have not changed state of any section.
+     */
+    private int steadyEvents;
+
+    /**
+     * Steady-state scroll events which have requested layout.
+     */
+    private int steadyLayoutRequests;
+
+    private int transitionEvents;
+
+    @Before
+    public void setUp() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        threadId = Thread.currentThread().getId();
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        long end = threadBean.getThreadAllocatedBytes(threadId);
+        measuringOverhead = end - start;
+    }
+
+    @Test
+    public void scroll_doesNotAllocate() throws Exception {
+        createLayout(null, -1);
+        assertNoAllocation(dragTrace());
+    }
+
+    @Test
+    public void fling_doesNotAllocate() throws Exception {
+        createLayout(null, -1);
+        ScrollTrace fling = new ScrollTrace("fling").fling(0, 8000);
+        fling.fling(fling.getValue(fling.size() - 1), -8000);
+        assertNoAllocation(fling);
+    }
+
+    @Test
+    public void jump_doesNotAllocate() throws Exception {
+        createLayout(null, -1);
+        // Jumps to distant sections followed by steady-state scroll within the section
+        ScrollTrace jump = new ScrollTrace("jump");
+        for (int i = 0; i < 200; i++) {
+            int y = Math.min(MAX_SCROLL_Y - SECTION_HEIGHT, (i * 7919 % SECTIONS) * SECTION_HEIGHT);
+            jump.add(ScrollTrace.SCROLL, y);
+            jump.drag(y, y + ScrollTraceReplay.ROW_HEIGHT, 4);
+        }
+        assertNoAllocation(jump);
+    }
+
+    @Test
+    public void scroll_doesNotAllocateInStableMode() throws Exception {
+        createLayout("stable", -1);
+        assertNoAllocation(dragTrace());
+    }
+
+    @Test
+    public void scroll_doesNotAllocateInStableModeWithAllViewsCached() throws Exception {
+        createLayout("stable", SECTIONS);
+        assertNoAllocation(dragTrace());
+    }
+
+    private static ScrollTrace dragTrace() {
+        return new ScrollTrace("drag")
+                .drag(0, 20 * HEIGHT, 16)
+                .drag(20 * HEIGHT, 0, 16);
+    }
+
+    /**
+     * @param pinnedHeaderMode Value of <code>pinnedHeaderMode</code> attribute
+     *                         or <code>null</code> for the default mode.
+     * @param pinnedHeaderCacheSize Value of <code>pinnedHeaderCacheSize</code> attribute
+     *                              or <code>-1</code> for the default size.
+     */
+    private void createLayout(String pinnedHeaderMode, int pinnedHeaderCacheSize) {
+        Robolectric.AttributeSetBuilder attrs = Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.onActiveSectionChanged, "onFormSectionChanged");
+        if (pinnedHeaderMode != null) {
+            attrs.addAttribute(R.attr.pinnedHeaderMode, pinnedHeaderMode);
+        }
+        if (pinnedHeaderCacheSize >= 0) {
+            attrs.addAttribute(R.attr.pinnedHeaderCacheSize, String.valueOf(pinnedHeaderCacheSize));
+        }
+        AttributeSet attributeSet = attrs.build();
+        replay = new ScrollTraceReplay(FormActivity.class, attributeSet, SECTIONS, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        layout = replay.getLayout();
+        sections = layout.getSectionsData();
+        // Metrics are off in production, Trace sections are skipped then
+        layout.setMetricsListener(null);
+
+        layout.getFormLayoutScrollView().setOnScrollChangeListener(new View.OnScrollChangeListener() {
+            @Override
+            public void onScrollChange(View v, int scrollX, int scrollY, int oldScrollX, int oldScrollY) {
+                for (int i = 0; i < SECTIONS; i++) {
+                    states[i] = sections.get(i).getHeaderState();
+                }
+                boolean layoutRequested = layout.isLayoutRequested();
+
+                long start = threadBean.getThreadAllocatedBytes(threadId);
+                layout.onScrollChange(v, scrollX, scrollY, oldScrollX, oldScrollY);
+                long end = threadBean.getThreadAllocatedBytes(threadId);
+
+                if (isStateChanged()) {
+                    transitionEvents++;
+                    return;
+                }
+                steadyEvents++;
+                allocatedBytes += end - start - measuringOverhead;
+                if (!layoutRequested && layout.isLayoutRequested()) {
+                    steadyLayoutRequests++;
+                }
+            }
+        });
+    }
+
+    private boolean isStateChanged() {
+        for (int i = 0; i < SECTIONS; i++) {
+            if (states[i] != sections.get(i).getHeaderState()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void assertNoAllocation(ScrollTrace trace) {
+        FormActivity activity = (FormActivity) layout.getContext();
+
+        // Warm up, the first run creates pinned views and loads classes
+        replay.replay(trace);
+        replay.replay(trace);
+        allocatedBytes = 0;
+        steadyEvents = 0;
+        steadyLayoutRequests = 0;
+        transitionEvents = 0;
+        int activeSectionChanges = activity.activeSectionChanges;
+
+        replay.replay(trace);
+
+        assertTrue(steadyEvents > 0);
+        assertTrue(transitionEvents > 0);
+        assertTrue(activity.activeSectionChanges > activeSectionChanges);
+        assertEquals("Layout requests of " + steadyEvents + " steady-state scroll events", 0, steadyLayoutRequests);
+        assertEquals("Bytes allocated by " + steadyEvents + " steady-state scroll events", 0, allocatedBytes);
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.github.vicianm.stickylinearlayout;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Sequence of UI events replayed by {@link ScrollTraceReplay}.
+ * Each event has a type and one integer value:
+ * </p>
+ * <ul>
+ *     <li><code>scroll &lt;scrollY&gt;</code> - form is scrolled to given position (one frame of drag or fling),</li>
+ *     <li><code>fling &lt;velocityY&gt;</code> - fling of the form starts, positions follow as scroll events,</li>
+ *     <li><code>focus &lt;index&gt;</code> - view at given index of the form gets focus,</li>
+ *     <li><code>resize &lt;height&gt;</code> - height of the layout changes (e.g. soft keyboard is shown).</li>
+ * </ul>
+ * <p>
+ * Traces recorded on a device can be replayed from text files with one event per line
+ * (see {@link #parse(String, InputStream)}), lines starting with <code>#</code> are ignored.
+ * </p>
+ */
+class ScrollTrace {
+
+    static final int SCROLL = 0;
+    static final int FLING = 1;
+    static final int FOCUS = 2;
+    static final int RESIZE = 3;
+
+    static final String[] EVENT_NAMES = {"scroll", "fling", "focus", "resize"};
+
+    private final String name;
+
+    private int[] types = new int[64];
+    private int[] values = new int[64];
+    private int size;
+
+    ScrollTrace(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getType(int index) {
+        return types[index];
+    }
+
+    int getValue(int index) {
+        return values[index];
+    }
+
+    ScrollTrace add(int type, int value) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        types[size] = type;
+        values[size] = value;
+        size++;
+        return this;
+    }
+
+    /**
+     * Drag from <code>fromY</code> to <code>toY</code>, form moves by <code>step</code> pixels per frame.
+     */
+    ScrollTrace drag(int fromY, int toY, int step) {
+        int direction = toY > fromY ? 1 : -1;
+        for (int y = fromY; direction * (toY - y) > 0; y += direction * step) {
+            add(SCROLL, y);
+        }
+        return add(SCROLL, toY);
+    }
+
+    /**
+     * Fling from <code>fromY</code>, the form decelerates linearly
+     * from <code>velocityY</code> (pixels per second) to zero at 60 FPS.
+     */
+    ScrollTrace fling(int fromY, int velocityY) {
+        add(FLING, velocityY);
+        int direction = Integer.signum(velocityY);
+        int deceleration = Math.max(1, Math.abs(velocityY) / 3600);
+        int y = fromY;
+        for (int step = Math.abs(velocityY) / 60; step > 0; step -= deceleration) {
+            y = Math.max(0, y + direction * step);
+            add(SCROLL, y);
+        }
+        return this;
+    }
+
+    /**
+     * @return Trace with events read from <code>input</code>, see the class comment for the format.
+     */
+    static ScrollTrace parse(String name, InputStream input) throws IOException {
+        ScrollTrace trace = new ScrollTrace(name);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                int type = Arrays.asList(EVENT_NAMES).indexOf(parts[0]);
+                if (type < 0 || parts.length != 2) {
+                    throw new IOException("Invalid event in trace " + name + ": " + line);
+                }
+                trace.add(type, Integer.parseInt(parts[1]));
+            }
+        } finally {
+            reader.close();
+        }
+        return trace;
+    }
+
+}
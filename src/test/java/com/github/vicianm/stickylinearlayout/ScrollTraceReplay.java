@@ -0,0 +1,345 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.app.Activity;
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * <p>
+ * Replays {@link ScrollTrace} on {@link StickyLinearLayout} with generated form and measures
+ * CPU time, view tree mutations and allocations of each event.
+ * </p>
+ * <p>
+ * Events are dispatched the same way as on a device, through the form ScrollView
+ * (<code>onScrollChange(...)</code>), <code>onGlobalFocusChanged(...)</code> and
+ * new size of the layout (<code>onSizeChanged(...)</code> of the form ScrollView).
+ * The layout is attached to a window of an activity, traversals of the window are
+ * replaced by {@link #frame()}. Each event is followed by a frame if it has been requested,
+ * the frame is measured as part of the event.
+ * </p>
+ */
+class ScrollTraceReplay {
+
+    static final int HEADER_HEIGHT = 100;
+    static final int ROW_HEIGHT = 150;
+
+    private final StickyLinearLayout layout;
+
+    private final StickyLayoutMetrics metrics = new StickyLayoutMetrics();
+
+    private final int width;
+    private int height;
+
+    /**
+     * Rows added to/removed from the form (e.g. rows of offscreen sections).
+     */
+    private int formMutations;
+
+    private int layoutPasses;
+
+    private boolean inLayoutPass;
+
+    /**
+     * Views added to/removed from the form or header/footer area during measure/layout pass.
+     */
+    private int mutationsInLayoutPass;
+
+    private View focused;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * <code>null</code> if allocations can't be measured by this JVM.
+     */
+    private final com.sun.management.ThreadMXBean allocationBean;
+
+    /**
+     * @param sections Number of sections of the generated form.
+     * @param rowsPerSection Number of rows (EditText) of each section.
+     */
+    ScrollTraceReplay(int sections, int rowsPerSection, int width, int height) {
+        this(Activity.class, null, sections, rowsPerSection, width, height);
+    }
+
+    /**
+     * @param activityClass Activity which hosts the layout, e.g. the one declaring
+     *                      methods referenced by attributes of the layout.
+     * @param attrs Attributes of the layout, may be <code>null</code>.
+     */
+    ScrollTraceReplay(Class<? extends Activity> activityClass, AttributeSet attrs,
+                      int sections, int rowsPerSection, int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        // Main looper might be paused by a previous replay, its pending
+        // tasks (e.g. traversals of its window) are dropped
+        Robolectric.getForegroundThreadScheduler().reset();
+        ShadowLooper.unPauseMainLooper();
+        Activity activity = Robolectric.setupActivity(activityClass);
+        // Frames are driven by frame(), not by traversals scheduled by the window
+        ShadowLooper.pauseMainLooper();
+
+        Context context = activity;
+        layout = new StickyLinearLayout(context, attrs);
+        layout.setPinnedHeaderFactory(new StickyLinearLayout.PinnedHeaderFactory() {
+            @Override
+            public View onCreateHeader(View sectionHeader) {
+                return createHeader(sectionHeader.getContext(), ((TextView) sectionHeader).getText());
+            }
+
+            @Override
+            public View onCreateFooter(View sectionHeader) {
+                return createHeader(sectionHeader.getContext(), ((TextView) sectionHeader).getText());
+            }
+        });
+        for (int s = 0; s < sections; s++) {
+            layout.addSectionHeader(createHeader(context, "Section " + s), -1);
+            for (int r = 0; r < rowsPerSection; r++) {
+                EditText row = new EditText(context);
+                row.setLayoutParams(new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ROW_HEIGHT));
+                layout.addFormView(row, -1);
+            }
+        }
+
+        layout.getFormLayout().setOnHierarchyChangeListener(new ViewGroup.OnHierarchyChangeListener() {
+            @Override
+            public void onChildViewAdded(View parent, View child) {
+                formMutations++;
+                onViewTreeMutated();
+            }
+
+            @Override
+            public void onChildViewRemoved(View parent, View child) {
+                formMutations++;
+                onViewTreeMutated();
+            }
+        });
+        ViewGroup.OnHierarchyChangeListener pinnedAreaListener = new ViewGroup.OnHierarchyChangeListener() {
+            @Override
+            public void onChildViewAdded(View parent, View child) {
+                onViewTreeMutated();
+            }
+
+            @Override
+            public void onChildViewRemoved(View parent, View child) {
+                onViewTreeMutated();
+            }
+        };
+        layout.getHeaderLayout().setOnHierarchyChangeListener(pinnedAreaListener);
+        layout.getFooterLayout().setOnHierarchyChangeListener(pinnedAreaListener);
+        layout.setMetricsListener(metrics);
+        // Fixed size, a traversal of the window (e.g. run by a test together
+        // with other tasks of UI thread) does not resize the layout
+        activity.setContentView(layout, new ViewGroup.LayoutParams(width, height));
+        if (!layout.isAttachedToWindow()) {
+            throw new IllegalStateException("Layout is not attached to window");
+        }
+        frame();
+
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        this.allocationBean = allocationBean;
+    }
+
+    private static TextView createHeader(Context context, CharSequence text) {
+        TextView header = new TextView(context);
+        header.setText(text);
+        header.setLayoutParams(new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, HEADER_HEIGHT));
+        return header;
+    }
+
+    StickyLinearLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return Number of views added/removed during measure/layout pass since the replay has been created.
+     * The layout is expected to change the view tree after the pass, before the frame is drawn.
+     */
+    int getMutationsInLayoutPass() {
+        return mutationsInLayoutPass;
+    }
+
+    private void onViewTreeMutated() {
+        if (inLayoutPass) {
+            mutationsInLayoutPass++;
+        }
+    }
+
+    /**
+     * Replays all events of the trace.
+     */
+    Result replay(ScrollTrace trace) {
+        Result result = new Result(trace.getName());
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < trace.size(); i++) {
+            int type = trace.getType(i);
+            metrics.reset();
+            formMutations = 0;
+            layoutPasses = 0;
+
+            long allocatedStart = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) : 0;
+            long cpuStart = threadBean.getCurrentThreadCpuTime();
+
+            dispatch(type, trace.getValue(i));
+            if (layout.isLayoutRequested()) {
+                frame();
+            }
+
+            long cpu = threadBean.getCurrentThreadCpuTime() - cpuStart;
+            long allocated = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) - allocatedStart : 0;
+
+            result.add(type, cpu, allocated,
+                    metrics.getPinnedViewsAdded() + metrics.getPinnedViewsRemoved(),
+                    formMutations, layoutPasses);
+        }
+        return result;
+    }
+
+    private void dispatch(int type, int value) {
+        switch (type) {
+            case ScrollTrace.SCROLL:
+                layout.getFormLayoutScrollView().scrollTo(0, value);
+                break;
+            case ScrollTrace.FLING:
+                layout.getFormLayoutScrollView().fling(value);
+                break;
+            case ScrollTrace.FOCUS:
+                View oldFocus = focused;
+                focused = layout.getFormLayout().getChildAt(value);
+                focused.requestFocus();
+                layout.onGlobalFocusChanged(oldFocus, focused);
+                break;
+            case ScrollTrace.RESIZE:
+                height = value;
+                layout.getLayoutParams().height = value;
+                frame();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + type);
+        }
+    }
+
+    /**
+     * Measures, lays out and pre-draws the layout in the same way as a traversal of the view root.
+     * If a pre-draw listener cancels the draw, the traversal is repeated (in the next frame on a device).
+     */
+    void frame() {
+        do {
+            inLayoutPass = true;
+            layout.measure(
+                    View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+            layout.layout(0, 0, width, height);
+            inLayoutPass = false;
+            layoutPasses++;
+        } while (layout.getViewTreeObserver().dispatchOnPreDraw());
+    }
+
+    /**
+     * Metrics of replayed events summed up by event type.
+     */
+    static class Result {
+
+        private final String traceName;
+
+        private final int[] events = new int[ScrollTrace.EVENT_NAMES.length];
+        private final long[] cpuNanos = new long[ScrollTrace.EVENT_NAMES.length];
+        private final long[] allocatedBytes = new long[ScrollTrace.EVENT_NAMES.length];
+        private final long[] pinnedMutations = new long[ScrollTrace.EVENT_NAMES.length];
+        private final long[] formMutations = new long[ScrollTrace.EVENT_NAMES.length];
+        private final long[] layoutPasses = new long[ScrollTrace.EVENT_NAMES.length];
+        private final int[] maxLayoutPasses = new int[ScrollTrace.EVENT_NAMES.length];
+
+        Result(String traceName) {
+            this.traceName = traceName;
+        }
+
+        private void add(int type, long cpu, long allocated, long pinned, long form, int passes) {
+            events[type]++;
+            cpuNanos[type] += cpu;
+            allocatedBytes[type] += allocated;
+            pinnedMutations[type] += pinned;
+            formMutations[type] += form;
+            layoutPasses[type] += passes;
+            maxLayoutPasses[type] = Math.max(maxLayoutPasses[type], passes);
+        }
+
+        int getEvents(int type) {
+            return events[type];
+        }
+
+        double getCpuNanosPerEvent(int type) {
+            return perEvent(cpuNanos, type);
+        }
+
+        double getAllocatedBytesPerEvent(int type) {
+            return perEvent(allocatedBytes, type);
+        }
+
+        /**
+         * @return Pinned views added to/removed from header/footer area per event of given type.
+         */
+        double getPinnedMutationsPerEvent(int type) {
+            return perEvent(pinnedMutations, type);
+        }
+
+        /**
+         * @return Rows added to/removed from the form per event of given type.
+         */
+        double getFormMutationsPerEvent(int type) {
+            return perEvent(formMutations, type);
+        }
+
+        /**
+         * @return Maximum number of measure/layout passes of a single event of given type,
+         * more than one pass means that a pre-draw listener cancelled the draw.
+         */
+        int getMaxLayoutPasses(int type) {
+            return maxLayoutPasses[type];
+        }
+
+        private double perEvent(long[] values, int type) {
+            return events[type] == 0 ? 0 : (double) values[type] / events[type];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder(traceName).append('\n');
+            report.append(String.format(Locale.US, "  %-7s %7s %12s %12s %10s %10s %10s %10s%n",
+                    "event", "count", "cpu us/ev", "alloc B/ev", "pinned/ev", "form/ev", "layout/ev", "layout max"));
+            for (int type = 0; type < events.length; type++) {
+                int count = events[type];
+                if (count == 0) {
+                    continue;
+                }
+                report.append(String.format(Locale.US, "  %-7s %7d %12.1f %12d %10.2f %10.2f %10.2f %10d%n",
+                        ScrollTrace.EVENT_NAMES[type], count,
+                        cpuNanos[type] / 1000.0 / count,
+                        allocatedBytes[type] / count,
+                        (double) pinnedMutations[type] / count,
+                        (double) formMutations[type] / count,
+                        (double) layoutPasses[type] / count,
+                        maxLayoutPasses[type]));
+            }
+            return report.toString();
+        }
+    }
+
+}
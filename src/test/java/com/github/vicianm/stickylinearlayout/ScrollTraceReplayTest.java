@@ -0,0 +1,156 @@
+package com.github.vicianm.stickylinearlayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * Replays scroll, fling, focus traversal and keyboard resize traces on generated forms
+ * of different sizes (see {@link ScrollTraceReplay}) and prints CPU time, view tree mutations
+ * and allocations per event. The test fails if any of them exceeds its budget per event.
+ * Run before release to catch performance regressions without a device:
+ * </p>
+ * <pre>
+ * ./gradlew testDebugUnitTest --tests '*ScrollTraceReplayTest' -Dreplay.sections=10,100,1000
+ * </pre>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ScrollTraceReplayTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int KEYBOARD_HEIGHT = 1100;
+    private static final int ROWS_PER_SECTION = 4;
+
+    private static final int SECTION_HEIGHT = ScrollTraceReplay.HEADER_HEIGHT
+            + ROWS_PER_SECTION * ScrollTraceReplay.ROW_HEIGHT;
+
+    /**
+     * Budget of pinned views added/removed per scroll frame, sections are much
+     * higher than scroll step, so only a few sections change their state in a frame.
+     */
+    private static final double MAX_PINNED_MUTATIONS_PER_SCROLL = 2;
+
+    /**
+     * Budget of rows attached to/detached from the form per scroll frame,
+     * i.e. rows of a single section.
+     */
+    private static final double MAX_FORM_MUTATIONS_PER_SCROLL = ROWS_PER_SECTION;
+
+    /**
+     * Budget of CPU time per scroll, fling and focus event (including the frame).
+     * Robolectric is much slower than the framework, the budget catches regressions
+     * like updates of all sections of the form, not single microseconds.
+     */
+    private static final double MAX_CPU_NANOS_PER_EVENT = 2000000;
+
+    /**
+     * Budget of bytes allocated per scroll event (including the frame).
+     * Pinned views created for sections entering header/footer area are allocated,
+     * updates of views already created are not (see {@link ScrollAllocationTest}).
+     */
+    private static final double MAX_ALLOCATED_BYTES_PER_SCROLL = 128 * 1024;
+
+    /**
+     * Maximum measure/layout passes of a resize event, views of pinned sections are updated
+     * after the form viewport is laid out with its new size, which cancels one draw.
+     * Other events must never cancel the draw.
+     */
+    private static final int MAX_LAYOUT_PASSES_PER_RESIZE = 2;
+
+    @Test
+    public void replayTraces() throws Exception {
+        for (String sections : System.getProperty("replay.sections", "10,100,1000").split(",")) {
+            replayTraces(Integer.parseInt(sections.trim()));
+        }
+    }
+
+    private void replayTraces(int sections) throws Exception {
+        int maxScrollY = Math.max(0, sections * SECTION_HEIGHT - HEIGHT);
+        // Long forms are scrolled only within first screens, the cost should not depend on the length
+        int dragToY = Math.min(maxScrollY, 20 * HEIGHT);
+
+        ScrollTrace drag = new ScrollTrace("drag")
+                .drag(0, dragToY, 24)
+                .drag(dragToY, 0, 24);
+
+        ScrollTrace fling = new ScrollTrace("fling")
+                .fling(0, 8000);
+        fling.fling(fling.getValue(fling.size() - 1), -8000);
+
+        ScrollTrace focus = new ScrollTrace("focus traversal");
+        int focusedSections = Math.min(sections, 10);
+        for (int s = 0; s < focusedSections; s++) {
+            for (int r = 0; r < ROWS_PER_SECTION; r++) {
+                focus.add(ScrollTrace.FOCUS, s * (ROWS_PER_SECTION + 1) + 1 + r);
+            }
+        }
+        focus.add(ScrollTrace.FOCUS, 1);
+
+        ScrollTrace keyboard = new ScrollTrace("keyboard resize")
+                .add(ScrollTrace.FOCUS, 1)
+                .add(ScrollTrace.RESIZE, KEYBOARD_HEIGHT)
+                .drag(0, Math.min(maxScrollY, 2 * HEIGHT), 24)
+                .add(ScrollTrace.RESIZE, HEIGHT)
+                .add(ScrollTrace.RESIZE, KEYBOARD_HEIGHT)
+                .add(ScrollTrace.RESIZE, HEIGHT);
+
+        InputStream input = getClass().getResourceAsStream("/traces/form_fill.trace");
+        assertNotNull(input);
+        ScrollTrace recorded = ScrollTrace.parse("recorded form fill", input);
+
+        ScrollTraceReplay replay = new ScrollTraceReplay(sections, ROWS_PER_SECTION, WIDTH, HEIGHT);
+
+        // Warm up, the first run loads classes and creates pinned views
+        replay.replay(drag);
+        replay.replay(fling);
+
+        System.out.println("Form with " + sections + " sections:");
+        for (ScrollTrace trace : new ScrollTrace[] {drag, fling, focus, keyboard, recorded}) {
+            if (trace == recorded && sections * (ROWS_PER_SECTION + 1) <= 16) {
+                // Trace focuses rows of first 4 sections
+                continue;
+            }
+            ScrollTraceReplay.Result result = replay.replay(trace);
+            System.out.println(result);
+
+            int events = 0;
+            for (int type = 0; type < ScrollTrace.EVENT_NAMES.length; type++) {
+                events += result.getEvents(type);
+            }
+            assertEquals(trace.size(), events);
+            assertBudget(sections + " sections, " + trace.getName(), result);
+        }
+    }
+
+    private static void assertBudget(String name, ScrollTraceReplay.Result result) {
+        int scroll = ScrollTrace.SCROLL;
+        assertTrue(name + ": " + result.getPinnedMutationsPerEvent(scroll) + " pinned views added/removed per scroll event",
+                result.getPinnedMutationsPerEvent(scroll) <= MAX_PINNED_MUTATIONS_PER_SCROLL);
+        assertTrue(name + ": " + result.getFormMutationsPerEvent(scroll) + " rows added/removed per scroll event",
+                result.getFormMutationsPerEvent(scroll) <= MAX_FORM_MUTATIONS_PER_SCROLL);
+        assertTrue(name + ": " + result.getAllocatedBytesPerEvent(scroll) + " bytes allocated per scroll event",
+                result.getAllocatedBytesPerEvent(scroll) <= MAX_ALLOCATED_BYTES_PER_SCROLL);
+
+        for (int type = 0; type < ScrollTrace.EVENT_NAMES.length; type++) {
+            String event = name + ", " + ScrollTrace.EVENT_NAMES[type];
+            if (type == ScrollTrace.RESIZE) {
+                assertTrue(event + ": " + result.getMaxLayoutPasses(type) + " layout passes",
+                        result.getMaxLayoutPasses(type) <= MAX_LAYOUT_PASSES_PER_RESIZE);
+                continue;
+            }
+            assertTrue(event + ": " + result.getMaxLayoutPasses(type) + " layout passes",
+                    result.getMaxLayoutPasses(type) <= 1);
+            assertTrue(event + ": " + result.getCpuNanosPerEvent(type) / 1000 + " us per event",
+                    result.getCpuNanosPerEvent(type) <= MAX_CPU_NANOS_PER_EVENT);
+        }
+    }
+
+}
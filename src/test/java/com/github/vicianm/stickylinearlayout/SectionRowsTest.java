@@ -0,0 +1,268 @@
+package com.github.vicianm.stickylinearlayout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests of {@link SectionRows}, i.e. of sections of {@link StickyRecyclerLayout}
+ * updated by measured rows and by range notifications of the adapter.
+ */
+public class SectionRowsTest {
+
+    private static final int ROW_HEIGHT = 100;
+    private static final int VIEWPORT_HEIGHT = 1000;
+
+    /**
+     * Adapter of the form, every 5th row is a section header by default.
+     */
+    private static class TestRows implements SectionRows.Rows {
+
+        final List<Boolean> headers = new ArrayList<>();
+
+        /**
+         * Measured heights of rows, <code>null</code> if the row has not been measured.
+         */
+        final List<Integer> heights = new ArrayList<>();
+
+        TestRows(int count) {
+            for (int position = 0; position < count; position++) {
+                headers.add(position % 5 == 0);
+                heights.add(null);
+            }
+        }
+
+        @Override
+        public boolean isSectionHeader(int position) {
+            return headers.get(position);
+        }
+
+        @Override
+        public int getScrollToSectionMargin(int position) {
+            return 0;
+        }
+    }
+
+    private final List<SectionData> removedSections = new ArrayList<>();
+    private final List<SectionData> changedSections = new ArrayList<>();
+
+    private final SectionRows.Callback callback = new SectionRows.Callback() {
+        @Override
+        public void onSectionRemoved(SectionData section) {
+            removedSections.add(section);
+        }
+
+        @Override
+        public void onSectionChanged(SectionData section) {
+            changedSections.add(section);
+        }
+    };
+
+    private TestRows rows;
+
+    private SectionRows sectionRows;
+
+    @Before
+    public void setUp() {
+        rows = new TestRows(50);
+        sectionRows = new SectionRows(3, 3, callback);
+        sectionRows.reset(rows, rows.headers.size());
+    }
+
+    @Test
+    public void measuredRowShiftsFollowingSections() {
+        measure(0, ROW_HEIGHT);
+        PinningEngine engine = sectionRows.getPinningEngine();
+        assertEquals(10, engine.size());
+        assertEquals(5 * ROW_HEIGHT, engine.getOffset(1));
+
+        // Rows above the viewport turn out to be taller than estimated
+        measure(7, ROW_HEIGHT + 40);
+        measure(5, ROW_HEIGHT + 10);
+        assertTrue(engine.isOffsetsValid());
+        assertEquals(5 * ROW_HEIGHT, engine.getOffset(1));
+        assertEquals(10 * ROW_HEIGHT + 50, engine.getOffset(2));
+        assertEquals(45 * ROW_HEIGHT + 50, engine.getOffset(9));
+        // Height of the section header row is the estimated height of its pinned views
+        assertEquals(ROW_HEIGHT + 10, engine.getPinnedUpHeight(1));
+        assertSameAsRebuilt();
+    }
+
+    @Test
+    public void insertedAndRemovedRows() {
+        measure(0, ROW_HEIGHT);
+        measure(12, 2 * ROW_HEIGHT);
+
+        // A new section with 3 rows inserted before section 1
+        insert(5, true, false, false);
+        assertEquals(11, sectionRows.getPinningEngine().size());
+        assertEquals(5, sectionRows.getPosition(1));
+        assertEquals(8, sectionRows.getPosition(2));
+        assertEquals(1, sectionRows.findSectionIndex(7));
+        assertSameAsRebuilt();
+
+        // Rows of section 1 together with the header of section 2
+        SectionData section = sectionRows.getSections().get(2);
+        remove(6, 3);
+        assertEquals(1, removedSections.size());
+        assertSame(section, removedSections.get(0));
+        assertEquals(-1, section.getIndex());
+        assertEquals(10, sectionRows.getPinningEngine().size());
+        assertEquals(1, sectionRows.findSectionIndex(8));
+        assertSameAsRebuilt();
+    }
+
+    @Test
+    public void changedRows() {
+        measure(0, ROW_HEIGHT);
+        measure(10, ROW_HEIGHT + 20);
+        measure(11, ROW_HEIGHT + 20);
+        SectionStore sections = sectionRows.getSections();
+
+        // Rebound rows are estimated until they are measured again
+        assertFalse(sectionRows.changeRows(rows, 9, 3));
+        assertSame(sections, sectionRows.getSections());
+        assertEquals(1, changedSections.size());
+        assertSame(sections.get(2), changedSections.get(0));
+        rows.heights.set(10, null);
+        rows.heights.set(11, null);
+        sectionRows.validateOffsets();
+        assertSameAsRebuilt();
+
+        // Row becomes a section header
+        rows.headers.set(12, true);
+        assertTrue(sectionRows.changeRows(rows, 12, 1));
+        Collections.fill(rows.heights, null);
+        sectionRows.validateOffsets();
+        assertEquals(11, sectionRows.getSections().size());
+        assertSameAsRebuilt();
+    }
+
+    @Test
+    public void randomUpdatesMatchRebuiltSections() {
+        Random random = new Random(11);
+        measure(0, ROW_HEIGHT);
+        for (int i = 0; i < 2000; i++) {
+            int size = rows.headers.size();
+            int op = random.nextInt(10);
+            if (op < 6 && size > 0) {
+                measure(random.nextInt(size), ROW_HEIGHT / 2 + random.nextInt(2 * ROW_HEIGHT));
+            } else if (op < 8 || size < 10) {
+                boolean[] headers = new boolean[1 + random.nextInt(4)];
+                for (int h = 0; h < headers.length; h++) {
+                    headers[h] = random.nextInt(3) == 0;
+                }
+                insert(random.nextInt(size + 1), headers);
+            } else if (op < 9) {
+                int start = random.nextInt(size);
+                remove(start, 1 + random.nextInt(Math.min(4, size - start)));
+            } else {
+                int start = random.nextInt(size);
+                int count = 1 + random.nextInt(Math.min(4, size - start));
+                for (int position = start; position < start + count; position++) {
+                    rows.heights.set(position, null);
+                }
+                if (sectionRows.changeRows(rows, start, count)) {
+                    // Measured heights are forgotten by the reset
+                    Collections.fill(rows.heights, null);
+                }
+            }
+
+            sectionRows.validateOffsets();
+            int scrollY = random.nextInt(Math.max(1, sectionRows.getOffset(sectionRows.getRowCount())));
+            sectionRows.getPinningEngine().update(scrollY, 0, VIEWPORT_HEIGHT);
+            assertSameAsRebuilt(scrollY);
+        }
+    }
+
+    private void measure(int position, int height) {
+        rows.heights.set(position, height);
+        sectionRows.setRowHeight(position, height);
+        sectionRows.validateOffsets();
+    }
+
+    private void insert(int start, boolean... headers) {
+        for (int i = 0; i < headers.length; i++) {
+            rows.headers.add(start + i, headers[i]);
+            rows.heights.add(start + i, null);
+        }
+        sectionRows.insertRows(rows, start, headers.length);
+        sectionRows.validateOffsets();
+    }
+
+    private void remove(int start, int count) {
+        for (int i = 0; i < count; i++) {
+            rows.headers.remove(start);
+            rows.heights.remove(start);
+        }
+        sectionRows.removeRows(start, count);
+        sectionRows.validateOffsets();
+    }
+
+    private void assertSameAsRebuilt() {
+        assertSameAsRebuilt(0);
+    }
+
+    /**
+     * Compares sections with sections created from scratch for current rows
+     * with the same measured heights, pinning is resolved at given <code>scrollY</code>
+     * (states of both are resolved from scratch, pinning depends on the previous update).
+     */
+    private void assertSameAsRebuilt(int scrollY) {
+        int size = rows.headers.size();
+        SectionRows rebuilt = new SectionRows(3, 3, new SectionRows.Callback() {
+            @Override
+            public void onSectionRemoved(SectionData section) {
+            }
+
+            @Override
+            public void onSectionChanged(SectionData section) {
+            }
+        });
+        rebuilt.reset(rows, size);
+        if (size > 0) {
+            // The first measured height is the estimated one
+            rebuilt.setRowHeight(0, ROW_HEIGHT);
+        }
+        for (int position = 0; position < size; position++) {
+            Integer height = rows.heights.get(position);
+            if (height != null) {
+                rebuilt.setRowHeight(position, height);
+            } else {
+                rebuilt.changeRows(rows, position, 1);
+            }
+        }
+        rebuilt.validateOffsets();
+        PinningEngine expected = rebuilt.getPinningEngine();
+        expected.update(scrollY, 0, VIEWPORT_HEIGHT);
+
+        PinningEngine engine = sectionRows.getPinningEngine();
+        engine.invalidateStates();
+        engine.update(scrollY, 0, VIEWPORT_HEIGHT);
+        assertEquals(size, sectionRows.getRowCount());
+        assertEquals(rebuilt.getOffset(size), sectionRows.getOffset(size));
+        assertEquals(expected.size(), engine.size());
+        assertEquals(expected.size(), sectionRows.getSections().size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(rebuilt.getPosition(i), sectionRows.getPosition(i));
+            assertEquals(i, sectionRows.getSections().get(i).getIndex());
+            assertEquals(expected.getOffset(i), engine.getOffset(i));
+            assertEquals(expected.getPinnedUpHeight(i), engine.getPinnedUpHeight(i));
+            assertEquals(expected.getPinnedDownHeight(i), engine.getPinnedDownHeight(i));
+            assertEquals(expected.getState(i), engine.getState(i));
+        }
+        assertEquals(expected.getPinnedUpEnd(), engine.getPinnedUpEnd());
+        assertEquals(expected.getPinnedDownStart(), engine.getPinnedDownStart());
+        assertEquals(expected.getPinnedUpHeight(0, expected.size()), engine.getPinnedUpHeight(0, engine.size()));
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.content.Context;
+import android.view.accessibility.AccessibilityManager;
+
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowAccessibilityManager;
+
+/**
+ * Returns the same {@link AccessibilityManager} for the whole test. Robolectric creates
+ * a new manager (and system service behind it) each time a view is laid out or added
+ * to the window, which makes tests with thousands of views run for minutes.
+ */
+@Implements(AccessibilityManager.class)
+public class ShadowCachedAccessibilityManager extends ShadowAccessibilityManager {
+
+    private static Context application;
+
+    private static AccessibilityManager instance;
+
+    @Implementation
+    public static AccessibilityManager getInstance(Context context) throws Exception {
+        if (instance == null || application != RuntimeEnvironment.application) {
+            application = RuntimeEnvironment.application;
+            instance = ShadowAccessibilityManager.getInstance(context);
+        }
+        return instance;
+    }
+
+}
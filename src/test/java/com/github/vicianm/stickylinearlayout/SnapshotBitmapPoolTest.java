@@ -0,0 +1,60 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link SnapshotBitmapPool}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SnapshotBitmapPoolTest {
+
+    @Test
+    public void releasedBitmapIsReused() {
+        SnapshotBitmapPool pool = new SnapshotBitmapPool(2);
+        assertNull(pool.obtain(100, 50));
+
+        Bitmap bitmap = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        pool.release(bitmap);
+        // The same bitmap is released by both areas within one frame
+        pool.release(bitmap);
+        assertEquals(1, pool.size());
+
+        assertSame(bitmap, pool.obtain(100, 50));
+        assertEquals(0, pool.size());
+        assertNull(pool.obtain(100, 50));
+    }
+
+    @Test
+    public void bitmapOfMatchingSizeIsPreferred() {
+        SnapshotBitmapPool pool = new SnapshotBitmapPool(4);
+        Bitmap other = Bitmap.createBitmap(80, 40, Bitmap.Config.ARGB_8888);
+        Bitmap matching = Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888);
+        pool.release(other);
+        pool.release(matching);
+
+        assertSame(matching, pool.obtain(100, 50));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void poolIsBounded() {
+        SnapshotBitmapPool pool = new SnapshotBitmapPool(2);
+        for (int i = 0; i < 5; i++) {
+            pool.release(Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888));
+        }
+        pool.release(null);
+        assertEquals(2, pool.size());
+
+        pool.clear();
+        assertEquals(0, pool.size());
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.github.vicianm.stickylinearlayout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StickyLayoutMetricsTest {
+
+    @Test
+    public void onSectionsUpdated_sumsUpMetrics() throws Exception {
+        StickyLayoutMetrics metrics = new StickyLayoutMetrics();
+        metrics.onSectionsUpdated(100, 4, 2, 1, 0, false, false);
+        metrics.onSectionsUpdated(300, 10, 5, 2, 3, true, true);
+        metrics.onViewportResized();
+        metrics.onImplicitScrollStarted(0, 500);
+
+        assertEquals(2, metrics.getUpdateCount());
+        assertEquals(1, metrics.getForcedUpdateCount());
+        assertEquals(400, metrics.getTotalUpdateNanos());
+        assertEquals(300, metrics.getMaxUpdateNanos());
+        assertEquals(200, metrics.getAverageUpdateNanos());
+        assertEquals(14, metrics.getSectionsExamined());
+        assertEquals(7, metrics.getSectionsChanged());
+        assertEquals(3, metrics.getPinnedViewsAdded());
+        assertEquals(3, metrics.getPinnedViewsRemoved());
+        assertEquals(1, metrics.getViewportResizeCount());
+        assertEquals(1, metrics.getImplicitScrollCount());
+        assertEquals(1, metrics.getImplicitScrollUpdateCount());
+    }
+
+    @Test
+    public void reset_clearsCounters() throws Exception {
+        StickyLayoutMetrics metrics = new StickyLayoutMetrics();
+        metrics.onSectionsUpdated(100, 4, 2, 1, 1, true, false);
+        metrics.onViewportResized();
+        metrics.reset();
+
+        assertEquals(0, metrics.getUpdateCount());
+        assertEquals(0, metrics.getAverageUpdateNanos());
+        assertEquals(0, metrics.getMaxUpdateNanos());
+        assertEquals(0, metrics.getViewportResizeCount());
+    }
+
+}
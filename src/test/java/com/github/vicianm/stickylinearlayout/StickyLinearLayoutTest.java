@@ -0,0 +1,452 @@
+package com.github.vicianm.stickylinearlayout;
+
+import android.util.AttributeSet;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link StickyLinearLayout} laid out with generated form (see {@link ScrollTraceReplay}).
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class StickyLinearLayoutTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int ROWS_PER_SECTION = 4;
+
+    private static final int SECTION_HEIGHT = ScrollTraceReplay.HEADER_HEIGHT
+            + ROWS_PER_SECTION * ScrollTraceReplay.ROW_HEIGHT;
+
+    /**
+     * Header and footer area show at most 3 rows each.
+     */
+    private static final int MAX_ROWS = 3;
+
+    /**
+     * Default size of pinned view cache.
+     */
+    private static final int MAX_CACHED_SECTIONS = 4 * MAX_ROWS;
+
+    @Test
+    public void pinnedViewsAreBoundedInLongForm() {
+        int sections = 450;
+        ScrollTraceReplay replay = new ScrollTraceReplay(sections, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+
+        // The first update pins down almost all sections
+        assertPinnedViewsBounded(layout);
+
+        int maxScrollY = sections * SECTION_HEIGHT - HEIGHT;
+        int step = maxScrollY / 20;
+        for (int y = 0; y < maxScrollY; y += step) {
+            replay.replay(new ScrollTrace("drag").drag(y, Math.min(maxScrollY, y + step), 48));
+            assertPinnedViewsBounded(layout);
+        }
+        for (int y = maxScrollY; y > 0; y -= step) {
+            replay.replay(new ScrollTrace("drag").drag(y, Math.max(0, y - step), 48));
+            assertPinnedViewsBounded(layout);
+        }
+        replay.replay(new ScrollTrace("jump").add(ScrollTrace.SCROLL, maxScrollY / 2));
+        assertPinnedViewsBounded(layout);
+    }
+
+    @Test
+    public void formViewsAddedByAddViewAreRegisteredBeforeUse() {
+        AttributeSet headerAttrs = Robolectric.buildAttributeSet()
+                .addAttribute(android.R.attr.layout_width, "match_parent")
+                .addAttribute(android.R.attr.layout_height, "100px")
+                .addAttribute(R.attr.sectionHeader, "true")
+                .build();
+        AttributeSet rowAttrs = Robolectric.buildAttributeSet()
+                .addAttribute(android.R.attr.layout_width, "match_parent")
+                .addAttribute(android.R.attr.layout_height, "150px")
+                .build();
+
+        // Constructed without attributes, views are still registered in one pass
+        StickyLinearLayout layout = new StickyLinearLayout(RuntimeEnvironment.application);
+        View[] views = new View[6];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = new TextView(RuntimeEnvironment.application);
+            layout.addView(views[i], layout.generateLayoutParams(i % 3 == 0 ? headerAttrs : rowAttrs));
+        }
+        // Section added through the API after pending views
+        View header = new TextView(RuntimeEnvironment.application);
+        layout.addSectionHeader(header, -1);
+        layout.addView(new TextView(RuntimeEnvironment.application), layout.generateLayoutParams(headerAttrs));
+
+        List<SectionData> sections = layout.getSectionsData();
+        assertEquals(4, sections.size());
+        assertSame(views[0], sections.get(0).getUnpinnedHeader());
+        assertSame(views[3], sections.get(1).getUnpinnedHeader());
+        assertSame(header, sections.get(2).getUnpinnedHeader());
+        for (int i = 0; i < sections.size(); i++) {
+            assertEquals(i, sections.get(i).getIndex());
+        }
+    }
+
+    @Test
+    public void removeSection_removesHeaderRowsAndPinnedViews() {
+        ScrollTraceReplay replay = new ScrollTraceReplay(10, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+        replay.replay(new ScrollTrace("drag").drag(0, 3 * SECTION_HEIGHT, 48));
+        List<SectionData> sections = layout.getSectionsData();
+        SectionData removed = sections.get(1);
+        View pinnedUpHeader = removed.getPinnedUpHeader();
+        assertNotNull(pinnedUpHeader);
+        assertSame(layout.getHeaderLayout(), pinnedUpHeader.getParent());
+
+        layout.removeSection(removed);
+        replay.frame();
+
+        assertEquals(9, sections.size());
+        assertEquals(-1, removed.getIndex());
+        assertEquals(9 * (ROWS_PER_SECTION + 1), layout.getFormLayout().getChildCount());
+        assertNull(removed.getUnpinnedHeader().getParent());
+        assertNull(pinnedUpHeader.getParent());
+        assertSectionsInFormOrder(layout);
+
+        // Removed section is ignored
+        layout.removeSection(removed);
+        assertEquals(9, sections.size());
+    }
+
+    @Test
+    public void moveSection_movesHeaderWithRows() {
+        ScrollTraceReplay replay = new ScrollTraceReplay(10, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+        List<SectionData> sections = layout.getSectionsData();
+        SectionData moved = sections.get(0);
+        View firstRow = layout.getFormLayout().getChildAt(1);
+
+        layout.moveSection(moved, 5);
+        replay.frame();
+
+        assertSame(moved, sections.get(5));
+        assertEquals(5, moved.getIndex());
+        int headerPosition = layout.getFormLayout().indexOfChild(moved.getUnpinnedHeader());
+        assertEquals(5 * (ROWS_PER_SECTION + 1), headerPosition);
+        assertSame(firstRow, layout.getFormLayout().getChildAt(headerPosition + 1));
+        assertSectionsInFormOrder(layout);
+    }
+
+    @Test
+    public void setSectionCollapsed_hidesRowsAndMovesFollowingSections() {
+        ScrollTraceReplay replay = new ScrollTraceReplay(10, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+        List<SectionData> sections = layout.getSectionsData();
+        SectionData collapsed = sections.get(1);
+        View next = sections.get(2).getUnpinnedHeader();
+        int nextTop = next.getTop();
+
+        layout.setSectionCollapsed(collapsed, true);
+        replay.frame();
+
+        assertTrue(collapsed.isCollapsed());
+        View firstRow = layout.getFormLayout().getChildAt(ROWS_PER_SECTION + 2);
+        assertEquals(View.GONE, firstRow.getVisibility());
+        assertEquals(nextTop - ROWS_PER_SECTION * ScrollTraceReplay.ROW_HEIGHT, next.getTop());
+
+        layout.setSectionCollapsed(collapsed, false);
+        replay.frame();
+
+        assertFalse(collapsed.isCollapsed());
+        assertEquals(View.VISIBLE, firstRow.getVisibility());
+        assertEquals(nextTop, next.getTop());
+    }
+
+    @Test
+    public void setSectionCollapsed_keepsScrollPositionWithoutListener() {
+        ScrollTraceReplay replay = new ScrollTraceReplay(10, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+        replay.replay(new ScrollTrace("drag").drag(0, 5 * SECTION_HEIGHT, 48));
+        List<SectionData> sections = layout.getSectionsData();
+        View visible = sections.get(5).getUnpinnedHeader();
+        int scrollY = layout.getFormLayoutScrollView().getScrollY();
+        int visibleTop = visible.getTop() - scrollY;
+
+        // Section above the viewport, no active section listener is set
+        layout.setSectionCollapsed(sections.get(1), true);
+        replay.frame();
+
+        int collapsedHeight = ROWS_PER_SECTION * ScrollTraceReplay.ROW_HEIGHT;
+        assertEquals(scrollY - collapsedHeight, layout.getFormLayoutScrollView().getScrollY());
+        assertEquals(visibleTop, visible.getTop() - layout.getFormLayoutScrollView().getScrollY());
+
+        layout.setSectionCollapsed(sections.get(1), false);
+        replay.frame();
+
+        assertEquals(scrollY, layout.getFormLayoutScrollView().getScrollY());
+        assertEquals(visibleTop, visible.getTop() - layout.getFormLayoutScrollView().getScrollY());
+    }
+
+    @Test
+    public void setSectionCollapsed_expandsRowsAddedWhileCollapsed() {
+        ScrollTraceReplay replay = new ScrollTraceReplay(10, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+        List<SectionData> sections = layout.getSectionsData();
+        SectionData collapsed = sections.get(1);
+        layout.setSectionCollapsed(collapsed, true);
+        replay.frame();
+        replay.replay(new ScrollTrace("drag").drag(0, 5 * SECTION_HEIGHT, 48));
+        View visible = sections.get(6).getUnpinnedHeader();
+        int scrollY = layout.getFormLayoutScrollView().getScrollY();
+        int visibleTop = visible.getTop() - scrollY;
+
+        // Rows are hidden right away, they have never been laid out
+        int addedRows = 2;
+        int position = layout.getFormLayout().indexOfChild(collapsed.getUnpinnedHeader()) + 1;
+        for (int i = 0; i < addedRows; i++) {
+            TextView row = new TextView(layout.getContext());
+            row.setLayoutParams(new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ScrollTraceReplay.ROW_HEIGHT));
+            layout.addFormView(row, position);
+        }
+        replay.frame();
+        assertEquals(scrollY, layout.getFormLayoutScrollView().getScrollY());
+
+        layout.setSectionCollapsed(collapsed, false);
+        replay.frame();
+
+        int expandedHeight = (ROWS_PER_SECTION + addedRows) * ScrollTraceReplay.ROW_HEIGHT;
+        assertEquals(scrollY + expandedHeight, layout.getFormLayoutScrollView().getScrollY());
+        assertEquals(visibleTop, visible.getTop() - layout.getFormLayoutScrollView().getScrollY());
+        assertEquals(View.VISIBLE, layout.getFormLayout().getChildAt(position).getVisibility());
+    }
+
+    @Test
+    public void setMaxHeaderRows_limitsRowsOfHeaderArea() {
+        ScrollTraceReplay replay = new ScrollTraceReplay(10, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+        replay.replay(new ScrollTrace("drag").drag(0, 6 * SECTION_HEIGHT, 48));
+        assertEquals(MAX_ROWS, layout.getHeaderLayout().getChildCount());
+
+        layout.setMaxHeaderRows(1);
+        replay.frame();
+
+        assertEquals(1, layout.getMaxHeaderRows());
+        assertEquals(1, layout.getHeaderLayout().getChildCount());
+        assertEquals(ScrollTraceReplay.HEADER_HEIGHT, layout.getHeaderLayout().getHeight());
+
+        // Not limited
+        layout.setMaxHeaderRows(0);
+        replay.frame();
+
+        assertTrue(layout.getHeaderLayout().getChildCount() > MAX_ROWS);
+    }
+
+    @Test
+    public void metrics_countPinnedViewsWithoutReplacingHierarchyListener() {
+        ScrollTraceReplay replay = new ScrollTraceReplay(10, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+        final int[] appCallbacks = new int[1];
+        ViewGroup.OnHierarchyChangeListener appListener = new ViewGroup.OnHierarchyChangeListener() {
+            @Override
+            public void onChildViewAdded(View parent, View child) {
+                appCallbacks[0]++;
+            }
+
+            @Override
+            public void onChildViewRemoved(View parent, View child) {
+                appCallbacks[0]++;
+            }
+        };
+        layout.getHeaderLayout().setOnHierarchyChangeListener(appListener);
+        layout.getFooterLayout().setOnHierarchyChangeListener(appListener);
+
+        StickyLayoutMetrics metrics = new StickyLayoutMetrics();
+        layout.setMetricsListener(metrics);
+        replay.replay(new ScrollTrace("drag").drag(0, 3 * SECTION_HEIGHT, 48));
+
+        assertTrue(metrics.getPinnedViewsAdded() > 0);
+        assertEquals(appCallbacks[0], metrics.getPinnedViewsAdded() + metrics.getPinnedViewsRemoved());
+
+        // Disabling metrics keeps the listener of the app
+        layout.setMetricsListener(null);
+        int callbacks = appCallbacks[0];
+        replay.replay(new ScrollTrace("drag").drag(3 * SECTION_HEIGHT, 0, 48));
+        assertTrue(appCallbacks[0] > callbacks);
+    }
+
+
+    @Test
+    public void viewTreeIsChangedAfterLayoutPass() {
+        ScrollTraceReplay replay = new ScrollTraceReplay(10, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+        replay.replay(new ScrollTrace("keyboard resize")
+                .drag(0, 3 * SECTION_HEIGHT, 48)
+                .add(ScrollTrace.RESIZE, HEIGHT / 2)
+                .add(ScrollTrace.RESIZE, HEIGHT));
+        List<SectionData> sections = layout.getSectionsData();
+        layout.setSectionCollapsed(sections.get(0), true);
+        replay.frame();
+        layout.removeSection(sections.get(2));
+        replay.frame();
+        layout.addSectionHeader(new TextView(layout.getContext()), 0);
+        replay.frame();
+
+        assertTrue(layout.getHeaderLayout().getChildCount() > 0);
+        assertEquals(0, replay.getMutationsInLayoutPass());
+    }
+
+    @Test
+    public void inflateSectionsAsync_pinsSectionsLoadedSoFar() throws Exception {
+        final int totalSections = 20;
+        final int loadedSections = 10;
+        final int margin = 20;
+        final AttributeSet headerAttrs = Robolectric.buildAttributeSet()
+                .addAttribute(android.R.attr.layout_width, "match_parent")
+                .addAttribute(android.R.attr.layout_height, ScrollTraceReplay.HEADER_HEIGHT + "px")
+                .addAttribute(R.attr.sectionHeader, "true")
+                .addAttribute(R.attr.scrollToSectionMargin, margin + "px")
+                .build();
+        final CountDownLatch loadingBlocked = new CountDownLatch(1);
+        final CountDownLatch loadingReleased = new CountDownLatch(1);
+
+        ScrollTraceReplay replay = new ScrollTraceReplay(0, ROWS_PER_SECTION, WIDTH, HEIGHT);
+        StickyLinearLayout layout = replay.getLayout();
+        final List<Integer> activeSections = new ArrayList<>();
+        layout.setOnActiveSectionChangedListener(new StickyLinearLayout.OnActiveSectionChangedListener() {
+            @Override
+            public void onActiveSectionChanged(List<SectionData> sections, int newIndex, int previousIndex) {
+                activeSections.add(newIndex);
+            }
+        });
+
+        // Every created section is split into two sections by a row
+        // with 'sectionHeader' attribute, rows keep their margins and gravity
+        layout.inflateSectionsAsync(new StickyLinearLayout.AsyncSectionFactory() {
+            @Override
+            public int getSectionCount() {
+                return totalSections;
+            }
+
+            @Override
+            public void onCreateSection(int section, LayoutInflater inflater, ViewGroup parent, List<View> views) {
+                if (section == loadedSections) {
+                    loadingBlocked.countDown();
+                    try {
+                        loadingReleased.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                for (int half = 0; half < 2; half++) {
+                    TextView header = new TextView(parent.getContext());
+                    header.setText("Section " + section + "." + half);
+                    header.setLayoutParams(parent.generateLayoutParams(headerAttrs));
+                    views.add(header);
+                    for (int r = 0; r < ROWS_PER_SECTION / 2; r++) {
+                        LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
+                                ViewGroup.LayoutParams.MATCH_PARENT, ScrollTraceReplay.ROW_HEIGHT - margin);
+                        params.topMargin = margin;
+                        params.gravity = Gravity.CENTER_HORIZONTAL;
+                        View row = new TextView(parent.getContext());
+                        row.setLayoutParams(params);
+                        views.add(row);
+                    }
+                }
+            }
+
+            @Override
+            public void onSectionsLoaded() {
+            }
+
+            @Override
+            public void onLoadFailed(Throwable error) {
+                throw new AssertionError(error);
+            }
+        });
+
+        assertTrue(loadingBlocked.await(10, TimeUnit.SECONDS));
+        List<SectionData> sections = layout.getSectionsData();
+        for (int frame = 0; frame < 100 && sections.size() < 2 * loadedSections; frame++) {
+            asyncFrame(replay);
+        }
+        assertEquals(2 * loadedSections, sections.size());
+        assertTrue(layout.isAsyncInflationRunning());
+        for (SectionData section : sections) {
+            assertEquals(margin, section.getScrollToSectionMargin());
+        }
+        ViewGroup.LayoutParams rowParams = layout.getFormLayout().getChildAt(1).getLayoutParams();
+        assertEquals(margin, ((LinearLayout.LayoutParams) rowParams).topMargin);
+        assertEquals(Gravity.CENTER_HORIZONTAL, ((LinearLayout.LayoutParams) rowParams).gravity);
+        assertEquals(0, (int) activeSections.get(0));
+
+        // Sections loaded so far are pinned
+        int scrollY = 5 * (ScrollTraceReplay.HEADER_HEIGHT + ROWS_PER_SECTION / 2 * ScrollTraceReplay.ROW_HEIGHT);
+        replay.replay(new ScrollTrace("drag").drag(0, scrollY, 48));
+        View pinnedUpHeader = sections.get(4).getPinnedUpHeader();
+        assertNotNull(pinnedUpHeader);
+        assertSame(layout.getHeaderLayout(), pinnedUpHeader.getParent());
+        assertTrue(layout.getFooterLayout().getChildCount() > 0);
+        int activeSection = activeSections.get(activeSections.size() - 1);
+        assertTrue(activeSection >= 5);
+
+        // The rest of the sections is appended below the viewport
+        loadingReleased.countDown();
+        // Sections are built by the background thread meanwhile
+        long deadline = System.currentTimeMillis() + 10000;
+        while (layout.isAsyncInflationRunning() && System.currentTimeMillis() < deadline) {
+            asyncFrame(replay);
+        }
+        assertFalse(layout.isAsyncInflationRunning());
+        assertEquals(2 * totalSections, sections.size());
+        assertSectionsInFormOrder(layout);
+        assertEquals(scrollY, layout.getFormLayoutScrollView().getScrollY());
+        assertSame(layout.getHeaderLayout(), pinnedUpHeader.getParent());
+        assertEquals(activeSection, (int) activeSections.get(activeSections.size() - 1));
+    }
+
+    /**
+     * Runs the next task of UI thread (e.g. frame callback of async loading) and lays out the layout.
+     */
+    private static void asyncFrame(ScrollTraceReplay replay) {
+        Robolectric.getForegroundThreadScheduler().runOneTask();
+        replay.frame();
+    }
+
+    /**
+     * Sections are indexed in the order of their headers in the form.
+     */
+    private static void assertSectionsInFormOrder(StickyLinearLayout layout) {
+        List<SectionData> sections = layout.getSectionsData();
+        int position = -1;
+        for (int i = 0; i < sections.size(); i++) {
+            assertEquals(i, sections.get(i).getIndex());
+            int headerPosition = layout.getFormLayout().indexOfChild(sections.get(i).getUnpinnedHeader());
+            assertTrue(headerPosition > position);
+            position = headerPosition;
+        }
+    }
+
+    private static void assertPinnedViewsBounded(StickyLinearLayout layout) {
+        int created = 0;
+        for (SectionData section : layout.getSectionsData()) {
+            if (section.getPinnedUpHeader() != null || section.getPinnedDownHeader() != null) {
+                created++;
+            }
+        }
+        assertTrue(created + " sections with pinned views", created <= MAX_CACHED_SECTIONS);
+        assertTrue(layout.getHeaderLayout().getChildCount() <= MAX_ROWS);
+        assertTrue(layout.getFooterLayout().getChildCount() <= MAX_ROWS);
+    }
+
+}